@@ -0,0 +1,140 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.UploadTask;
+import com.unipi.gkagkakis.smartalert.model.PreparedImage;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resumable uploads against the Storage emulator; see the README for how to start it
+ * The first upload is paused midway rather than cancelled, since a cancelled upload drops its session.
+ * A second service then stands in for the one of a restarted process.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageStorageServiceEmulatorTest {
+
+    // The host machine, as seen from the Android emulator
+    private static final String EMULATOR_HOST = "10.0.2.2";
+    private static final int AUTH_PORT = 9099;
+    private static final int STORAGE_PORT = 9199;
+    // Large enough to take several chunks, small enough for the 10 MB limit in storage.rules
+    private static final int IMAGE_BYTES = 9 * 1024 * 1024;
+
+    @BeforeClass
+    public static void useEmulators() throws Exception {
+        FirebaseAuth.getInstance().useEmulator(EMULATOR_HOST, AUTH_PORT);
+        FirebaseStorage.getInstance().useEmulator(EMULATOR_HOST, STORAGE_PORT);
+        Tasks.await(FirebaseAuth.getInstance().signInAnonymously(), 30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void restartedServiceResumesSavedSession() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        byte[] jpegData = new byte[IMAGE_BYTES];
+        new Random(18).nextBytes(jpegData);
+        PreparedImage image = new PreparedImage(jpegData, 4000, 3000, null);
+        String key = UploadSessionStore.keyFor(jpegData);
+
+        // Cut the first upload off as soon as it is under way
+        List<UploadTask> cutOff = new ArrayList<>();
+        CountDownLatch paused = new CountDownLatch(1);
+        new ImageStorageService().uploadPreparedImage(context, image, new Callback() {
+            @Override
+            public void onProgress(int progress) {
+                if (progress <= 0 || paused.getCount() == 0) return;
+                for (UploadTask task : FirebaseStorage.getInstance().getReference().getActiveUploadTasks()) {
+                    if (task.pause()) cutOff.add(task);
+                }
+                paused.countDown();
+            }
+        });
+        assertTrue("first upload never started", paused.await(60, TimeUnit.SECONDS));
+        assertFalse("first upload finished before it could be paused", cutOff.isEmpty());
+
+        UploadSessionStore.Session saved = new UploadSessionStore(context).find(key);
+        assertNotNull(saved);
+        assertNotNull(saved.sessionUri);
+        assertTrue(saved.bytesUploaded > 0);
+
+        try {
+            AtomicReference<Uri> resumedSessionUri = new AtomicReference<>();
+            AtomicLong resumedFrom = new AtomicLong(-1);
+            AtomicReference<String> downloadUrl = new AtomicReference<>();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            CountDownLatch done = new CountDownLatch(1);
+
+            new ImageStorageService().uploadPreparedImage(context, image, new Callback() {
+                @Override
+                public void onProgress(int progress) {
+                    if (resumedFrom.get() >= 0) return;
+                    for (UploadTask task : FirebaseStorage.getInstance().getReference().getActiveUploadTasks()) {
+                        if (cutOff.contains(task)) continue;
+                        resumedSessionUri.set(task.getSnapshot().getUploadSessionUri());
+                        resumedFrom.set(task.getSnapshot().getBytesTransferred());
+                    }
+                }
+
+                @Override
+                public void onSuccess(@NonNull String url) {
+                    downloadUrl.set(url);
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(@NonNull Exception e) {
+                    failure.set(e);
+                    done.countDown();
+                }
+            });
+            assertTrue("resumed upload did not finish", done.await(120, TimeUnit.SECONDS));
+
+            assertNull(failure.get());
+            assertNotNull(downloadUrl.get());
+            assertEquals(saved.sessionUri, resumedSessionUri.get());
+            assertTrue("resumed from " + resumedFrom.get() + " bytes", resumedFrom.get() >= saved.bytesUploaded);
+            // The session and its temp file are gone once the upload completed
+            assertNull(new UploadSessionStore(context).find(key));
+            assertFalse(saved.file.exists());
+        } finally {
+            for (UploadTask task : cutOff) {
+                task.cancel();
+            }
+        }
+    }
+
+    private static class Callback implements ImageStorageService.ImageUploadCallback {
+        @Override
+        public void onSuccess(@NonNull String downloadUrl) {
+        }
+
+        @Override
+        public void onError(@NonNull Exception e) {
+        }
+
+        @Override
+        public void onProgress(int progress) {
+        }
+    }
+}
@@ -4,7 +4,10 @@ import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
 
+import com.unipi.gkagkakis.smartalert.Utils.GeocodingService;
+import com.unipi.gkagkakis.smartalert.Utils.ImageLoader;
 import com.unipi.gkagkakis.smartalert.Utils.LocaleManager;
+import com.unipi.gkagkakis.smartalert.service.AlertOutboxWorker;
 
 /**
  * Custom Application class to handle app-wide localization
@@ -18,6 +21,14 @@ public class SmartAlertApplication extends Application {
         super.attachBaseContext(LocaleManager.applyLocale(base));
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ImageLoader.init(this);
+        GeocodingService.init(this);
+        AlertOutboxWorker.scheduleIfPending(this);
+    }
+
     @Override
     public void onConfigurationChanged(Configuration newConfig) {
         super.onConfigurationChanged(newConfig);
@@ -0,0 +1,68 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.InputStream;
+
+/**
+ * Reads an ASCII CharSequence as bytes without copying it
+ * Meant for Base64 payloads, whose characters all fit in a single byte.
+ */
+public class CharSequenceInputStream extends InputStream {
+
+    private final CharSequence chars;
+    private final int end;
+    private int position;
+    private int mark;
+
+    public CharSequenceInputStream(@NonNull CharSequence chars, int start) {
+        this.chars = chars;
+        this.end = chars.length();
+        this.position = Math.min(Math.max(start, 0), end);
+        this.mark = position;
+    }
+
+    @Override
+    public int read() {
+        return position < end ? chars.charAt(position++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) {
+        if (length == 0) return 0;
+        if (position >= end) return -1;
+
+        int count = Math.min(length, end - position);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = (byte) chars.charAt(position++);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.min(Math.max(n, 0), end - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return end - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+}
@@ -1,58 +1,297 @@
 package com.unipi.gkagkakis.smartalert.Utils;
 
-import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class CoordinatesUtil {
     private CoordinatesUtil() {}
 
-    private static final Pattern DECIMAL_DEGREES = Pattern.compile(
-            "([-+]?\\d{1,2}\\.\\d+)\\s*,\\s*([-+]?\\d{1,3}\\.\\d+)"
-    );
-    private static final Pattern ANY_DOUBLE = Pattern.compile("([-+]?\\d{1,3}(?:\\.\\d+)?)");
+    // Beyond 15 digits the mantissa may not be exact, and 1e22 is the largest exact power of ten
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final ThreadLocal<LatLon> SCRATCH = ThreadLocal.withInitial(LatLon::new);
+
+    /**
+     * Reusable parse result; also holds the scratch buffer, so a holder serves one thread at a time
+     */
+    public static final class LatLon {
+        public double latitude;
+        public double longitude;
+
+        private char[] buffer = new char[64];
+        private int valueStart;
+        private int valueEnd;
+
+        private char[] buffer(int capacity) {
+            if (buffer.length < capacity) {
+                buffer = new char[Math.max(capacity, buffer.length * 2)];
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Per-thread holder for callers that copy the values out right after parsing
+     */
+    @NonNull
+    public static LatLon scratch() {
+        return SCRATCH.get();
+    }
 
     @Nullable
     public static String tryParseCoordinates(@NonNull String input) {
-        String trimmed = input.trim();
-        if (trimmed.isEmpty()) return null;
-
-        Matcher m = DECIMAL_DEGREES.matcher(trimmed);
-        if (m.find()) {
-            double lat = parseDoubleSafe(m.group(1));
-            double lon = parseDoubleSafe(m.group(2));
-            if (isValidLatLon(lat, lon)) return formatLatLng(lat, lon);
+        LatLon latLon = scratch();
+        return tryParseLatLon(input, latLon) ? formatLatLng(latLon.latitude, latLon.longitude) : null;
+    }
+
+    /**
+     * Parse a location string into primitive coordinates, without allocating once the holder's buffer fits
+     * Tries, in order, the first decimal pair such as "37.98, 23.72", the q or query parameter of
+     * a map URL, and the first two numbers of up to three integer digits anywhere in the input.
+     * @param input Decimal pair, map URL with q/query parameter, or any two numbers
+     * @param out Receives the coordinates; left in an undefined state when nothing is found
+     * @return True if valid coordinates were found
+     */
+    public static boolean tryParseLatLon(@NonNull String input, @NonNull LatLon out) {
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') start++;
+        while (end > start && input.charAt(end - 1) <= ' ') end--;
+        int length = end - start;
+        if (length == 0) return false;
+
+        // The second half holds the decoded query parameter, which is never longer than the input
+        char[] chars = out.buffer(length * 2);
+        input.getChars(start, end, chars, 0);
+
+        if (findDecimalPair(chars, 0, length, out) && isValidLatLon(out.latitude, out.longitude)) {
+            return true;
         }
 
-        try {
-            Uri uri = Uri.parse(trimmed);
-            String q = uri.getQueryParameter("q");
-            if (q == null) q = uri.getQueryParameter("query");
-            if (q != null) {
-                Matcher mq = DECIMAL_DEGREES.matcher(q);
-                if (mq.find()) {
-                    double lat = parseDoubleSafe(mq.group(1));
-                    double lon = parseDoubleSafe(mq.group(2));
-                    if (isValidLatLon(lat, lon)) return formatLatLng(lat, lon);
+        if (findQueryParameter(chars, length, out)) {
+            int decodedLength = decodeQueryValue(chars, out.valueStart, out.valueEnd, length);
+            if (findDecimalPair(chars, length, length + decodedLength, out)
+                    && isValidLatLon(out.latitude, out.longitude)) {
+                return true;
+            }
+        }
+
+        return findTwoNumbers(chars, 0, length, out) && isValidLatLon(out.latitude, out.longitude);
+    }
+
+    /**
+     * Finds the first "[-+]d{1,2}.d+ , [-+]d{1,3}.d+" in the range; whitespace may surround the comma
+     */
+    private static boolean findDecimalPair(char[] s, int from, int to, LatLon out) {
+        for (int p = from; p < to; p++) {
+            int latEnd = scanDecimal(s, p, to, 2);
+            if (latEnd < 0) continue;
+
+            int i = latEnd;
+            while (i < to && isWhitespace(s[i])) i++;
+            if (i == to || s[i] != ',') continue;
+            i++;
+            while (i < to && isWhitespace(s[i])) i++;
+
+            int lonEnd = scanDecimal(s, i, to, 3);
+            if (lonEnd < 0) continue;
+
+            out.latitude = parseNumber(s, p, latEnd);
+            out.longitude = parseNumber(s, i, lonEnd);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Matches an optional sign, 1 to maxIntDigits digits, a dot and at least one digit
+     * @return The end of the number, or -1 if there is none at the position
+     */
+    private static int scanDecimal(char[] s, int start, int to, int maxIntDigits) {
+        int i = start;
+        if (i < to && isSign(s[i])) i++;
+        int digitsStart = i;
+        while (i < to && isDigit(s[i]) && i - digitsStart <= maxIntDigits) i++;
+        int intDigits = i - digitsStart;
+        if (intDigits == 0 || intDigits > maxIntDigits) return -1;
+        if (i + 1 >= to || s[i] != '.' || !isDigit(s[i + 1])) return -1;
+        i += 2;
+        while (i < to && isDigit(s[i])) i++;
+        return i;
+    }
+
+    /**
+     * Locates the q, or else query, parameter of a hierarchical URI in the first length chars
+     * Follows android.net.Uri: opaque URIs such as "geo:..." have no query parameters, and
+     * the query ends at the fragment.
+     */
+    private static boolean findQueryParameter(char[] s, int length, LatLon out) {
+        int schemeEnd = indexOf(s, ':', 0, length);
+        if (schemeEnd != -1 && (schemeEnd + 1 == length || s[schemeEnd + 1] != '/')) {
+            return false;
+        }
+        int searchFrom = Math.max(schemeEnd, 0);
+        int queryStart = indexOf(s, '?', searchFrom, length);
+        if (queryStart == -1) return false;
+        int fragmentStart = indexOf(s, '#', searchFrom, length);
+        if (fragmentStart != -1 && fragmentStart < queryStart) return false;
+        int queryEnd = fragmentStart == -1 ? length : fragmentStart;
+
+        return findParameter(s, queryStart + 1, queryEnd, "q", out)
+                || findParameter(s, queryStart + 1, queryEnd, "query", out);
+    }
+
+    private static boolean findParameter(char[] s, int queryStart, int queryEnd, String key, LatLon out) {
+        int start = queryStart;
+        while (true) {
+            int ampersand = indexOf(s, '&', start, queryEnd);
+            int end = ampersand != -1 ? ampersand : queryEnd;
+            int separator = indexOf(s, '=', start, queryEnd);
+            if (separator > end || separator == -1) separator = end;
+
+            if (separator - start == key.length() && regionMatches(s, start, key)) {
+                out.valueStart = separator == end ? end : separator + 1;
+                out.valueEnd = end;
+                return true;
+            }
+            if (ampersand == -1) return false;
+            start = ampersand + 1;
+        }
+    }
+
+    /**
+     * Percent-decodes the value into the buffer at dest, with '+' as a space
+     * Non-ASCII bytes and malformed escapes become U+FFFD; neither can be part of a coordinate.
+     * As in android.net.Uri, a malformed escape also swallows the characters up to its first bad digit.
+     * @return The decoded length
+     */
+    private static int decodeQueryValue(char[] s, int start, int end, int dest) {
+        int d = dest;
+        for (int i = start; i < end; i++) {
+            char c = s[i];
+            if (c == '+') {
+                c = ' ';
+            } else if (c == '%') {
+                int high = i + 1 < end ? hexValue(s[i + 1]) : -1;
+                int low = high >= 0 && i + 2 < end ? hexValue(s[i + 2]) : -1;
+                if (high >= 0 && low >= 0) {
+                    int b = (high << 4) | low;
+                    c = b < 0x80 ? (char) b : '\uFFFD';
+                    i += 2;
+                } else {
+                    c = '\uFFFD';
+                    i += high >= 0 ? 2 : 1;
                 }
             }
-        } catch (Exception ignored) { }
-
-        Matcher any = ANY_DOUBLE.matcher(trimmed);
-        Double first = null, second = null;
-        while (any.find()) {
-            double val = parseDoubleSafe(any.group(1));
-            if (first == null) first = val;
-            else { second = val; break; }
+            s[d++] = c;
         }
-        if (first != null && second != null) {
-            double lat = first, lon = second;
-            if (isValidLatLon(lat, lon)) return formatLatLng(lat, lon);
+        return d - dest;
+    }
+
+    /**
+     * Takes the first two numbers of the form "[-+]d{1,3}(.d+)?", so "1234" reads as 123 and 4
+     */
+    private static boolean findTwoNumbers(char[] s, int from, int to, LatLon out) {
+        int found = 0;
+        int i = from;
+        while (i < to) {
+            int k = i;
+            if (isSign(s[k])) k++;
+            int digitsStart = k;
+            while (k < to && isDigit(s[k]) && k - digitsStart < 3) k++;
+            if (k == digitsStart) {
+                i++;
+                continue;
+            }
+            if (k + 1 < to && s[k] == '.' && isDigit(s[k + 1])) {
+                k += 2;
+                while (k < to && isDigit(s[k])) k++;
+            }
+
+            double value = parseNumber(s, i, k);
+            if (found++ == 0) {
+                out.latitude = value;
+            } else {
+                out.longitude = value;
+                return true;
+            }
+            i = k;
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * Parses "[-+]digits[.digits]" exactly as Double.parseDouble would
+     * Short numbers take the exact fast path: an exact mantissa divided by an exact power of ten
+     * rounds once, to the same double; longer ones fall back to Double.parseDouble.
+     */
+    private static double parseNumber(char[] s, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (isSign(s[i])) {
+            negative = s[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = s[i];
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (digits < MAX_EXACT_DIGITS + 1) {
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            digits++;
+            if (fraction) fractionDigits++;
+        }
+        if (digits > MAX_EXACT_DIGITS || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(s, start, end - start));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static boolean isSign(char c) {
+        return c == '-' || c == '+';
+    }
+
+    // Same set as \s in java.util.regex
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int indexOf(char[] s, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(char[] s, int start, String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (s[start + i] != key.charAt(i)) return false;
+        }
+        return true;
     }
 
     public static boolean isValidLatLon(double lat, double lon) {
@@ -63,10 +302,6 @@ public final class CoordinatesUtil {
         return String.format(Locale.US, "%.6f,%.6f", lat, lon);
     }
 
-    private static double parseDoubleSafe(String s) {
-        try { return Double.parseDouble(s); } catch (Exception e) { return Double.NaN; }
-    }
-
     /**
      * Calculate distance between two coordinates using Haversine formula
      * @param lat1 Latitude of first point
@@ -0,0 +1,187 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded directory of encoded image bytes with least-recently-used eviction
+ * Files are named by a hash of the cache key; the access order is rebuilt from
+ * file modification times the first time the cache is used.
+ */
+public class DiskImageCache {
+    private static final String TAG = "DiskImageCache";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+
+    // File name to size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+    private int evictionCount;
+
+    public DiskImageCache(@NonNull File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    public synchronized byte[] get(@NonNull String key) {
+        ensureLoaded();
+        String name = fileNameFor(key);
+        if (!entries.containsKey(name)) {
+            return null;
+        }
+
+        File file = new File(directory, name);
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] data = readFully(input);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + name, e);
+            removeEntry(name);
+            return null;
+        }
+    }
+
+    public synchronized void put(@NonNull String key, @NonNull byte[] data) {
+        if (data.length > maxBytes) return;
+        ensureLoaded();
+
+        String name = fileNameFor(key);
+        File temp = new File(directory, name + TEMP_SUFFIX);
+        try (OutputStream output = new FileOutputStream(temp)) {
+            output.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cache entry " + name, e);
+            temp.delete();
+            return;
+        }
+
+        // Rename so a crash mid-write never leaves a truncated entry behind
+        File file = new File(directory, name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+
+        Long previous = entries.put(name, (long) data.length);
+        totalBytes += data.length - (previous != null ? previous : 0);
+        trimToSize();
+    }
+
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create cache directory " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            new File(directory, entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        new File(directory, name).delete();
+    }
+
+    @NonNull
+    static String fileNameFor(@NonNull String key) {
+        return hex(sha256().digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Same kind of name for a stream, digested through a small buffer rather than one array of all its bytes
+     */
+    @NonNull
+    static String fileNameFor(@NonNull InputStream input) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            digest.update(chunk, 0, read);
+        }
+        return hex(digest.digest());
+    }
+
+    @NonNull
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static String hex(@NonNull byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @NonNull
+    private static byte[] readFully(@NonNull InputStream input) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+}
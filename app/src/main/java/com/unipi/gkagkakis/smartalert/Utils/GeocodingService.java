@@ -0,0 +1,385 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse geocodes coordinates through a memory and a disk cache on a small thread pool
+ * Coordinates are snapped to cells of about 50m, so alerts at nearly the same spot share one
+ * lookup, and concurrent lookups of the same cell wait on a single geocoder call. Addresses
+ * persist on disk across restarts; failures are not cached so they are retried.
+ */
+public class GeocodingService {
+
+    private static final String TAG = "GeocodingService";
+    private static final String DISK_CACHE_DIR = "geocode";
+    private static final long DISK_CACHE_BYTES = 1024 * 1024;
+    private static final int MEMORY_CACHE_ENTRIES = 512;
+    // Geocoder calls wait on the network, so a few run side by side; prefetches share the pool
+    private static final int LOOKUP_THREADS = 4;
+
+    // 0.0005 degrees is about 55m of latitude and at most 55m of longitude
+    static final double CELL_DEGREES = 0.0005;
+
+    // An empty address marks a cell the geocoder had no result for
+    private static final String NO_ADDRESS = "";
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(LOOKUP_THREADS);
+    private static final LruCache<String, String> memoryCache = new LruCache<>(MEMORY_CACHE_ENTRIES);
+    private static volatile DiskImageCache diskCache;
+    private static volatile AddressResolver resolver;
+
+    // Only touched on the main thread
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Map<String, InFlightLookup> inFlight = new HashMap<>();
+
+    private static final AtomicInteger memoryHits = new AtomicInteger();
+    private static final AtomicInteger diskHits = new AtomicInteger();
+    private static final AtomicInteger geocoderCalls = new AtomicInteger();
+    private static final AtomicInteger dedupedLookups = new AtomicInteger();
+    private static final AtomicInteger failures = new AtomicInteger();
+    private static final AtomicInteger cancelledLookups = new AtomicInteger();
+
+    /**
+     * Turns a coordinate into a display address; blocks, called on the pool
+     */
+    public interface AddressResolver {
+        /**
+         * @return The address, or null if there is none for the location
+         */
+        @Nullable
+        String resolve(double latitude, double longitude) throws IOException;
+    }
+
+    /**
+     * A pending lookup for one caller; cancelling it drops the callback
+     */
+    public static final class Request {
+        private final String cacheKey;
+        private final LocationUtils.GeocodeCallback callback;
+        private boolean cancelled;
+        private boolean done;
+
+        Request(String cacheKey, LocationUtils.GeocodeCallback callback) {
+            this.cacheKey = cacheKey;
+            this.callback = callback;
+        }
+
+        @MainThread
+        public void cancel() {
+            if (cancelled || done) return;
+            cancelled = true;
+            cancelRequest(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * True once the callback has run or the request was cancelled
+         */
+        public boolean isFinished() {
+            return done || cancelled;
+        }
+
+        private void deliver(@Nullable String address, @Nullable String error) {
+            done = true;
+            if (address == null) {
+                callback.onError(error);
+            } else if (NO_ADDRESS.equals(address)) {
+                callback.onError("No address found");
+            } else {
+                callback.onSuccess(address);
+            }
+        }
+    }
+
+    private static final class InFlightLookup {
+        final List<Request> waiters = new ArrayList<>(1);
+        Future<?> future;
+    }
+
+    /**
+     * Snapshot of lookup counters since process start
+     */
+    public static final class Stats {
+        public final int memoryHits;
+        public final int diskHits;
+        public final int geocoderCalls;
+        public final int dedupedLookups;
+        public final int failures;
+        public final int cancelledLookups;
+
+        Stats(int memoryHits, int diskHits, int geocoderCalls, int dedupedLookups, int failures, int cancelledLookups) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.geocoderCalls = geocoderCalls;
+            this.dedupedLookups = dedupedLookups;
+            this.failures = failures;
+            this.cancelledLookups = cancelledLookups;
+        }
+
+        /**
+         * Share of lookups answered without calling the geocoder
+         */
+        public double hitRate() {
+            int hits = memoryHits + diskHits + dedupedLookups;
+            int total = hits + geocoderCalls;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "memory %d hits, disk %d hits, %d geocoder calls, %d deduped, %d failures, %d cancelled, %.0f%% hit rate",
+                    memoryHits, diskHits, geocoderCalls, dedupedLookups, failures, cancelledLookups, hitRate() * 100);
+        }
+    }
+
+    /**
+     * Enables the disk cache and the platform geocoder
+     */
+    public static void init(@NonNull Context context) {
+        if (diskCache == null) {
+            synchronized (GeocodingService.class) {
+                if (diskCache == null) {
+                    Context appContext = context.getApplicationContext();
+                    if (resolver == null) {
+                        resolver = new PlatformResolver(appContext);
+                    }
+                    diskCache = new DiskImageCache(new File(appContext.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the geocoder, e.g. with a fake in tests
+     */
+    @VisibleForTesting
+    static void setResolver(@NonNull AddressResolver addressResolver) {
+        resolver = addressResolver;
+        memoryCache.evictAll();
+    }
+
+    @NonNull
+    public static Stats getStats() {
+        return new Stats(memoryHits.get(), diskHits.get(), geocoderCalls.get(), dedupedLookups.get(), failures.get(), cancelledLookups.get());
+    }
+
+    /**
+     * Looks up the address of the cell containing the coordinates; the callback runs on the main thread
+     * @return A handle that cancels delivery, already finished if the address was cached in memory
+     */
+    @MainThread
+    @NonNull
+    public static Request lookup(@NonNull Context context, double latitude, double longitude,
+                                 @NonNull LocationUtils.GeocodeCallback callback) {
+        init(context);
+
+        String key = cacheKeyFor(latitude, longitude);
+        Request request = new Request(key, callback);
+        String cached = memoryCache.get(key);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            request.deliver(cached, null);
+            return request;
+        }
+
+        InFlightLookup lookup = inFlight.get(key);
+        if (lookup != null) {
+            dedupedLookups.incrementAndGet();
+            lookup.waiters.add(request);
+            return request;
+        }
+        InFlightLookup newLookup = new InFlightLookup();
+        newLookup.waiters.add(request);
+        inFlight.put(key, newLookup);
+
+        double cellLatitude = cellCenter(latitude);
+        double cellLongitude = cellCenter(longitude);
+        newLookup.future = executor.submit(() -> {
+            String address = null;
+            String error = null;
+            try {
+                address = load(key, cellLatitude, cellLongitude);
+            } catch (IOException e) {
+                Log.e(TAG, "Geocoding failed", e);
+                failures.incrementAndGet();
+                error = "Geocoding failed: " + e.getMessage();
+            } catch (Exception e) {
+                Log.e(TAG, "Unexpected error during geocoding", e);
+                failures.incrementAndGet();
+                error = "Unexpected error: " + e.getMessage();
+            }
+
+            String result = address;
+            String failure = error;
+            mainHandler.post(() -> completeLookup(key, newLookup, result, failure));
+        });
+        return request;
+    }
+
+    /**
+     * Resolves the distinct cells of the coordinates ahead of display, in the given order
+     * Lookups queue on the pool in order, so callers put the coordinates of visible rows first.
+     * Rows that bind while a cell is still resolving join its lookup rather than starting another.
+     * @param coordinates {latitude, longitude} pairs, most urgent first
+     * @param urgentCount How many leading coordinates onUrgentResolved waits for
+     * @param onUrgentResolved Runs on the main thread once those cells are cached or have failed
+     */
+    @MainThread
+    public static void prefetch(@NonNull Context context, @NonNull List<double[]> coordinates,
+                                int urgentCount, @Nullable Runnable onUrgentResolved) {
+        Set<String> seen = new HashSet<>();
+        List<double[]> distinct = new ArrayList<>();
+        int distinctUrgent = 0;
+        for (int i = 0; i < coordinates.size(); i++) {
+            double[] latLon = coordinates.get(i);
+            if (seen.add(cacheKeyFor(latLon[0], latLon[1]))) {
+                distinct.add(latLon);
+                if (i < urgentCount) distinctUrgent++;
+            }
+        }
+
+        int[] remaining = {distinctUrgent};
+        if (remaining[0] == 0 && onUrgentResolved != null) {
+            onUrgentResolved.run();
+        }
+        for (int i = 0; i < distinct.size(); i++) {
+            boolean urgent = i < distinctUrgent;
+            double[] latLon = distinct.get(i);
+            lookup(context, latLon[0], latLon[1], new LocationUtils.GeocodeCallback() {
+                @Override
+                public void onSuccess(String address) {
+                    onResolved();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onResolved();
+                }
+
+                private void onResolved() {
+                    if (urgent && --remaining[0] == 0 && onUrgentResolved != null) {
+                        onUrgentResolved.run();
+                    }
+                }
+            });
+        }
+    }
+
+    @MainThread
+    private static void cancelRequest(@NonNull Request request) {
+        InFlightLookup lookup = inFlight.get(request.cacheKey);
+        if (lookup != null && lookup.waiters.remove(request) && lookup.waiters.isEmpty()) {
+            // Nobody is waiting anymore, skip the geocoder call if it has not started yet
+            inFlight.remove(request.cacheKey);
+            if (lookup.future != null && lookup.future.cancel(false)) {
+                cancelledLookups.incrementAndGet();
+            }
+        }
+    }
+
+    @MainThread
+    private static void completeLookup(@NonNull String key, @NonNull InFlightLookup lookup,
+                                       @Nullable String address, @Nullable String error) {
+        if (inFlight.get(key) == lookup) {
+            inFlight.remove(key);
+        }
+        if (address != null) {
+            memoryCache.put(key, address);
+        }
+        for (Request request : lookup.waiters) {
+            if (request.cancelled) continue;
+            request.deliver(address, error);
+        }
+    }
+
+    /**
+     * Reads the cell from disk, or geocodes and stores it
+     */
+    @NonNull
+    private static String load(@NonNull String key, double latitude, double longitude) throws IOException {
+        DiskImageCache disk = diskCache;
+        byte[] stored = disk != null ? disk.get(key) : null;
+        if (stored != null) {
+            diskHits.incrementAndGet();
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+
+        AddressResolver addressResolver = resolver;
+        if (addressResolver == null) {
+            throw new IOException("Geocoder not initialized");
+        }
+        geocoderCalls.incrementAndGet();
+        String address = addressResolver.resolve(latitude, longitude);
+        String value = address != null && !address.isEmpty() ? address : NO_ADDRESS;
+        if (disk != null) {
+            disk.put(key, value.getBytes(StandardCharsets.UTF_8));
+        }
+        return value;
+    }
+
+    /**
+     * Cell key, including the locale since the geocoder localizes addresses
+     */
+    @NonNull
+    static String cacheKeyFor(double latitude, double longitude) {
+        return Locale.getDefault().toLanguageTag() + ":" + cellIndex(latitude) + "," + cellIndex(longitude);
+    }
+
+    static long cellIndex(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    static double cellCenter(double degrees) {
+        return (cellIndex(degrees) + 0.5) * CELL_DEGREES;
+    }
+
+    private static final class PlatformResolver implements AddressResolver {
+        private final Context context;
+
+        PlatformResolver(@NonNull Context context) {
+            this.context = context;
+        }
+
+        @Nullable
+        @Override
+        public String resolve(double latitude, double longitude) throws IOException {
+            // Created per call so the current locale is used, which the cache key also includes
+            Geocoder geocoder = new Geocoder(context, Locale.getDefault());
+            List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
+            if (addresses == null || addresses.isEmpty()) {
+                return null;
+            }
+            return LocationUtils.formatAddress(addresses.get(0));
+        }
+    }
+}
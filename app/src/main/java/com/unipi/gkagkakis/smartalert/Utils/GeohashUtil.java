@@ -0,0 +1,159 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash encoding and radius coverage for prefix range queries
+ * A geohash prefix identifies a lat/lon cell, so a radius search becomes a few
+ * string range queries on a stored geohash followed by an exact distance check
+ */
+public final class GeohashUtil {
+    private GeohashUtil() {}
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    /** Precision stored on user documents (~4.8m x 4.8m cells) */
+    public static final int STORED_PRECISION = 9;
+
+    /** Sorts after every base32 character, closes a prefix range query */
+    public static final String RANGE_END_SUFFIX = "~";
+
+    @NonNull
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLon = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Geohash prefixes whose cells together cover every point within radiusKm of the center
+     * Uses the longest prefix whose cells are at least radiusKm tall and wide, so sampling the
+     * bounding box at its corners, edge midpoints and center hits every overlapping cell.
+     * @return Up to 9 distinct prefixes; a single empty prefix when the radius reaches a pole
+     */
+    @NonNull
+    public static List<String> coveringPrefixes(double latitude, double longitude, double radiusKm) {
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double latDelta = Math.toDegrees(angularRadius);
+        double sinRadius = Math.sin(angularRadius);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double lonDelta = sinRadius < cosLat
+                ? Math.toDegrees(Math.asin(sinRadius / cosLat))
+                : 360.0;
+
+        List<String> prefixes = new ArrayList<>(9);
+        if (latDelta >= 90.0 || lonDelta >= 180.0 || Math.abs(latitude) + latDelta >= 90.0) {
+            prefixes.add("");
+            return prefixes;
+        }
+
+        int precision = precisionFor(latDelta, lonDelta);
+        if (precision == 0) {
+            prefixes.add("");
+            return prefixes;
+        }
+
+        double[] lats = {latitude - latDelta, latitude, latitude + latDelta};
+        double[] lons = {wrapLongitude(longitude - lonDelta), longitude, wrapLongitude(longitude + lonDelta)};
+        for (double lat : lats) {
+            for (double lon : lons) {
+                String prefix = encode(lat, lon, precision);
+                if (!prefixes.contains(prefix)) {
+                    prefixes.add(prefix);
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * Geohash cells of a fixed precision that together cover every point within radiusKm
+     * Samples the bounding box at steps no wider than a cell, so every overlapping cell is hit
+     */
+    @NonNull
+    public static List<String> coveringCells(double latitude, double longitude, double radiusKm, int precision) {
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double latDelta = Math.toDegrees(angularRadius);
+        double sinRadius = Math.sin(angularRadius);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double lonDelta = sinRadius < cosLat
+                ? Math.toDegrees(Math.asin(sinRadius / cosLat))
+                : 180.0;
+
+        double cellLon = 360.0 / (1L << ((5 * precision + 1) / 2));
+        double cellLat = 180.0 / (1L << ((5 * precision) / 2));
+        double minLat = Math.max(-90.0, latitude - latDelta);
+        double maxLat = Math.min(90.0, latitude + latDelta);
+        int latSteps = (int) Math.ceil((maxLat - minLat) / cellLat);
+        int lonSteps = (int) Math.ceil(2 * lonDelta / cellLon);
+
+        List<String> cells = new ArrayList<>();
+        for (int i = 0; i <= latSteps; i++) {
+            double lat = Math.min(maxLat, minLat + i * cellLat);
+            for (int j = 0; j <= lonSteps; j++) {
+                double lon = wrapLongitude(Math.min(longitude + lonDelta, longitude - lonDelta + j * cellLon));
+                String cell = encode(lat, lon, precision);
+                if (!cells.contains(cell)) {
+                    cells.add(cell);
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static int precisionFor(double latDelta, double lonDelta) {
+        int precision = 0;
+        for (int p = 1; p <= STORED_PRECISION; p++) {
+            int lonBits = (5 * p + 1) / 2;
+            int latBits = (5 * p) / 2;
+            double cellLon = 360.0 / (1L << lonBits);
+            double cellLat = 180.0 / (1L << latBits);
+            if (cellLon < lonDelta || cellLat < latDelta) break;
+            precision = p;
+        }
+        return precision;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude < -180.0) return longitude + 360.0;
+        if (longitude >= 180.0) return longitude - 360.0;
+        return longitude;
+    }
+}
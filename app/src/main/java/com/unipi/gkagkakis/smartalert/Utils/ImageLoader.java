@@ -1,117 +1,411 @@
 package com.unipi.gkagkakis.smartalert.Utils;
 
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapFactory.Options;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
 import android.widget.ImageView;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
+import com.unipi.gkagkakis.smartalert.data.service.AlertImageStore;
 import com.unipi.gkagkakis.smartalert.data.service.Base64ImageService;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Loads alert images into ImageViews through a memory and a disk cache
+ * Decoded bitmaps live in an LruCache sized from the heap; downloaded bytes, including images
+ * from the alert_images collection, are kept on disk so a cold memory cache still skips the network. Base64 images are keyed by
+ * a hash of their content and only cached in memory, since their bytes are already local. That hash is computed on the
+ * loader threads, so the first bind of a Base64 image never hits memory but also never walks its payload on the main thread.
+ */
 public class ImageLoader {
 
+    private static final String TAG = "ImageLoader";
+    private static final String DISK_CACHE_DIR = "alert_images";
+    private static final long DISK_CACHE_BYTES = 50L * 1024 * 1024;
+
     private static final ExecutorService executor = Executors.newFixedThreadPool(4);
 
+    // Use an eighth of the heap for decoded bitmaps
+    private static final LruCache<String, Bitmap> memoryCache =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 1024 / 8)) {
+                @Override
+                protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
+                    return bitmap.getAllocationByteCount() / 1024;
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, @NonNull String key, @NonNull Bitmap oldValue, @Nullable Bitmap newValue) {
+                    if (evicted) {
+                        memoryEvictions.incrementAndGet();
+                    }
+                }
+            };
+
+    private static volatile DiskImageCache diskCache;
+
+    // Only touched on the main thread
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final Map<ImageView, Request> requestsByView = new WeakHashMap<>();
+    private static final Map<String, InFlightLoad> inFlight = new HashMap<>();
+    // Base64 strings are re-bound as the same instance, whose String hash is cached, so this
+    // lookup avoids digesting the payload again; weak keys leave the strings to their alerts
+    private static final Map<String, String> contentKeys = Collections.synchronizedMap(new WeakHashMap<>());
+    // Names the in-flight load of a Base64 image whose content key is not known yet
+    private static final AtomicInteger unhashedLoads = new AtomicInteger();
+
+    private static final AtomicInteger memoryHits = new AtomicInteger();
+    private static final AtomicInteger memoryMisses = new AtomicInteger();
+    private static final AtomicInteger memoryEvictions = new AtomicInteger();
+    private static final AtomicInteger diskHits = new AtomicInteger();
+    private static final AtomicInteger diskMisses = new AtomicInteger();
+    private static final AtomicInteger networkLoads = new AtomicInteger();
+    private static final AtomicInteger decodes = new AtomicInteger();
+    private static final AtomicInteger dedupedRequests = new AtomicInteger();
+    private static final AtomicInteger cancelledLoads = new AtomicInteger();
+
     public interface ImageLoadCallback {
         void onImageLoaded(@NonNull Bitmap bitmap);
         void onError(@NonNull Exception e);
     }
 
-    public static void loadImage(@NonNull String imageUrl, @NonNull ImageView imageView, @Nullable ImageLoadCallback callback) {
+    /**
+     * A pending load for one ImageView
+     */
+    public static final class Request {
+        private final String loadKey;
+        private final ImageView imageView;
+        private final ImageLoadCallback callback;
+        private boolean cancelled;
+
+        Request(String loadKey, ImageView imageView, @Nullable ImageLoadCallback callback) {
+            this.loadKey = loadKey;
+            this.imageView = imageView;
+            this.callback = callback;
+        }
+
+        @MainThread
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            cancelRequest(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void deliver(@Nullable Bitmap bitmap, @Nullable Exception error) {
+            if (bitmap != null) {
+                imageView.setImageBitmap(bitmap);
+                if (callback != null) {
+                    callback.onImageLoaded(bitmap);
+                }
+            } else {
+                imageView.setImageResource(android.R.drawable.ic_menu_report_image);
+                if (callback != null) {
+                    callback.onError(error != null ? error : new Exception("Failed to load image"));
+                }
+            }
+        }
+    }
+
+    private static final class InFlightLoad {
+        final List<Request> waiters = new ArrayList<>(1);
+        Future<?> future;
+    }
+
+    /**
+     * Snapshot of cache counters since process start
+     */
+    public static final class CacheStats {
+        public final int memoryHits;
+        public final int memoryMisses;
+        public final int memoryEvictions;
+        public final int diskHits;
+        public final int diskMisses;
+        public final int diskEvictions;
+        public final int networkLoads;
+        public final int decodes;
+        public final int dedupedRequests;
+        public final int cancelledLoads;
+
+        CacheStats(int memoryHits, int memoryMisses, int memoryEvictions, int diskHits, int diskMisses,
+                   int diskEvictions, int networkLoads, int decodes, int dedupedRequests, int cancelledLoads) {
+            this.memoryHits = memoryHits;
+            this.memoryMisses = memoryMisses;
+            this.memoryEvictions = memoryEvictions;
+            this.diskHits = diskHits;
+            this.diskMisses = diskMisses;
+            this.diskEvictions = diskEvictions;
+            this.networkLoads = networkLoads;
+            this.decodes = decodes;
+            this.dedupedRequests = dedupedRequests;
+            this.cancelledLoads = cancelledLoads;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "memory %d hits/%d misses/%d evictions, disk %d hits/%d misses/%d evictions, %d downloads, %d decodes, %d deduped, %d cancelled",
+                    memoryHits, memoryMisses, memoryEvictions, diskHits, diskMisses, diskEvictions, networkLoads, decodes,
+                    dedupedRequests, cancelledLoads);
+        }
+    }
+
+    /**
+     * Enables the disk cache; without it only decoded bitmaps are cached in memory
+     */
+    public static void init(@NonNull Context context) {
+        if (diskCache == null) {
+            synchronized (ImageLoader.class) {
+                if (diskCache == null) {
+                    File directory = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+                    diskCache = new DiskImageCache(directory, DISK_CACHE_BYTES);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    public static CacheStats getCacheStats() {
+        DiskImageCache disk = diskCache;
+        return new CacheStats(memoryHits.get(), memoryMisses.get(), memoryEvictions.get(), diskHits.get(),
+                diskMisses.get(), disk != null ? disk.evictionCount() : 0, networkLoads.get(), decodes.get(),
+                dedupedRequests.get(), cancelledLoads.get());
+    }
+
+    /**
+     * Loads an image into the view, cancelling whatever the view was loading before
+     * Concurrent loads of the same image share one download and decode. Must be called on the main thread.
+     * @return A handle that cancels delivery to this view
+     */
+    @MainThread
+    @NonNull
+    public static Request loadImage(@NonNull String imageUrl, @NonNull ImageView imageView, @Nullable ImageLoadCallback callback) {
+        cancel(imageView);
+
+        int targetWidth = targetWidthOf(imageView);
+        int targetHeight = targetHeightOf(imageView);
+        boolean isBase64 = imageUrl.startsWith("data:image");
+        // Bitmaps are decoded for the target size, so the size is part of the memory key
+        String sizeSuffix = "@" + targetWidth + "x" + targetHeight;
+        String sourceKey = isBase64 ? contentKeys.get(imageUrl) : imageUrl;
+        String cacheKey = sourceKey != null ? sourceKey + sizeSuffix : null;
+        Bitmap cached = cacheKey != null ? memoryCache.get(cacheKey) : null;
+        // Loads of a Base64 image not hashed yet are not shared, as that would mean comparing payloads here
+        String loadKey = cacheKey != null ? cacheKey : "unhashed:" + unhashedLoads.incrementAndGet();
+        Request request = new Request(loadKey, imageView, callback);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            request.deliver(cached, null);
+            return request;
+        }
+        memoryMisses.incrementAndGet();
+
         // Show placeholder or loading state
         imageView.setImageResource(android.R.drawable.ic_menu_gallery);
+        requestsByView.put(imageView, request);
 
-        // Check if it's a Base64 image
-        if (imageUrl.startsWith("data:image")) {
-            // Handle Base64 image
-            executor.execute(() -> {
-                try {
-                    Bitmap bitmap = Base64ImageService.decodeBase64ToBitmap(imageUrl);
+        InFlightLoad load = inFlight.get(loadKey);
+        if (load != null) {
+            // Same image is already being loaded for another view
+            dedupedRequests.incrementAndGet();
+            load.waiters.add(request);
+            return request;
+        }
 
-                    // Switch back to main thread to update UI
-                    imageView.post(() -> {
+        InFlightLoad newLoad = new InFlightLoad();
+        newLoad.waiters.add(request);
+        inFlight.put(loadKey, newLoad);
+        newLoad.future = executor.submit(() -> {
+            Bitmap bitmap = null;
+            Exception error = null;
+            try {
+                // Check if it's a Base64 image, otherwise handle Firebase Storage URL or regular URL
+                if (isBase64) {
+                    String key = cacheKey;
+                    if (key == null) {
+                        key = contentKeyFor(imageUrl) + sizeSuffix;
+                        // Another view may have decoded it while this load waited for its hash
+                        bitmap = memoryCache.get(key);
+                    }
+                    if (bitmap == null) {
+                        bitmap = decodeBase64(imageUrl, targetWidth, targetHeight);
                         if (bitmap != null) {
-                            imageView.setImageBitmap(bitmap);
-                            if (callback != null) {
-                                callback.onImageLoaded(bitmap);
-                            }
-                        } else {
-                            imageView.setImageResource(android.R.drawable.ic_menu_report_image);
-                            if (callback != null) {
-                                callback.onError(new Exception("Failed to decode Base64 image"));
-                            }
+                            memoryCache.put(key, bitmap);
                         }
-                    });
-
-                } catch (Exception e) {
-                    imageView.post(() -> {
-                        imageView.setImageResource(android.R.drawable.ic_menu_report_image);
-                        if (callback != null) {
-                            callback.onError(e);
-                        }
-                    });
+                    }
+                } else {
+                    bitmap = loadFromDiskOrNetwork(imageUrl, targetWidth, targetHeight);
+                    if (bitmap != null) {
+                        memoryCache.put(cacheKey, bitmap);
+                    }
                 }
-            });
-        } else {
-            // Handle Firebase Storage URL or regular URL
-            executor.execute(() -> {
-                try {
-                    Bitmap bitmap = downloadImage(imageUrl);
+                if (bitmap == null) {
+                    error = new Exception(isBase64 ? "Failed to decode Base64 image" : "Failed to download image");
+                }
+            } catch (Exception e) {
+                error = e;
+            }
 
-                    // Switch back to main thread to update UI
-                    imageView.post(() -> {
-                        if (bitmap != null) {
-                            imageView.setImageBitmap(bitmap);
-                            if (callback != null) {
-                                callback.onImageLoaded(bitmap);
-                            }
-                        } else {
-                            imageView.setImageResource(android.R.drawable.ic_menu_report_image);
-                            if (callback != null) {
-                                callback.onError(new Exception("Failed to download image"));
-                            }
-                        }
-                    });
+            // Switch back to main thread to update UI
+            Bitmap result = bitmap;
+            Exception failure = error;
+            mainHandler.post(() -> completeLoad(loadKey, newLoad, result, failure));
+        });
+        return request;
+    }
 
-                } catch (Exception e) {
-                    imageView.post(() -> {
-                        imageView.setImageResource(android.R.drawable.ic_menu_report_image);
-                        if (callback != null) {
-                            callback.onError(e);
-                        }
-                    });
-                }
-            });
+    /**
+     * Cancels the pending load of a view, e.g. when its row is recycled
+     */
+    @MainThread
+    public static void cancel(@NonNull ImageView imageView) {
+        Request request = requestsByView.get(imageView);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    @MainThread
+    private static void cancelRequest(@NonNull Request request) {
+        requestsByView.remove(request.imageView, request);
+
+        InFlightLoad load = inFlight.get(request.loadKey);
+        if (load != null && load.waiters.remove(request) && load.waiters.isEmpty()) {
+            // Nobody is waiting anymore, skip the work if it has not started yet
+            inFlight.remove(request.loadKey);
+            if (load.future != null && load.future.cancel(false)) {
+                cancelledLoads.incrementAndGet();
+            }
+        }
+    }
+
+    @MainThread
+    private static void completeLoad(@NonNull String loadKey, @NonNull InFlightLoad load,
+                                     @Nullable Bitmap bitmap, @Nullable Exception error) {
+        if (inFlight.get(loadKey) == load) {
+            inFlight.remove(loadKey);
+        }
+        for (Request request : load.waiters) {
+            if (request.cancelled) continue;
+            requestsByView.remove(request.imageView, request);
+            request.deliver(bitmap, error);
+        }
+    }
+
+    /**
+     * Hashes the payload in chunks, without copying it, and remembers the result for later binds
+     */
+    @WorkerThread
+    @NonNull
+    private static String contentKeyFor(@NonNull String imageUrl) throws IOException {
+        String key = contentKeys.get(imageUrl);
+        if (key == null) {
+            key = "base64:" + DiskImageCache.fileNameFor(new CharSequenceInputStream(imageUrl, 0));
+            contentKeys.put(imageUrl, key);
         }
+        return key;
     }
 
     @Nullable
-    private static Bitmap downloadImage(@NonNull String imageUrl) throws IOException {
+    private static Bitmap decodeBase64(@NonNull String imageUrl, int targetWidth, int targetHeight) {
+        decodes.incrementAndGet();
+        return Base64ImageService.decodeBase64ToBitmap(imageUrl, targetWidth, targetHeight);
+    }
+
+    @Nullable
+    private static Bitmap loadFromDiskOrNetwork(@NonNull String imageUrl, int targetWidth, int targetHeight) throws IOException {
+        DiskImageCache disk = diskCache;
+        byte[] data = disk != null ? disk.get(imageUrl) : null;
+        boolean downloaded = data == null;
+        if (downloaded) {
+            diskMisses.incrementAndGet();
+            data = AlertImageStore.isReference(imageUrl)
+                    ? fetchFromImageStore(imageUrl)
+                    : downloadImage(imageUrl);
+        } else {
+            diskHits.incrementAndGet();
+        }
+
+        decodes.incrementAndGet();
+        Bitmap bitmap = Base64ImageService.decodeSampledBitmap(data, targetWidth, targetHeight);
+        if (bitmap == null) {
+            Log.w(TAG, "Undecodable image data for " + imageUrl);
+        } else if (disk != null && downloaded) {
+            disk.put(imageUrl, data);
+        }
+        return bitmap;
+    }
+
+    @NonNull
+    private static byte[] fetchFromImageStore(@NonNull String reference) throws IOException {
+        networkLoads.incrementAndGet();
+        try {
+            return AlertImageStore.getInstance().loadImageBlocking(reference);
+        } catch (Exception e) {
+            throw new IOException("Failed to load stored image " + reference, e);
+        }
+    }
+
+    @NonNull
+    private static byte[] downloadImage(@NonNull String imageUrl) throws IOException {
+        networkLoads.incrementAndGet();
         URL url = new URL(imageUrl);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setDoInput(true);
         connection.connect();
 
-        InputStream input = connection.getInputStream();
-
-        // Use BitmapFactory.Options for better quality decoding
-        Options options = new Options();
-        options.inPreferQualityOverSpeed = true; // Prefer quality over speed
-        options.inDither = false; // Disable dithering for better quality
-        options.inScaled = false; // Don't scale during decode
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return buffer.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
 
-        Bitmap bitmap = BitmapFactory.decodeStream(input, null, options);
-        input.close();
-        connection.disconnect();
+    private static int targetWidthOf(@NonNull ImageView imageView) {
+        // Freshly inflated rows are not measured yet, fall back to their layout size or the screen
+        if (imageView.getWidth() > 0) return imageView.getWidth();
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params != null && params.width > 0) return params.width;
+        return imageView.getResources().getDisplayMetrics().widthPixels;
+    }
 
-        return bitmap;
+    private static int targetHeightOf(@NonNull ImageView imageView) {
+        if (imageView.getHeight() > 0) return imageView.getHeight();
+        ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        if (params != null && params.height > 0) return params.height;
+        return imageView.getResources().getDisplayMetrics().heightPixels;
     }
 }
@@ -1,27 +1,125 @@
 package com.unipi.gkagkakis.smartalert.Utils;
 
-import android.app.Activity;
 import android.content.Context;
 import android.location.Address;
-import android.location.Geocoder;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.widget.TextView;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class LocationUtils {
 
     private static final String TAG = "LocationUtils";
 
+    // Only touched on the main thread
+    private static final Map<TextView, AddressBinding> bindingsByView = new WeakHashMap<>();
+
     public interface GeocodeCallback {
         void onSuccess(String address);
         void onError(String error);
     }
 
+    /**
+     * The location a TextView is showing and the lookup that will replace it with an address
+     */
+    private static final class AddressBinding {
+        final String rawLocation;
+        final String format;
+        GeocodingService.Request request;
+
+        AddressBinding(String rawLocation, String format) {
+            this.rawLocation = rawLocation;
+            this.format = format;
+        }
+
+        boolean isPendingFor(String location, String textFormat) {
+            return request != null && !request.isFinished()
+                    && rawLocation.equals(location) && format.equals(textFormat);
+        }
+    }
+
+    /**
+     * Replaces the view's text with the address of the coordinates once it is known
+     * Cancels whatever the view was looking up before, and a result that arrives after the view
+     * was bound to another location is dropped. The caller sets the initial text, which stays
+     * if the location is not coordinates or has no address.
+     * @param format Format with one %s for the address, e.g. "Location: %s"
+     */
+    @MainThread
+    public static void bindAddress(@NonNull TextView view, @Nullable String rawLocation, @NonNull String format) {
+        AddressBinding current = bindingsByView.get(view);
+        if (current != null && current.isPendingFor(rawLocation, format)) {
+            // Rebound to the same location, e.g. after a status change; keep the lookup running
+            return;
+        }
+        cancelAddress(view);
+
+        double[] coordinates = parseCoordinatePair(rawLocation);
+        if (coordinates == null) {
+            return;
+        }
+
+        AddressBinding binding = new AddressBinding(rawLocation, format);
+        bindingsByView.put(view, binding);
+        binding.request = GeocodingService.lookup(view.getContext(), coordinates[0], coordinates[1], new GeocodeCallback() {
+            @Override
+            public void onSuccess(String address) {
+                if (bindingsByView.get(view) != binding) return;
+                bindingsByView.remove(view);
+                view.setText(String.format(Locale.getDefault(), binding.format, address));
+            }
+
+            @Override
+            public void onError(String error) {
+                // Keep the raw location the view already shows
+                bindingsByView.remove(view, binding);
+            }
+        });
+    }
+
+    /**
+     * Warms the address cache for locations about to be shown, so their rows bind with an address
+     * Locations that are not coordinates are skipped.
+     * @param rawLocations Locations in display priority, visible rows first
+     * @param urgentCount How many leading locations onUrgentResolved waits for
+     * @param onUrgentResolved Runs on the main thread once those are resolved or have failed
+     */
+    @MainThread
+    public static void prefetchAddresses(@NonNull Context context, @NonNull List<String> rawLocations,
+                                         int urgentCount, @Nullable Runnable onUrgentResolved) {
+        List<double[]> coordinates = new ArrayList<>(rawLocations.size());
+        int urgentCoordinates = 0;
+        for (int i = 0; i < rawLocations.size(); i++) {
+            double[] latLon = parseCoordinatePair(rawLocations.get(i));
+            if (latLon != null) {
+                coordinates.add(latLon);
+                if (i < urgentCount) urgentCoordinates++;
+            }
+        }
+        GeocodingService.prefetch(context, coordinates, urgentCoordinates, onUrgentResolved);
+    }
+
+    /**
+     * Cancels the pending address lookup of a view, e.g. when its row is recycled
+     */
+    @MainThread
+    public static void cancelAddress(@NonNull TextView view) {
+        AddressBinding binding = bindingsByView.remove(view);
+        if (binding != null && binding.request != null) {
+            binding.request.cancel();
+        }
+    }
+
     /**
      * Parse location string and get human-readable address
      */
@@ -31,65 +129,47 @@ public class LocationUtils {
             return;
         }
 
+        double[] coordinates = parseCoordinatePair(locationString);
+        if (coordinates != null) {
+            getAddressFromCoordinates(context, coordinates[0], coordinates[1], callback);
+            return;
+        }
+
+        // If not coordinates or parsing failed, return the original string
+        callback.onSuccess(locationString);
+    }
+
+    /**
+     * @return {latitude, longitude} if the string is in "lat,lng" format, otherwise null
+     */
+    @Nullable
+    private static double[] parseCoordinatePair(@Nullable String locationString) {
         // Check if it's coordinates format (lat,lng)
-        if (locationString.contains(",")) {
+        if (locationString != null && locationString.contains(",")) {
             String[] parts = locationString.split(",");
             if (parts.length == 2) {
                 try {
                     double latitude = Double.parseDouble(parts[0].trim());
                     double longitude = Double.parseDouble(parts[1].trim());
-                    getAddressFromCoordinates(context, latitude, longitude, callback);
-                    return;
+                    return new double[]{latitude, longitude};
                 } catch (NumberFormatException e) {
                     Log.w(TAG, "Invalid coordinate format: " + locationString);
                 }
             }
         }
-
-        // If not coordinates or parsing failed, return the original string
-        callback.onSuccess(locationString);
+        return null;
     }
 
+    /**
+     * Address of the coordinates through the shared GeocodingService cache
+     * The callback runs on the main thread.
+     */
     public static void getAddressFromCoordinates(Context context, double latitude, double longitude, GeocodeCallback callback) {
-        new Thread(() -> {
-            try {
-                Geocoder geocoder = new Geocoder(context, Locale.getDefault());
-                List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
-
-                if (addresses != null && !addresses.isEmpty()) {
-                    Address address = addresses.get(0);
-                    String formattedAddress = formatAddress(address);
-
-                    // Run callback on UI thread
-                    if (context instanceof Activity) {
-                        ((Activity) context).runOnUiThread(() -> callback.onSuccess(formattedAddress));
-                    } else {
-                        callback.onSuccess(formattedAddress);
-                    }
-                } else {
-                    if (context instanceof Activity) {
-                        ((Activity) context).runOnUiThread(() -> callback.onError("No address found"));
-                    } else {
-                        callback.onError("No address found");
-                    }
-                }
-
-            } catch (IOException e) {
-                Log.e(TAG, "Geocoding failed", e);
-                if (context instanceof Activity) {
-                    ((Activity) context).runOnUiThread(() -> callback.onError("Geocoding failed: " + e.getMessage()));
-                } else {
-                    callback.onError("Geocoding failed: " + e.getMessage());
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Unexpected error during geocoding", e);
-                if (context instanceof Activity) {
-                    ((Activity) context).runOnUiThread(() -> callback.onError("Unexpected error: " + e.getMessage()));
-                } else {
-                    callback.onError("Unexpected error: " + e.getMessage());
-                }
-            }
-        }).start();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            GeocodingService.lookup(context, latitude, longitude, callback);
+        } else {
+            new Handler(Looper.getMainLooper()).post(() -> GeocodingService.lookup(context, latitude, longitude, callback));
+        }
     }
 
     /**
@@ -97,7 +177,7 @@ public class LocationUtils {
      * @param address Address object from geocoder
      * @return Formatted address string
      */
-    private static String formatAddress(Address address) {
+    static String formatAddress(Address address) {
         StringBuilder formattedAddress = new StringBuilder();
 
         // Add address line if available
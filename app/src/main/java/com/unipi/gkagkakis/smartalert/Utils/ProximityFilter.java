@@ -0,0 +1,112 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Checks many points against one radius around a center without a Haversine call per point
+ * A bounding box in degrees rejects far points with plain comparisons, an equirectangular
+ * distance settles points clearly inside or outside the radius, and only points within its
+ * error margin of the radius get the exact CoordinatesUtil.calculateDistance check,
+ * so results always match the exact distance.
+ */
+public final class ProximityFilter {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    // Keeps rounding at the box edges from rejecting a point exactly on the radius
+    private static final double BOX_SLACK_DEGREES = 1e-9;
+    // With a wider error margin too few points are settled by the approximation to pay off
+    private static final double MAX_APPROXIMATION_ERROR = 0.25;
+    private static final double MAX_APPROXIMATION_LATITUDE = 89.0;
+
+    private final double latitude;
+    private final double longitude;
+    private final double radiusKm;
+    private final double latSpanDegrees;
+    private final double lonSpanDegrees;
+    private final double cosLatitude;
+    private final boolean approximate;
+    // Squared angular distances, in radians, that the approximation settles on its own
+    private final double insideBelow;
+    private final double outsideAbove;
+
+    /**
+     * @param radiusKm Radius in kilometers; points at exactly this distance are within it
+     */
+    public ProximityFilter(double latitude, double longitude, double radiusKm) {
+        if (!(radiusKm >= 0)) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radiusKm);
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusKm = radiusKm;
+
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        this.cosLatitude = Math.cos(Math.toRadians(latitude));
+        this.latSpanDegrees = Math.toDegrees(angularRadius) + BOX_SLACK_DEGREES;
+
+        // Longitude span widens towards the poles; past the pole every longitude can match
+        double sinRadius = Math.sin(angularRadius);
+        if (angularRadius < Math.PI / 2 && sinRadius < cosLatitude) {
+            this.lonSpanDegrees = Math.toDegrees(Math.asin(sinRadius / cosLatitude)) + BOX_SLACK_DEGREES;
+        } else {
+            this.lonSpanDegrees = 180.0;
+        }
+
+        // The approximation scales longitude by the center's cosine; its relative error grows
+        // with how much the cosine changes across the box, plus the curvature it ignores
+        double farthestLatitude = Math.abs(latitude) + Math.toDegrees(angularRadius);
+        double error = farthestLatitude < MAX_APPROXIMATION_LATITUDE
+                ? 2 * angularRadius * Math.tan(Math.toRadians(farthestLatitude)) + angularRadius * angularRadius
+                : Double.POSITIVE_INFINITY;
+        this.approximate = error <= MAX_APPROXIMATION_ERROR;
+        double inside = angularRadius * (1 - error);
+        double outside = angularRadius * (1 + error);
+        this.insideBelow = approximate ? inside * inside : 0;
+        this.outsideAbove = approximate ? outside * outside : 0;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    /**
+     * @return true if the point is within the radius of the center by Haversine distance
+     */
+    public boolean contains(double pointLatitude, double pointLongitude) {
+        double dLat = pointLatitude - latitude;
+        if (dLat > latSpanDegrees || dLat < -latSpanDegrees) return false;
+
+        double dLon = pointLongitude - longitude;
+        if (dLon > 180.0) {
+            dLon -= 360.0;
+        } else if (dLon < -180.0) {
+            dLon += 360.0;
+        }
+        if (dLon > lonSpanDegrees || dLon < -lonSpanDegrees) return false;
+
+        if (approximate) {
+            double x = Math.toRadians(dLon) * cosLatitude;
+            double y = Math.toRadians(dLat);
+            double squared = x * x + y * y;
+            if (squared < insideBelow) return true;
+            if (squared > outsideAbove) return false;
+        }
+        return CoordinatesUtil.calculateDistance(latitude, longitude, pointLatitude, pointLongitude) <= radiusKm;
+    }
+
+    /**
+     * Collects the points within the radius
+     * @param count Number of leading points of the arrays to check
+     * @param matches Receives the indices of matching points in input order; needs room for count
+     * @return Number of indices written to matches
+     */
+    public int filter(@NonNull double[] latitudes, @NonNull double[] longitudes, int count, @NonNull int[] matches) {
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            if (contains(latitudes[i], longitudes[i])) {
+                matches[matched++] = i;
+            }
+        }
+        return matched;
+    }
+}
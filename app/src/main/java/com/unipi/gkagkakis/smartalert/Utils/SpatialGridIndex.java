@@ -0,0 +1,158 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index that buckets items into lat/lon grid cells sized to the search radius
+ * Radius lookups only visit the cells that can contain a match, so grouping and
+ * proximity checks no longer need to compare every pair of items
+ */
+public class SpatialGridIndex<T> {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private static final class Entry<T> {
+        final T item;
+        final double latitude;
+        final double longitude;
+
+        Entry(T item, double latitude, double longitude) {
+            this.item = item;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    private final double radiusKm;
+    private final double angularRadius;
+    private final int rows;
+    private final int columns;
+    private final double cellLatDegrees;
+    private final double cellLonDegrees;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private int size;
+
+    /**
+     * @param radiusKm Search radius in kilometers, also used as the grid cell size
+     */
+    public SpatialGridIndex(double radiusKm) {
+        if (!(radiusKm > 0)) {
+            throw new IllegalArgumentException("Radius must be positive: " + radiusKm);
+        }
+        this.radiusKm = radiusKm;
+        this.angularRadius = radiusKm / EARTH_RADIUS_KM;
+
+        // Cell sizes divide the globe evenly so longitude wrap-around maps to the same column
+        double targetCellDegrees = Math.min(Math.toDegrees(angularRadius), 90.0);
+        this.rows = (int) Math.ceil(180.0 / targetCellDegrees);
+        this.columns = (int) Math.ceil(360.0 / targetCellDegrees);
+        this.cellLatDegrees = 180.0 / rows;
+        this.cellLonDegrees = 360.0 / columns;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+
+    public void add(@NonNull T item, double latitude, double longitude) {
+        long key = cellKey(rowOf(latitude), columnOf(longitude));
+        List<Entry<T>> bucket = cells.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(4);
+            cells.put(key, bucket);
+        }
+        bucket.add(new Entry<>(item, latitude, longitude));
+        size++;
+    }
+
+    /**
+     * Remove an item previously added at the given coordinates
+     * @return true if the item was found and removed
+     */
+    public boolean remove(@NonNull T item, double latitude, double longitude) {
+        long key = cellKey(rowOf(latitude), columnOf(longitude));
+        List<Entry<T>> bucket = cells.get(key);
+        if (bucket == null) return false;
+
+        Iterator<Entry<T>> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().item.equals(item)) {
+                iterator.remove();
+                size--;
+                if (bucket.isEmpty()) {
+                    cells.remove(key);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect all items within the index radius of the given point (Haversine distance)
+     * @param out List the matching items are appended to
+     */
+    public void findWithinRadius(double latitude, double longitude, @NonNull List<T> out) {
+        if (size == 0) return;
+        ProximityFilter filter = new ProximityFilter(latitude, longitude, radiusKm);
+
+        // Latitude span is exact for a great-circle radius
+        double latSpan = Math.toDegrees(angularRadius);
+        int rowMin = rowOf(latitude - latSpan);
+        int rowMax = rowOf(latitude + latSpan);
+
+        // Longitude span widens towards the poles; past the pole every column can match
+        double sinRadius = Math.sin(angularRadius);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        boolean allColumns = sinRadius >= cosLat;
+        int colStart = 0;
+        int colCount = columns;
+        if (!allColumns) {
+            double lonSpan = Math.toDegrees(Math.asin(sinRadius / cosLat));
+            colStart = (int) Math.floor((longitude - lonSpan + 180.0) / cellLonDegrees);
+            int colEnd = (int) Math.floor((longitude + lonSpan + 180.0) / cellLonDegrees);
+            colCount = Math.min(colEnd - colStart + 1, columns);
+        }
+
+        for (int row = rowMin; row <= rowMax; row++) {
+            for (int i = 0; i < colCount; i++) {
+                List<Entry<T>> bucket = cells.get(cellKey(row, Math.floorMod(colStart + i, columns)));
+                if (bucket == null) continue;
+
+                for (Entry<T> entry : bucket) {
+                    if (filter.contains(entry.latitude, entry.longitude)) {
+                        out.add(entry.item);
+                    }
+                }
+            }
+        }
+    }
+
+    private int rowOf(double latitude) {
+        int row = (int) Math.floor((latitude + 90.0) / cellLatDegrees);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    private int columnOf(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180.0) / cellLonDegrees), columns);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -2,19 +2,37 @@ package com.unipi.gkagkakis.smartalert.data.repository;
 
 import androidx.annotation.NonNull;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
+import com.unipi.gkagkakis.smartalert.Utils.ProximityFilter;
+import com.unipi.gkagkakis.smartalert.data.service.AlertImageStore;
 import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertChange;
 import com.unipi.gkagkakis.smartalert.domain.repository.SubmittedAlertRepository;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 public class SubmittedAlertRepositoryImpl implements SubmittedAlertRepository {
 
     private static final String COLLECTION_SUBMITTED_ALERTS = "submitted_alerts";
+    private static final String COLLECTION_REPORTS = "reports";
+    // Firestore's limit on writes in one batch
+    private static final int MAX_BATCH_WRITES = 500;
     private final CollectionReference submittedAlertsRef;
 
     private static volatile SubmittedAlertRepository INSTANCE;
@@ -41,6 +59,89 @@ public class SubmittedAlertRepositoryImpl implements SubmittedAlertRepository {
                 .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Unknown error")));
     }
 
+    @Override
+    public void createSubmittedAlert(@NonNull SubmittedAlert submittedAlert, @NonNull String idempotencyKey,
+                                     @NonNull CreateSubmittedAlertCallback callback) {
+        DocumentReference alertRef = submittedAlertsRef.document(idempotencyKey);
+
+        // Create only: an earlier attempt may have landed after it timed out, and other reports
+        // or a moderator may have touched the alert since; writing it again would undo that
+        submittedAlertsRef.getFirestore().runTransaction(transaction -> {
+                    if (transaction.get(alertRef).exists()) {
+                        return null;
+                    }
+                    transaction.set(alertRef, submittedAlert);
+                    return null;
+                })
+                .addOnSuccessListener(aVoid -> callback.onSuccess(idempotencyKey))
+                .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Unknown error")));
+    }
+
+    @Override
+    public void findRecentNearby(@NonNull String type, double latitude, double longitude, double radiusKm,
+                                 @NonNull Date since, @NonNull FindNearbyCallback callback) {
+        // Only read alerts whose geohash falls in a cell overlapping the radius
+        List<String> prefixes = GeohashUtil.coveringPrefixes(latitude, longitude, radiusKm);
+        List<Task<QuerySnapshot>> queries = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            queries.add(submittedAlertsRef
+                    .whereEqualTo("type", type)
+                    .whereGreaterThanOrEqualTo("createdAt", since)
+                    .orderBy("geohash")
+                    .startAt(prefix)
+                    .endAt(prefix + GeohashUtil.RANGE_END_SUFFIX)
+                    .get());
+        }
+
+        Tasks.whenAllSuccess(queries)
+                .addOnSuccessListener(results -> {
+                    ProximityFilter filter = new ProximityFilter(latitude, longitude, radiusKm);
+                    List<SubmittedAlert> candidates = new ArrayList<>();
+                    List<Double> distances = new ArrayList<>();
+                    for (Object result : results) {
+                        for (QueryDocumentSnapshot document : (QuerySnapshot) result) {
+                            SubmittedAlert submittedAlert = document.toObject(SubmittedAlert.class);
+                            submittedAlert.setId(document.getId());
+                            if (!submittedAlert.hasCoordinates()) continue;
+
+                            // Geohash cells overshoot the radius; only matches need their distance for ordering
+                            if (!filter.contains(submittedAlert.getLatitude(), submittedAlert.getLongitude())) continue;
+                            double distance = CoordinatesUtil.calculateDistance(latitude, longitude,
+                                    submittedAlert.getLatitude(), submittedAlert.getLongitude());
+
+                            int index = 0;
+                            while (index < distances.size() && distances.get(index) <= distance) index++;
+                            candidates.add(index, submittedAlert);
+                            distances.add(index, distance);
+                        }
+                    }
+                    callback.onSuccess(candidates);
+                })
+                .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Failed to query nearby alerts")));
+    }
+
+    @Override
+    public void attachReport(@NonNull String alertId, @NonNull SubmittedAlert report, @NonNull String idempotencyKey,
+                             @NonNull CreateSubmittedAlertCallback callback) {
+        DocumentReference alertRef = submittedAlertsRef.document(alertId);
+        DocumentReference reportRef = alertRef.collection(COLLECTION_REPORTS).document(idempotencyKey);
+
+        submittedAlertsRef.getFirestore().runTransaction(transaction -> {
+                    if (!transaction.get(alertRef).exists()) {
+                        throw new FirebaseFirestoreException("Alert " + alertId + " no longer exists",
+                                FirebaseFirestoreException.Code.NOT_FOUND);
+                    }
+                    if (transaction.get(reportRef).exists()) {
+                        return null;
+                    }
+                    transaction.set(reportRef, report);
+                    transaction.update(alertRef, "reportCount", FieldValue.increment(1));
+                    return null;
+                })
+                .addOnSuccessListener(aVoid -> callback.onSuccess(alertId))
+                .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Failed to attach report")));
+    }
+
     @Override
     public void getAllSubmittedAlerts(@NonNull GetAllSubmittedAlertsCallback callback) {
         submittedAlertsRef.orderBy("createdAt", com.google.firebase.firestore.Query.Direction.DESCENDING)
@@ -57,10 +158,86 @@ public class SubmittedAlertRepositoryImpl implements SubmittedAlertRepository {
                 .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Failed to fetch submitted alerts")));
     }
 
+    @NonNull
+    @Override
+    public ListenerHandle listenToSubmittedAlerts(@NonNull SubmittedAlertChangesListener listener) {
+        ListenerRegistration registration = submittedAlertsRef
+                .orderBy("createdAt", com.google.firebase.firestore.Query.Direction.DESCENDING)
+                .addSnapshotListener((queryDocumentSnapshots, e) -> {
+                    if (e != null) {
+                        listener.onError(e);
+                        return;
+                    }
+                    if (queryDocumentSnapshots == null) return;
+
+                    List<SubmittedAlertChange> changes = new ArrayList<>();
+                    for (DocumentChange documentChange : queryDocumentSnapshots.getDocumentChanges()) {
+                        QueryDocumentSnapshot document = documentChange.getDocument();
+                        SubmittedAlert submittedAlert = document.toObject(SubmittedAlert.class);
+                        submittedAlert.setId(document.getId());
+                        changes.add(new SubmittedAlertChange(toChangeType(documentChange.getType()), submittedAlert));
+                    }
+                    if (!changes.isEmpty()) {
+                        listener.onChanges(changes);
+                    }
+                });
+        return registration::remove;
+    }
+
+    private static SubmittedAlertChange.Type toChangeType(DocumentChange.Type type) {
+        switch (type) {
+            case MODIFIED:
+                return SubmittedAlertChange.Type.MODIFIED;
+            case REMOVED:
+                return SubmittedAlertChange.Type.REMOVED;
+            default:
+                return SubmittedAlertChange.Type.ADDED;
+        }
+    }
+
     @Override
     public void deleteSubmittedAlert(@NonNull String alertId, @NonNull DeleteSubmittedAlertCallback callback) {
-        submittedAlertsRef.document(alertId)
-                .delete()
+        DocumentReference alertRef = submittedAlertsRef.document(alertId);
+        FirebaseFirestore firestore = submittedAlertsRef.getFirestore();
+        Task<DocumentSnapshot> alertTask = alertRef.get();
+        Task<QuerySnapshot> reportsTask = alertRef.collection(COLLECTION_REPORTS).get();
+
+        // Firestore keeps subcollections of a deleted document, so the attached reports go first,
+        // together with the full images the alert and its reports keep in the alert_images collection
+        Tasks.whenAll(alertTask, reportsTask)
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) return Tasks.<Void>forException(task.getException());
+                    List<Task<Void>> deletes = new ArrayList<>();
+                    AlertImageStore imageStore = AlertImageStore.getInstance();
+                    String imageUrl = alertTask.getResult().getString("imageUrl");
+                    if (AlertImageStore.isReference(imageUrl)) {
+                        deletes.add(imageStore.deleteImage(imageUrl));
+                    }
+
+                    WriteBatch batch = firestore.batch();
+                    int writes = 0;
+                    for (QueryDocumentSnapshot report : reportsTask.getResult()) {
+                        String reportImageUrl = report.getString("imageUrl");
+                        if (AlertImageStore.isReference(reportImageUrl)) {
+                            deletes.add(imageStore.deleteImage(reportImageUrl));
+                        }
+                        batch.delete(report.getReference());
+                        if (++writes == MAX_BATCH_WRITES) {
+                            deletes.add(batch.commit());
+                            batch = firestore.batch();
+                            writes = 0;
+                        }
+                    }
+                    if (writes > 0) {
+                        deletes.add(batch.commit());
+                    }
+                    return Tasks.whenAll(deletes);
+                })
+                // Deleted last, so a failure leaves the alert listed and the delete can be repeated
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) return task;
+                    return alertRef.delete();
+                })
                 .addOnSuccessListener(aVoid -> callback.onSuccess())
                 .addOnFailureListener(e -> callback.onError(e != null ? e : new RuntimeException("Failed to delete submitted alert")));
     }
@@ -0,0 +1,180 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Stores full-size alert images in a separate, lazily loaded Firestore collection
+ * Used when Storage is unavailable, so alert documents only carry a thumbnail and a
+ * reference like "alert_images/{id}". The Base64 payload is split across chunk documents
+ * to stay under the Firestore document size limit.
+ */
+public class AlertImageStore {
+
+    private static final String TAG = "AlertImageStore";
+    private static final String COLLECTION = "alert_images";
+    private static final String CHUNKS = "chunks";
+    public static final String REFERENCE_PREFIX = COLLECTION + "/";
+
+    // Well below the 1 MiB document limit once field names and overhead are added
+    private static final int CHUNK_CHARS = 512 * 1024;
+    // Firestore's limit on writes in one batch
+    private static final int MAX_BATCH_WRITES = 500;
+
+    private static volatile AlertImageStore INSTANCE;
+
+    private final FirebaseFirestore firestore;
+
+    private AlertImageStore() {
+        this.firestore = FirebaseFirestore.getInstance();
+    }
+
+    public static AlertImageStore getInstance() {
+        if (INSTANCE == null) {
+            synchronized (AlertImageStore.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AlertImageStore();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    public interface SaveImageCallback {
+        void onSuccess(@NonNull String reference);
+        void onError(@NonNull Exception e);
+    }
+
+    public static boolean isReference(@Nullable String imageUrl) {
+        return imageUrl != null && imageUrl.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * Writes the image and its chunks in one batch
+     * @param jpegData Encoded JPEG bytes
+     */
+    public void saveImage(@NonNull byte[] jpegData, @NonNull SaveImageCallback callback) {
+        String payload = Base64.encodeToString(jpegData, Base64.NO_WRAP);
+        int chunkCount = (payload.length() + CHUNK_CHARS - 1) / CHUNK_CHARS;
+
+        DocumentReference imageDoc = firestore.collection(COLLECTION).document();
+        CollectionReference chunks = imageDoc.collection(CHUNKS);
+        WriteBatch batch = firestore.batch();
+
+        Map<String, Object> imageData = new HashMap<>();
+        imageData.put("contentType", "image/jpeg");
+        imageData.put("size", jpegData.length);
+        imageData.put("chunkCount", chunkCount);
+        imageData.put("createdAt", FieldValue.serverTimestamp());
+        batch.set(imageDoc, imageData);
+
+        for (int i = 0; i < chunkCount; i++) {
+            Map<String, Object> chunk = new HashMap<>();
+            chunk.put("index", i);
+            chunk.put("data", payload.substring(i * CHUNK_CHARS, Math.min(payload.length(), (i + 1) * CHUNK_CHARS)));
+            batch.set(chunks.document(String.valueOf(i)), chunk);
+        }
+
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Stored image " + imageDoc.getId() + " in " + chunkCount + " chunks");
+                    callback.onSuccess(REFERENCE_PREFIX + imageDoc.getId());
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to store image", e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * Reads and reassembles a stored image; blocks, so call it off the main thread
+     * @return Encoded JPEG bytes
+     */
+    @WorkerThread
+    @NonNull
+    public byte[] loadImageBlocking(@NonNull String reference) throws Exception {
+        String imageId = reference.substring(REFERENCE_PREFIX.length());
+        QuerySnapshot snapshot;
+        try {
+            snapshot = Tasks.await(firestore.collection(COLLECTION)
+                    .document(imageId)
+                    .collection(CHUNKS)
+                    .orderBy("index")
+                    .get());
+        } catch (ExecutionException e) {
+            throw new Exception("Failed to load image " + imageId, e.getCause());
+        }
+
+        if (snapshot.isEmpty()) {
+            throw new Exception("Image not found: " + imageId);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (DocumentSnapshot chunk : snapshot.getDocuments()) {
+            String data = chunk.getString("data");
+            if (data == null) {
+                throw new Exception("Corrupt image chunk " + chunk.getId() + " of " + imageId);
+            }
+            // Chunk boundaries fall on multiples of 4 characters, so each chunk decodes on its own
+            byte[] bytes = Base64.decode(data, Base64.NO_WRAP);
+            output.write(bytes, 0, bytes.length);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Deletes a stored image, its chunks first and then the image document
+     * Safe to repeat; an image that is already gone counts as deleted.
+     */
+    @NonNull
+    public Task<Void> deleteImage(@NonNull String reference) {
+        DocumentReference imageDoc = firestore.collection(COLLECTION).document(reference.substring(REFERENCE_PREFIX.length()));
+
+        // Firestore keeps subcollections of a deleted document, so the chunks go first
+        return imageDoc.collection(CHUNKS).get()
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) return Tasks.<Void>forException(task.getException());
+                    List<Task<Void>> batches = new ArrayList<>();
+                    WriteBatch batch = firestore.batch();
+                    int writes = 0;
+                    for (QueryDocumentSnapshot chunk : task.getResult()) {
+                        batch.delete(chunk.getReference());
+                        if (++writes == MAX_BATCH_WRITES) {
+                            batches.add(batch.commit());
+                            batch = firestore.batch();
+                            writes = 0;
+                        }
+                    }
+                    if (writes > 0) {
+                        batches.add(batch.commit());
+                    }
+                    return Tasks.whenAll(batches);
+                })
+                .continueWithTask(task -> {
+                    if (!task.isSuccessful()) return task;
+                    return imageDoc.delete();
+                });
+    }
+}
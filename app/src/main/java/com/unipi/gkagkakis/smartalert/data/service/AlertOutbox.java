@@ -0,0 +1,340 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Durable local queue of alert submissions that Firestore has not accepted yet
+ * Rows live in SQLite and prepared images as files next to it, so a submission made offline
+ * or cut off by a process death survives until AlertOutboxWorker replays it.
+ * Whoever sends a row claims it first for a limited lease, so the direct submit and the worker
+ * never send it at the same time. A row failing MAX_ATTEMPTS times is dead-lettered: it stays
+ * in the table with its last error but is no longer replayed.
+ * All methods block; call them off the main thread, e.g. on executor().
+ */
+public class AlertOutbox {
+
+    private static final String TAG = "AlertOutbox";
+    private static final String DATABASE_NAME = "alert_outbox.db";
+    private static final int DATABASE_VERSION = 3;
+    private static final String TABLE = "pending_alerts";
+    private static final String IMAGE_DIR = "alert_outbox";
+
+    public static final int MAX_ATTEMPTS = 8;
+    // Longer than a submission may take, so a live sender never loses its claim
+    public static final long CLAIM_LEASE_MS = 5 * 60 * 1000L;
+
+    private static final String COL_KEY = "idempotency_key";
+    private static final String COL_USER_ID = "user_id";
+    private static final String COL_TYPE = "type";
+    private static final String COL_SEVERITY = "severity";
+    private static final String COL_LOCATION = "location";
+    private static final String COL_DESCRIPTION = "description";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_IMAGE_PATH = "image_path";
+    private static final String COL_IMAGE_WIDTH = "image_width";
+    private static final String COL_IMAGE_HEIGHT = "image_height";
+    private static final String COL_THUMBNAIL_URL = "thumbnail_url";
+    private static final String COL_IMAGE_URL = "image_url";
+    private static final String COL_PARENT_ALERT_ID = "parent_alert_id";
+    private static final String COL_ATTEMPTS = "attempts";
+    private static final String COL_LAST_ERROR = "last_error";
+    private static final String COL_CLAIMED_UNTIL = "claimed_until";
+    private static final String COL_DEAD = "dead";
+
+    // Rows that may still be sent and that nobody is sending right now
+    private static final String CLAIMABLE = COL_DEAD + " = 0 AND " + COL_CLAIMED_UNTIL + " <= ?";
+
+    @VisibleForTesting
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    private static volatile AlertOutbox INSTANCE;
+
+    // One thread keeps the app's outbox writes in submission order
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final OutboxDbHelper dbHelper;
+    private final File imageDir;
+    private final Clock clock;
+
+    @VisibleForTesting
+    AlertOutbox(@NonNull Context context, @NonNull Clock clock) {
+        Context appContext = context.getApplicationContext();
+        this.dbHelper = new OutboxDbHelper(appContext);
+        // Files, not cache: the system must not evict an image that has not been sent yet
+        this.imageDir = new File(appContext.getFilesDir(), IMAGE_DIR);
+        this.clock = clock;
+    }
+
+    public static AlertOutbox getInstance(@NonNull Context context) {
+        if (INSTANCE == null) {
+            synchronized (AlertOutbox.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AlertOutbox(context, System::currentTimeMillis);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    @NonNull
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Stores the submission and its prepared image, if any
+     * The row starts out claimed by the caller, who sends it or calls release().
+     */
+    @WorkerThread
+    public void enqueue(@NonNull PendingAlert alert, @Nullable byte[] imageData) throws IOException {
+        if (imageData != null) {
+            if (!imageDir.exists() && !imageDir.mkdirs()) {
+                throw new IOException("Could not create " + imageDir);
+            }
+            File file = new File(imageDir, alert.getIdempotencyKey() + ".jpg");
+            try (FileOutputStream output = new FileOutputStream(file)) {
+                output.write(imageData);
+            }
+            alert.setImagePath(file.getAbsolutePath());
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COL_KEY, alert.getIdempotencyKey());
+        values.put(COL_USER_ID, alert.getUserId());
+        values.put(COL_TYPE, alert.getType());
+        values.put(COL_SEVERITY, alert.getSeverity());
+        values.put(COL_LOCATION, alert.getLocation());
+        values.put(COL_DESCRIPTION, alert.getDescription());
+        values.put(COL_CREATED_AT, alert.getCreatedAt());
+        values.put(COL_IMAGE_PATH, alert.getImagePath());
+        values.put(COL_IMAGE_WIDTH, alert.getImageWidth());
+        values.put(COL_IMAGE_HEIGHT, alert.getImageHeight());
+        values.put(COL_THUMBNAIL_URL, alert.getThumbnailUrl());
+        values.put(COL_IMAGE_URL, alert.getImageUrl());
+        values.put(COL_PARENT_ALERT_ID, alert.getParentAlertId());
+        values.put(COL_ATTEMPTS, alert.getAttempts());
+        values.put(COL_CLAIMED_UNTIL, clock.currentTimeMillis() + CLAIM_LEASE_MS);
+        dbHelper.getWritableDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * Oldest claimable submissions first, with repeatedly failing ones behind those not tried yet
+     * The rows are not claimed yet; call claim() before sending each one.
+     */
+    @WorkerThread
+    @NonNull
+    public List<PendingAlert> nextBatch(int limit) {
+        List<PendingAlert> batch = new ArrayList<>();
+        String[] args = {String.valueOf(clock.currentTimeMillis())};
+        try (Cursor cursor = dbHelper.getReadableDatabase().query(TABLE, null, CLAIMABLE, args, null, null,
+                COL_ATTEMPTS + " ASC, " + COL_CREATED_AT + " ASC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                batch.add(fromCursor(cursor));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return Number of submissions still to be sent, claimed or not; dead-lettered ones do not count
+     */
+    @WorkerThread
+    public long count() {
+        return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), TABLE, COL_DEAD + " = 0");
+    }
+
+    /**
+     * Takes the row for sending until the lease runs out
+     * @return false if someone else holds it, or it was sent or dead-lettered meanwhile
+     */
+    @WorkerThread
+    public boolean claim(@NonNull String idempotencyKey) {
+        long now = clock.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put(COL_CLAIMED_UNTIL, now + CLAIM_LEASE_MS);
+        return dbHelper.getWritableDatabase().update(TABLE, values, COL_KEY + " = ? AND " + CLAIMABLE,
+                new String[]{idempotencyKey, String.valueOf(now)}) == 1;
+    }
+
+    /**
+     * Gives up a claim without counting an attempt, e.g. when the device turned out to be offline
+     */
+    @WorkerThread
+    public void release(@NonNull String idempotencyKey) {
+        ContentValues values = new ContentValues();
+        values.put(COL_CLAIMED_UNTIL, 0);
+        dbHelper.getWritableDatabase().update(TABLE, values, COL_KEY + " = ?", new String[]{idempotencyKey});
+    }
+
+    /**
+     * @return The prepared image bytes, or null if the alert has none or the file is gone
+     */
+    @WorkerThread
+    @Nullable
+    public byte[] loadImage(@NonNull PendingAlert alert) {
+        String path = alert.getImagePath();
+        if (path == null) return null;
+        try {
+            return Files.readAllBytes(new File(path).toPath());
+        } catch (IOException e) {
+            Log.w(TAG, "Pending image missing for " + alert.getIdempotencyKey(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Records where the image was stored, so a replay skips straight to creating the alert
+     */
+    @WorkerThread
+    public void markImageStored(@NonNull String idempotencyKey, @Nullable String imageUrl, @Nullable String thumbnailUrl) {
+        ContentValues values = new ContentValues();
+        values.put(COL_IMAGE_URL, imageUrl);
+        values.put(COL_THUMBNAIL_URL, thumbnailUrl);
+        dbHelper.getWritableDatabase().update(TABLE, values, COL_KEY + " = ?", new String[]{idempotencyKey});
+    }
+
+    /**
+     * Records which alert the report goes under, so a replay targets the same one
+     */
+    @WorkerThread
+    public void markParent(@NonNull String idempotencyKey, @NonNull String parentAlertId) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PARENT_ALERT_ID, parentAlertId);
+        dbHelper.getWritableDatabase().update(TABLE, values, COL_KEY + " = ?", new String[]{idempotencyKey});
+    }
+
+    /**
+     * Counts a failed attempt and releases the claim
+     * @return true if that was the last attempt and the submission is now dead-lettered
+     */
+    @WorkerThread
+    public boolean recordFailure(@NonNull String idempotencyKey, @Nullable String error) {
+        return countAttempt(idempotencyKey, error, COL_CLAIMED_UNTIL + " = 0, ");
+    }
+
+    /**
+     * Counts an attempt that gave up waiting but keeps the claim until its lease runs out
+     * The abandoned write may still land, so nobody may send the row again before then.
+     * @return true if that was the last attempt and the submission is now dead-lettered
+     */
+    @WorkerThread
+    public boolean recordTimeout(@NonNull String idempotencyKey, @Nullable String error) {
+        return countAttempt(idempotencyKey, error, "");
+    }
+
+    private boolean countAttempt(@NonNull String idempotencyKey, @Nullable String error, @NonNull String releaseClaim) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.execSQL("UPDATE " + TABLE + " SET " + COL_ATTEMPTS + " = " + COL_ATTEMPTS + " + 1, "
+                + COL_LAST_ERROR + " = ?, " + releaseClaim
+                + COL_DEAD + " = CASE WHEN " + COL_ATTEMPTS + " + 1 >= " + MAX_ATTEMPTS + " THEN 1 ELSE 0 END"
+                + " WHERE " + COL_KEY + " = ?", new Object[]{error, idempotencyKey});
+        boolean dead = DatabaseUtils.queryNumEntries(db, TABLE, COL_KEY + " = ? AND " + COL_DEAD + " = 1",
+                new String[]{idempotencyKey}) > 0;
+        if (dead) {
+            Log.e(TAG, "Giving up on " + idempotencyKey + " after " + MAX_ATTEMPTS + " attempts: " + error);
+        }
+        return dead;
+    }
+
+    /**
+     * Drops a submission Firestore has accepted, together with its image file
+     */
+    @WorkerThread
+    public void remove(@NonNull PendingAlert alert) {
+        dbHelper.getWritableDatabase().delete(TABLE, COL_KEY + " = ?", new String[]{alert.getIdempotencyKey()});
+        String path = alert.getImagePath();
+        if (path != null && !new File(path).delete()) {
+            Log.w(TAG, "Could not delete pending image " + path);
+        }
+    }
+
+    @VisibleForTesting
+    void close() {
+        dbHelper.close();
+    }
+
+    @NonNull
+    private static PendingAlert fromCursor(@NonNull Cursor cursor) {
+        PendingAlert alert = new PendingAlert(
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_KEY)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_USER_ID)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_TYPE)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_SEVERITY)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_LOCATION)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_DESCRIPTION)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COL_CREATED_AT)));
+        alert.setImagePath(cursor.getString(cursor.getColumnIndexOrThrow(COL_IMAGE_PATH)));
+        alert.setImageSize(cursor.getInt(cursor.getColumnIndexOrThrow(COL_IMAGE_WIDTH)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(COL_IMAGE_HEIGHT)));
+        alert.setThumbnailUrl(cursor.getString(cursor.getColumnIndexOrThrow(COL_THUMBNAIL_URL)));
+        alert.setImageUrl(cursor.getString(cursor.getColumnIndexOrThrow(COL_IMAGE_URL)));
+        alert.setParentAlertId(cursor.getString(cursor.getColumnIndexOrThrow(COL_PARENT_ALERT_ID)));
+        alert.setAttempts(cursor.getInt(cursor.getColumnIndexOrThrow(COL_ATTEMPTS)));
+        return alert;
+    }
+
+    private static class OutboxDbHelper extends SQLiteOpenHelper {
+
+        OutboxDbHelper(@NonNull Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                    + COL_KEY + " TEXT PRIMARY KEY NOT NULL, "
+                    + COL_USER_ID + " TEXT NOT NULL, "
+                    + COL_TYPE + " TEXT NOT NULL, "
+                    + COL_SEVERITY + " TEXT NOT NULL, "
+                    + COL_LOCATION + " TEXT NOT NULL, "
+                    + COL_DESCRIPTION + " TEXT NOT NULL, "
+                    + COL_CREATED_AT + " INTEGER NOT NULL, "
+                    + COL_IMAGE_PATH + " TEXT, "
+                    + COL_IMAGE_WIDTH + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_IMAGE_HEIGHT + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_THUMBNAIL_URL + " TEXT, "
+                    + COL_IMAGE_URL + " TEXT, "
+                    + COL_PARENT_ALERT_ID + " TEXT, "
+                    + COL_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_LAST_ERROR + " TEXT, "
+                    + COL_CLAIMED_UNTIL + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_DEAD + " INTEGER NOT NULL DEFAULT 0)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Migrate step by step rather than drop unsent alerts
+            if (oldVersion < 2) {
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_CLAIMED_UNTIL + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_DEAD + " INTEGER NOT NULL DEFAULT 0");
+            }
+            if (oldVersion < 3) {
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_PARENT_ALERT_ID + " TEXT");
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.unipi.gkagkakis.smartalert.model.PreparedImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared background pipeline that turns a picked image into a PreparedImage
+ * Decodes with a bounds-first subsample, so a large camera photo is never held at full
+ * resolution, then scales to the exact bound and compresses. Each stage reports progress.
+ */
+public final class ImageProcessor {
+
+    private static final String TAG = "ImageProcessor";
+
+    // Image work is memory heavy, so alerts are processed one or two at a time
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2);
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    public static final int DEFAULT_QUALITY = 80;
+
+    // Inline thumbnails stay at a few KB so alert documents remain small
+    private static final int THUMBNAIL_MAX_SIZE = 160;
+    private static final int THUMBNAIL_QUALITY = 60;
+
+    private ImageProcessor() {
+    }
+
+    public enum Stage {
+        DECODE,
+        RESIZE,
+        COMPRESS,
+        UPLOAD
+    }
+
+    public interface PrepareCallback {
+        void onSuccess(@NonNull PreparedImage image);
+
+        void onError(@NonNull Exception e);
+
+        void onProgress(int progress);
+    }
+
+    public interface ProgressListener {
+        /**
+         * @param stagePercent Progress within the stage, 0 to 100
+         */
+        void onProgress(@NonNull Stage stage, int stagePercent);
+    }
+
+    @NonNull
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Processes the image on the shared executor with the default size and quality
+     * Callbacks run on the main thread.
+     */
+    public static void prepareAsync(@NonNull Context context, @NonNull Uri uri, @NonNull PrepareCallback callback) {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        EXECUTOR.execute(() -> {
+            try {
+                PreparedImage image = prepare(context, uri, DEFAULT_MAX_SIZE, DEFAULT_QUALITY,
+                        (stage, stagePercent) -> mainHandler.post(() -> callback.onProgress(processingProgress(stage, stagePercent))));
+                if (image == null) {
+                    mainHandler.post(() -> callback.onError(new Exception("Failed to process image - could not read image data")));
+                    return;
+                }
+                mainHandler.post(() -> callback.onSuccess(image));
+            } catch (Exception e) {
+                Log.e(TAG, "Exception while preparing image", e);
+                mainHandler.post(() -> callback.onError(new Exception("Failed to prepare image: " + e.getMessage())));
+            }
+        });
+    }
+
+    /**
+     * Decodes, resizes to fit maxSize x maxSize and compresses the image as JPEG, plus an inline thumbnail
+     * @return The prepared image, or null if the image could not be read or decoded
+     */
+    @WorkerThread
+    @Nullable
+    public static PreparedImage prepare(@NonNull Context context, @NonNull Uri uri, int maxSize, int quality,
+                                        @NonNull ProgressListener listener) throws IOException {
+        listener.onProgress(Stage.DECODE, 0);
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream input = context.getContentResolver().openInputStream(uri)) {
+            if (input == null) {
+                Log.e(TAG, "Failed to open input stream for URI: " + uri);
+                return null;
+            }
+            BitmapFactory.decodeStream(input, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            Log.e(TAG, "Failed to read image bounds from URI: " + uri);
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSizeToFit(bounds.outWidth, bounds.outHeight, maxSize);
+        long totalBytes = contentLength(context, uri);
+        Bitmap bitmap;
+        try (InputStream input = context.getContentResolver().openInputStream(uri)) {
+            if (input == null) return null;
+            bitmap = BitmapFactory.decodeStream(new ProgressInputStream(input, totalBytes, listener), null, options);
+        }
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to decode bitmap from URI: " + uri);
+            return null;
+        }
+        listener.onProgress(Stage.DECODE, 100);
+        Log.d(TAG, "Decoded " + bounds.outWidth + "x" + bounds.outHeight + " at 1/" + options.inSampleSize
+                + " as " + bitmap.getWidth() + "x" + bitmap.getHeight());
+
+        listener.onProgress(Stage.RESIZE, 0);
+        bitmap = scaleToFit(bitmap, maxSize);
+        listener.onProgress(Stage.RESIZE, 100);
+
+        listener.onProgress(Stage.COMPRESS, 0);
+        // The thumbnail comes from the bitmap already in memory, not from another decode
+        String thumbnail = encodeThumbnail(bitmap);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        boolean compressed = bitmap.compress(Bitmap.CompressFormat.JPEG, quality, baos);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        bitmap.recycle();
+        if (!compressed) {
+            Log.e(TAG, "Failed to compress bitmap");
+            return null;
+        }
+        listener.onProgress(Stage.COMPRESS, 100);
+
+        byte[] result = baos.toByteArray();
+        Log.d(TAG, "Final compressed image size: " + result.length + " bytes");
+        return new PreparedImage(result, width, height, thumbnail);
+    }
+
+    /**
+     * Maps processing stages onto 0-100 for callers that only show processing progress
+     */
+    private static int processingProgress(@NonNull Stage stage, int stagePercent) {
+        switch (stage) {
+            case DECODE:
+                return stagePercent * 70 / 100;
+            case RESIZE:
+                return 70 + stagePercent * 10 / 100;
+            default:
+                return 80 + stagePercent * 20 / 100;
+        }
+    }
+
+    /**
+     * Scales a copy of the bitmap to the thumbnail size and encodes it as a JPEG data URI
+     */
+    @Nullable
+    private static String encodeThumbnail(@NonNull Bitmap source) {
+        float ratio = Math.min(1f, Math.min((float) THUMBNAIL_MAX_SIZE / source.getWidth(),
+                (float) THUMBNAIL_MAX_SIZE / source.getHeight()));
+        Bitmap thumbnail = Bitmap.createScaledBitmap(source,
+                Math.max(1, Math.round(source.getWidth() * ratio)),
+                Math.max(1, Math.round(source.getHeight() * ratio)), true);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        boolean compressed = thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, baos);
+        if (thumbnail != source) {
+            thumbnail.recycle();
+        }
+        if (!compressed) {
+            return null;
+        }
+        return "data:image/jpeg;base64," + Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * Largest power of two that keeps the longer side at or above maxSize
+     */
+    static int sampleSizeToFit(int width, int height, int maxSize) {
+        int longest = Math.max(width, height);
+        int inSampleSize = 1;
+        while (longest / (inSampleSize * 2) >= maxSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    @NonNull
+    private static Bitmap scaleToFit(@NonNull Bitmap bitmap, int maxSize) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width <= maxSize && height <= maxSize) {
+            return bitmap;
+        }
+
+        float ratio = Math.min((float) maxSize / width, (float) maxSize / height);
+        Bitmap resized = Bitmap.createScaledBitmap(bitmap, Math.round(width * ratio), Math.round(height * ratio), true);
+        if (resized != bitmap) {
+            bitmap.recycle(); // Free original bitmap memory
+        }
+        return resized;
+    }
+
+    private static long contentLength(@NonNull Context context, @NonNull Uri uri) {
+        try (AssetFileDescriptor descriptor = context.getContentResolver().openAssetFileDescriptor(uri, "r")) {
+            return descriptor != null ? descriptor.getLength() : AssetFileDescriptor.UNKNOWN_LENGTH;
+        } catch (IOException | SecurityException e) {
+            return AssetFileDescriptor.UNKNOWN_LENGTH;
+        }
+    }
+
+    /**
+     * Reports decode progress from the bytes the decoder has consumed
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final long totalBytes;
+        private final ProgressListener listener;
+        private long readBytes;
+        private int lastPercent;
+
+        ProgressInputStream(InputStream input, long totalBytes, ProgressListener listener) {
+            super(input);
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) advance(1);
+            return value;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) advance(count);
+            return count;
+        }
+
+        private void advance(long count) {
+            readBytes += count;
+            if (totalBytes <= 0) return;
+            int percent = (int) Math.min(99, readBytes * 100 / totalBytes);
+            if (percent > lastPercent) {
+                lastPercent = percent;
+                listener.onProgress(Stage.DECODE, percent);
+            }
+        }
+    }
+}
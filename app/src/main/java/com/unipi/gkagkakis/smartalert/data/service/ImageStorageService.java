@@ -1,39 +1,42 @@
 package com.unipi.gkagkakis.smartalert.data.service;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageException;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
+import com.unipi.gkagkakis.smartalert.model.PreparedImage;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.UUID;
 
 public class ImageStorageService {
 
     private static final String TAG = "ImageStorageService";
     private static final String ALERT_IMAGES_PATH = "alert_images/";
-    private static final int IMAGE_QUALITY = 80;
-    private static final int MAX_IMAGE_WIDTH = 1024;
-    private static final int MAX_IMAGE_HEIGHT = 1024;
 
     private final FirebaseStorage storage;
     private final StorageReference storageRef;
 
+    private UploadSessionStore sessionStore;
+
     private static volatile ImageStorageService INSTANCE;
 
-    private ImageStorageService() {
+    /**
+     * Package-private so tests can stand in for the service of a restarted process
+     */
+    @VisibleForTesting
+    ImageStorageService() {
         FirebaseStorage tempStorage = null;
         StorageReference tempStorageRef = null;
 
@@ -75,7 +78,13 @@ public class ImageStorageService {
         void onProgress(int progress);
     }
 
-    public void uploadImage(@NonNull Context context, @NonNull Uri imageUri, @NonNull ImageUploadCallback callback) {
+    /**
+     * Uploads an already prepared image as a resumable upload; progress covers the upload only
+     * An earlier attempt at the same bytes that was cut off, even in a previous process,
+     * continues from where the server left it instead of starting from zero.
+     */
+    public void uploadPreparedImage(@NonNull Context context, @NonNull PreparedImage image,
+                                    @NonNull ImageUploadCallback callback) {
         // Check if Firebase Storage is properly initialized
         if (storage == null || storageRef == null) {
             Log.w(TAG, "Firebase Storage not initialized, upload will fail");
@@ -90,143 +99,110 @@ public class ImageStorageService {
             return;
         }
 
-        Log.d(TAG, "Starting image upload for URI: " + imageUri);
-
-        try {
-            // Convert URI to byte array
-            byte[] imageData = uriToByteArray(context, imageUri);
-            if (imageData == null) {
-                callback.onError(new Exception("Failed to process image - could not read image data"));
-                return;
-            }
-
-            Log.d(TAG, "Image processed, size: " + imageData.length + " bytes");
-
-            // Generate unique filename with user ID and timestamp
-            String fileName = user.getUid() + "_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString() + ".jpg";
-            StorageReference imageRef = storageRef.child(ALERT_IMAGES_PATH + fileName);
-
-            Log.d(TAG, "Uploading to path: " + ALERT_IMAGES_PATH + fileName);
-
-            // Create metadata
-            StorageMetadata metadata = new StorageMetadata.Builder()
-                    .setContentType("image/jpeg")
-                    .setCustomMetadata("uploadedBy", user.getUid())
-                    .setCustomMetadata("uploadTime", String.valueOf(System.currentTimeMillis()))
-                    .build();
-
-            // Upload the image with metadata
-            UploadTask uploadTask = imageRef.putBytes(imageData, metadata);
-
-            uploadTask.addOnProgressListener(taskSnapshot -> {
-                double progress = (100.0 * taskSnapshot.getBytesTransferred()) / taskSnapshot.getTotalByteCount();
-                callback.onProgress((int) progress);
-                Log.d(TAG, "Upload progress: " + (int) progress + "%");
-            }).addOnSuccessListener(taskSnapshot -> {
-                Log.d(TAG, "Image uploaded successfully");
-                // Get download URL
-                imageRef.getDownloadUrl().addOnSuccessListener(uri -> {
-                    String downloadUrl = uri.toString();
-                    Log.d(TAG, "Download URL obtained: " + downloadUrl);
-                    callback.onSuccess(downloadUrl);
-                }).addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to get download URL", e);
-                    callback.onError(new Exception("Upload successful but failed to get download URL: " + e.getMessage()));
-                });
-            }).addOnFailureListener(e -> {
-                Log.e(TAG, "Failed to upload image", e);
-
-                // Provide more specific error messages
-                String errorMessage = "Failed to upload image: ";
-                if (e.getMessage() != null) {
-                    if (e.getMessage().contains("User does not have permission")) {
-                        errorMessage += "Permission denied. Please check Firebase Storage security rules.";
-                    } else if (e.getMessage().contains("Object does not exist")) {
-                        errorMessage += "Storage bucket not found. Please check Firebase configuration.";
-                    } else if (e.getMessage().contains("Network error")) {
-                        errorMessage += "Network error. Please check your internet connection.";
-                    } else {
-                        errorMessage += e.getMessage();
-                    }
+        UploadSessionStore store = sessionStore(context);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        // Hashing and the temp file write are disk and CPU work, keep them off the main thread
+        ImageProcessor.executor().execute(() -> {
+            try {
+                String key = UploadSessionStore.keyFor(image.getJpegData());
+                UploadSessionStore.Session session = store.find(key);
+                if (session != null) {
+                    Log.d(TAG, "Resuming upload " + key + " at " + session.bytesUploaded + " bytes");
                 } else {
-                    errorMessage += "Unknown error occurred";
+                    // Generate unique filename with user ID and timestamp
+                    String fileName = user.getUid() + "_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString() + ".jpg";
+                    session = store.create(key, ALERT_IMAGES_PATH + fileName, image.getJpegData());
                 }
+                UploadSessionStore.Session resolved = session;
+                mainHandler.post(() -> startUpload(store, resolved, user.getUid(), true, callback));
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to stage image for upload", e);
+                mainHandler.post(() -> callback.onError(new Exception("Failed to prepare image for upload: " + e.getMessage())));
+            }
+        });
+    }
 
-                callback.onError(new Exception(errorMessage));
-            });
-
-        } catch (Exception e) {
-            Log.e(TAG, "Exception during upload preparation", e);
-            callback.onError(new Exception("Failed to prepare image for upload: " + e.getMessage()));
+    @NonNull
+    private synchronized UploadSessionStore sessionStore(@NonNull Context context) {
+        if (sessionStore == null) {
+            sessionStore = new UploadSessionStore(context);
+            UploadSessionStore store = sessionStore;
+            ImageProcessor.executor().execute(store::pruneExpired);
         }
+        return sessionStore;
     }
 
-    @Nullable
-    private byte[] uriToByteArray(@NonNull Context context, @NonNull Uri uri) {
-        try (InputStream inputStream = context.getContentResolver().openInputStream(uri)) {
-            if (inputStream == null) {
-                Log.e(TAG, "Failed to open input stream for URI: " + uri);
-                return null;
-            }
-
-            // Decode the image
-            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-            inputStream.close();
-
-            if (bitmap == null) {
-                Log.e(TAG, "Failed to decode bitmap from URI: " + uri);
-                return null;
+    private void startUpload(@NonNull UploadSessionStore store, @NonNull UploadSessionStore.Session session,
+                             @NonNull String userId, boolean mayRestart, @NonNull ImageUploadCallback callback) {
+        StorageReference imageRef = storageRef.child(session.storagePath);
+        Uri resumeUri = session.sessionUri;
+
+        Log.d(TAG, "Uploading to path: " + session.storagePath + (resumeUri != null ? " (resumed)" : ""));
+
+        // Create metadata
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType("image/jpeg")
+                .setCustomMetadata("uploadedBy", userId)
+                .setCustomMetadata("uploadTime", String.valueOf(System.currentTimeMillis()))
+                .build();
+
+        // putFile uploads in chunks through a resumable session, unlike putBytes
+        Uri fileUri = Uri.fromFile(session.file);
+        UploadTask uploadTask = resumeUri != null
+                ? imageRef.putFile(fileUri, metadata, resumeUri)
+                : imageRef.putFile(fileUri, metadata);
+
+        uploadTask.addOnProgressListener(taskSnapshot -> {
+            store.updateProgress(session, taskSnapshot.getUploadSessionUri(), taskSnapshot.getBytesTransferred());
+            double progress = (100.0 * taskSnapshot.getBytesTransferred()) / taskSnapshot.getTotalByteCount();
+            callback.onProgress((int) progress);
+            Log.d(TAG, "Upload progress: " + (int) progress + "%");
+        }).addOnSuccessListener(taskSnapshot -> {
+            Log.d(TAG, "Image uploaded successfully");
+            store.complete(session);
+            // Get download URL
+            imageRef.getDownloadUrl().addOnSuccessListener(uri -> {
+                String downloadUrl = uri.toString();
+                Log.d(TAG, "Download URL obtained: " + downloadUrl);
+                callback.onSuccess(downloadUrl);
+            }).addOnFailureListener(e -> {
+                Log.e(TAG, "Failed to get download URL", e);
+                callback.onError(new Exception("Upload successful but failed to get download URL: " + e.getMessage()));
+            });
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Failed to upload image", e);
+
+            int errorCode = e instanceof StorageException ? ((StorageException) e).getErrorCode() : StorageException.ERROR_UNKNOWN;
+            if (errorCode == StorageException.ERROR_RETRY_LIMIT_EXCEEDED) {
+                // Connectivity, not the upload itself: keep the session so the next attempt resumes
+                Log.d(TAG, "Keeping upload session " + session.key + " for resume");
+            } else if (resumeUri != null && mayRestart) {
+                // The server session expired or was rejected, start a new one from the same temp file
+                Log.w(TAG, "Could not resume upload " + session.key + ", restarting");
+                store.discardSessionUri(session);
+                startUpload(store, session, userId, false, callback);
+                return;
+            } else {
+                store.complete(session);
             }
 
-            Log.d(TAG, "Original bitmap size: " + bitmap.getWidth() + "x" + bitmap.getHeight());
-
-            // Resize if necessary
-            bitmap = resizeBitmap(bitmap);
-
-            Log.d(TAG, "Resized bitmap size: " + bitmap.getWidth() + "x" + bitmap.getHeight());
-
-            // Convert to byte array
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            boolean compressed = bitmap.compress(Bitmap.CompressFormat.JPEG, IMAGE_QUALITY, baos);
-
-            if (!compressed) {
-                Log.e(TAG, "Failed to compress bitmap");
-                bitmap.recycle();
-                return null;
+            // Provide more specific error messages
+            String errorMessage = "Failed to upload image: ";
+            if (e.getMessage() != null) {
+                if (e.getMessage().contains("User does not have permission")) {
+                    errorMessage += "Permission denied. Please check Firebase Storage security rules.";
+                } else if (e.getMessage().contains("Object does not exist")) {
+                    errorMessage += "Storage bucket not found. Please check Firebase configuration.";
+                } else if (e.getMessage().contains("Network error")) {
+                    errorMessage += "Network error. Please check your internet connection.";
+                } else {
+                    errorMessage += e.getMessage();
+                }
+            } else {
+                errorMessage += "Unknown error occurred";
             }
 
-            bitmap.recycle();
-            byte[] result = baos.toByteArray();
-            baos.close();
-
-            Log.d(TAG, "Final compressed image size: " + result.length + " bytes");
-            return result;
-
-        } catch (IOException e) {
-            Log.e(TAG, "IO Exception while processing image", e);
-            return null;
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected exception while processing image", e);
-            return null;
-        }
-    }
-
-    private Bitmap resizeBitmap(@NonNull Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-
-        if (width <= ImageStorageService.MAX_IMAGE_WIDTH && height <= ImageStorageService.MAX_IMAGE_HEIGHT) {
-            return bitmap;
-        }
-
-        float ratio = Math.min((float) ImageStorageService.MAX_IMAGE_WIDTH / width, (float) ImageStorageService.MAX_IMAGE_HEIGHT / height);
-        int newWidth = Math.round(width * ratio);
-        int newHeight = Math.round(height * ratio);
-
-        Bitmap resized = Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
-        if (resized != bitmap) {
-            bitmap.recycle(); // Free original bitmap memory
-        }
-        return resized;
+            callback.onError(new Exception(errorMessage));
+        });
     }
 }
@@ -0,0 +1,209 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Remembers resumable Storage uploads across network drops and process restarts
+ * A session is keyed by the SHA-256 of the image bytes and keeps the target path, a temp copy
+ * of the bytes for putFile, and the Storage session URI once the server has issued one.
+ */
+class UploadSessionStore {
+
+    private static final String TAG = "UploadSessionStore";
+    private static final String PREF_NAME = "image_upload_sessions";
+    private static final String UPLOAD_DIR = "pending_uploads";
+
+    // Storage sessions live about a week; drop ours well before so the temp directory stays small
+    private static final long SESSION_TTL_MS = 24 * 60 * 60 * 1000L;
+    // Persisting every progress tick would rewrite the prefs file for each chunk
+    private static final long PROGRESS_PERSIST_STEP = 256 * 1024;
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final class Session {
+        final String key;
+        final String storagePath;
+        final File file;
+        final long createdAt;
+        @Nullable
+        Uri sessionUri;
+        long bytesUploaded;
+
+        Session(@NonNull String key, @NonNull String storagePath, @NonNull File file, long createdAt) {
+            this.key = key;
+            this.storagePath = storagePath;
+            this.file = file;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final SharedPreferences preferences;
+    private final File uploadDir;
+    private final Clock clock;
+
+    UploadSessionStore(@NonNull Context context) {
+        this(context, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    UploadSessionStore(@NonNull Context context, @NonNull Clock clock) {
+        Context appContext = context.getApplicationContext();
+        this.preferences = appContext.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.uploadDir = new File(appContext.getCacheDir(), UPLOAD_DIR);
+        this.clock = clock;
+    }
+
+    @NonNull
+    static String keyFor(@NonNull byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * @return The unfinished session for these bytes, or null if there is none or its temp file is gone
+     */
+    @Nullable
+    synchronized Session find(@NonNull String key) {
+        String json = preferences.getString(key, null);
+        if (json == null) return null;
+
+        Session session = fromJson(key, json);
+        if (session == null || !session.file.exists()
+                || clock.currentTimeMillis() - session.createdAt > SESSION_TTL_MS) {
+            remove(key, session);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Writes the bytes to a temp file and records a new session without a session URI
+     */
+    @NonNull
+    synchronized Session create(@NonNull String key, @NonNull String storagePath, @NonNull byte[] data) throws IOException {
+        if (!uploadDir.exists() && !uploadDir.mkdirs()) {
+            throw new IOException("Could not create " + uploadDir);
+        }
+        File file = new File(uploadDir, key + ".jpg");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+
+        Session session = new Session(key, storagePath, file, clock.currentTimeMillis());
+        save(session);
+        return session;
+    }
+
+    /**
+     * Records the server session and, in coarse steps, how far the upload has got
+     */
+    synchronized void updateProgress(@NonNull Session session, @Nullable Uri sessionUri, long bytesUploaded) {
+        boolean newSession = sessionUri != null && !sessionUri.equals(session.sessionUri);
+        boolean advanced = bytesUploaded - session.bytesUploaded >= PROGRESS_PERSIST_STEP;
+        if (!newSession && !advanced) return;
+
+        if (sessionUri != null) session.sessionUri = sessionUri;
+        session.bytesUploaded = bytesUploaded;
+        save(session);
+    }
+
+    /**
+     * Forgets a server session that can no longer be resumed; the temp file is kept for a fresh upload
+     */
+    synchronized void discardSessionUri(@NonNull Session session) {
+        session.sessionUri = null;
+        session.bytesUploaded = 0;
+        save(session);
+    }
+
+    synchronized void complete(@NonNull Session session) {
+        remove(session.key, session);
+    }
+
+    /**
+     * Drops expired sessions and temp files that no session refers to
+     */
+    synchronized void pruneExpired() {
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            Object value = entry.getValue();
+            if (!(value instanceof String)) continue;
+            find(entry.getKey());
+        }
+
+        File[] files = uploadDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            String key = name.endsWith(".jpg") ? name.substring(0, name.length() - 4) : name;
+            if (!preferences.contains(key) && !file.delete()) {
+                Log.w(TAG, "Could not delete orphaned upload file " + name);
+            }
+        }
+    }
+
+    private void save(@NonNull Session session) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("storagePath", session.storagePath);
+            json.put("file", session.file.getAbsolutePath());
+            json.put("createdAt", session.createdAt);
+            json.put("bytesUploaded", session.bytesUploaded);
+            if (session.sessionUri != null) {
+                json.put("sessionUri", session.sessionUri.toString());
+            }
+            preferences.edit().putString(session.key, json.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to persist upload session " + session.key, e);
+        }
+    }
+
+    private void remove(@NonNull String key, @Nullable Session session) {
+        preferences.edit().remove(key).apply();
+        if (session != null && session.file.exists() && !session.file.delete()) {
+            Log.w(TAG, "Could not delete upload file " + session.file);
+        }
+    }
+
+    @Nullable
+    private static Session fromJson(@NonNull String key, @NonNull String json) {
+        try {
+            JSONObject object = new JSONObject(json);
+            Session session = new Session(key, object.getString("storagePath"),
+                    new File(object.getString("file")), object.getLong("createdAt"));
+            session.bytesUploaded = object.optLong("bytesUploaded", 0);
+            String sessionUri = object.optString("sessionUri", null);
+            session.sessionUri = sessionUri != null ? Uri.parse(sessionUri) : null;
+            return session;
+        } catch (JSONException e) {
+            Log.w(TAG, "Dropping unreadable upload session " + key, e);
+            return null;
+        }
+    }
+}
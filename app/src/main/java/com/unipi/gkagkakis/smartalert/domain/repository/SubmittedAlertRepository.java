@@ -3,7 +3,9 @@ package com.unipi.gkagkakis.smartalert.domain.repository;
 import androidx.annotation.NonNull;
 
 import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertChange;
 
+import java.util.Date;
 import java.util.List;
 
 public interface SubmittedAlertRepository {
@@ -12,6 +14,14 @@ public interface SubmittedAlertRepository {
         void onError(@NonNull Exception e);
     }
 
+    interface FindNearbyCallback {
+        /**
+         * @param candidates Matching alerts, nearest first
+         */
+        void onSuccess(@NonNull List<SubmittedAlert> candidates);
+        void onError(@NonNull Exception e);
+    }
+
     interface GetAllSubmittedAlertsCallback {
         void onSuccess(@NonNull List<SubmittedAlert> submittedAlerts);
         void onError(@NonNull Exception e);
@@ -22,7 +32,41 @@ public interface SubmittedAlertRepository {
         void onError(@NonNull Exception e);
     }
 
+    interface SubmittedAlertChangesListener {
+        void onChanges(@NonNull List<SubmittedAlertChange> changes);
+        void onError(@NonNull Exception e);
+    }
+
+    interface ListenerHandle {
+        void remove();
+    }
+
     void createSubmittedAlert(@NonNull SubmittedAlert submittedAlert, @NonNull CreateSubmittedAlertCallback callback);
+    /**
+     * Writes the alert under the idempotency key as its document id, so replaying the same submission never duplicates it
+     * Does nothing if that document already exists, so a replay never overwrites what happened to the alert since.
+     */
+    void createSubmittedAlert(@NonNull SubmittedAlert submittedAlert, @NonNull String idempotencyKey,
+                              @NonNull CreateSubmittedAlertCallback callback);
+    /**
+     * Alerts of the given type created since the given time within radiusKm of the point
+     */
+    void findRecentNearby(@NonNull String type, double latitude, double longitude, double radiusKm,
+                          @NonNull Date since, @NonNull FindNearbyCallback callback);
+    /**
+     * Adds the report under an existing alert and bumps its reportCount; replaying the same key counts it once
+     * Fails with FirebaseFirestoreException NOT_FOUND, without writing anything, if the alert is gone.
+     */
+    void attachReport(@NonNull String alertId, @NonNull SubmittedAlert report, @NonNull String idempotencyKey,
+                      @NonNull CreateSubmittedAlertCallback callback);
     void getAllSubmittedAlerts(@NonNull GetAllSubmittedAlertsCallback callback);
+    /**
+     * Streams submitted alert changes; the first delivery contains every existing alert as ADDED
+     */
+    @NonNull
+    ListenerHandle listenToSubmittedAlerts(@NonNull SubmittedAlertChangesListener listener);
+    /**
+     * Deletes the alert together with the reports attached to it and the full images they stored
+     */
     void deleteSubmittedAlert(@NonNull String alertId, @NonNull DeleteSubmittedAlertCallback callback);
 }
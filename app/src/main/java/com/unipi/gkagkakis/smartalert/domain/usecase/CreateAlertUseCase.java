@@ -1,41 +1,91 @@
 package com.unipi.gkagkakis.smartalert.domain.usecase;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
 import com.unipi.gkagkakis.smartalert.data.repository.SubmittedAlertRepositoryImpl;
+import com.unipi.gkagkakis.smartalert.data.service.AlertImageStore;
+import com.unipi.gkagkakis.smartalert.data.service.AlertOutbox;
+import com.unipi.gkagkakis.smartalert.data.service.ImageProcessor;
 import com.unipi.gkagkakis.smartalert.data.service.ImageStorageService;
-import com.unipi.gkagkakis.smartalert.data.service.Base64ImageService;
 import com.unipi.gkagkakis.smartalert.domain.repository.SubmittedAlertRepository;
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+import com.unipi.gkagkakis.smartalert.model.PreparedImage;
 import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.service.AlertOutboxWorker;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Use case for creating alerts following clean architecture
- * Handles the business logic for alert creation with image processing
+ * Handles the business logic for alert creation with image processing. Every submission
+ * goes through the local outbox first, so one that cannot be sent now is replayed later.
+ * A report matching a recent nearby alert of the same type is attached to it instead of
+ * becoming a new document.
  */
 public class CreateAlertUseCase {
 
     public interface CreateAlertCallback {
         void onSuccess(@NonNull String alertId);
+        /**
+         * The alert is saved locally and will be sent once the device is back online
+         */
+        void onQueued(@NonNull String alertId);
         void onError(@NonNull String errorMessage);
+        /**
+         * Something went wrong but the submission carries on; onSuccess, onQueued or onError still follows
+         */
+        void onWarning(@NonNull String message);
+        void onProgress(int progress);
+    }
+
+    public interface SubmitCallback {
+        void onSuccess(@NonNull String alertId);
+        void onError(@NonNull Exception e);
         void onProgress(int progress);
     }
 
+    // Same-type reports this close and recent describe the same incident
+    private static final double COALESCE_RADIUS_KM = 1.0;
+    private static final long COALESCE_WINDOW_MS = 30 * 60 * 1000L;
+
+    @VisibleForTesting
+    interface OutboxProvider {
+        @NonNull
+        AlertOutbox get(@NonNull Context context);
+    }
+
     private final SubmittedAlertRepository repository;
     private final ImageStorageService imageStorageService;
-    private final Base64ImageService base64ImageService;
+    private final AlertImageStore alertImageStore;
+    private final OutboxProvider outboxProvider;
 
     public CreateAlertUseCase() {
-        this.repository = SubmittedAlertRepositoryImpl.getInstance();
-        this.imageStorageService = ImageStorageService.getInstance();
-        this.base64ImageService = Base64ImageService.getInstance();
+        this(SubmittedAlertRepositoryImpl.getInstance(), ImageStorageService.getInstance(),
+                AlertImageStore.getInstance(), AlertOutbox::getInstance);
+    }
+
+    @VisibleForTesting
+    CreateAlertUseCase(@NonNull SubmittedAlertRepository repository, ImageStorageService imageStorageService,
+                       AlertImageStore alertImageStore, @NonNull OutboxProvider outboxProvider) {
+        this.repository = repository;
+        this.imageStorageService = imageStorageService;
+        this.alertImageStore = alertImageStore;
+        this.outboxProvider = outboxProvider;
     }
 
     public void createAlert(Context context, String type, String severity, String location,
@@ -67,105 +117,308 @@ public class CreateAlertUseCase {
 
         callback.onProgress(0);
 
+        PendingAlert pending = new PendingAlert(UUID.randomUUID().toString(), user.getUid(), type.trim(),
+                severity.trim(), location.trim(), description.trim(), System.currentTimeMillis());
+
         if (imageUri != null) {
-            // Try Firebase Storage first, fallback to Base64 if it fails
-            tryFirebaseStorageUpload(context, imageUri, type, severity, location, description, user.getUid(), callback);
+            prepareAndSubmit(context, imageUri, pending, callback);
         } else {
-            // Create alert without image
-            createAlertWithImageUrl(type, severity, location, description, null, user.getUid(), callback);
+            enqueueAndSubmit(context, pending, null, callback);
         }
     }
 
-    private void tryFirebaseStorageUpload(Context context, Uri imageUri, String type, String severity,
-                                        String location, String description, String userId, CreateAlertCallback callback) {
+    /**
+     * Decodes and compresses the image once; the Storage upload and its fallback share the result
+     */
+    private void prepareAndSubmit(Context context, Uri imageUri, PendingAlert pending, CreateAlertCallback callback) {
 
-        imageStorageService.uploadImage(context, imageUri, new ImageStorageService.ImageUploadCallback() {
+        ImageProcessor.prepareAsync(context, imageUri, new ImageProcessor.PrepareCallback() {
             @Override
-            public void onSuccess(@NonNull String downloadUrl) {
-                Log.d("CreateAlertUseCase", "Firebase Storage upload successful");
-                createAlertWithImageUrl(type, severity, location, description, downloadUrl, userId, callback);
+            public void onSuccess(@NonNull PreparedImage image) {
+                pending.setImageSize(image.getWidth(), image.getHeight());
+                pending.setThumbnailUrl(image.getThumbnail());
+                enqueueAndSubmit(context, pending, image, callback);
             }
 
             @Override
             public void onError(@NonNull Exception e) {
-                // Firebase Storage failed, try Base64 fallback
-                Log.w("CreateAlertUseCase", "Firebase Storage failed, using Base64 fallback: " + e.getMessage());
-
-                tryBase64Fallback(context, imageUri, type, severity, location, description, userId, callback);
+                // Neither upload path can work without the image, so the alert goes without it
+                Log.e("CreateAlertUseCase", "Image processing failed: " + e.getMessage(), e);
+                callback.onWarning("Image could not be processed. Submitting the alert without the image.");
+                enqueueAndSubmit(context, pending, null, callback);
             }
 
             @Override
             public void onProgress(int progress) {
-                // Only report up to 80% for Firebase Storage phase
-                callback.onProgress(Math.min(progress * 80 / 100, 80));
+                // Processing is from 0% to 40%
+                callback.onProgress(progress * 40 / 100);
+            }
+        });
+    }
+
+    /**
+     * Persists the submission, then sends it right away when online or leaves it to AlertOutboxWorker
+     * The row is stored claimed, so the worker does not send it while this call does.
+     */
+    private void enqueueAndSubmit(Context context, PendingAlert pending, @Nullable PreparedImage image,
+                                  CreateAlertCallback callback) {
+        Context appContext = context.getApplicationContext();
+        AlertOutbox outbox = outboxProvider.get(appContext);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        AlertOutbox.executor().execute(() -> {
+            boolean queued;
+            try {
+                outbox.enqueue(pending, image != null ? image.getJpegData() : null);
+                queued = true;
+            } catch (Exception e) {
+                // Still try to send it, just without the offline safety net
+                Log.e("CreateAlertUseCase", "Failed to store alert in outbox", e);
+                queued = false;
             }
+
+            boolean durable = queued;
+            mainHandler.post(() -> {
+                if (durable && !isOnline(appContext)) {
+                    Log.d("CreateAlertUseCase", "Offline, alert " + pending.getIdempotencyKey() + " left in outbox");
+                    AlertOutbox.executor().execute(() -> outbox.release(pending.getIdempotencyKey()));
+                    AlertOutboxWorker.schedule(appContext);
+                    callback.onQueued(pending.getIdempotencyKey());
+                    return;
+                }
+
+                submitPending(appContext, pending, image, new SubmitCallback() {
+                    @Override
+                    public void onSuccess(@NonNull String alertId) {
+                        if (durable) {
+                            AlertOutbox.executor().execute(() -> outbox.remove(pending));
+                        }
+                        callback.onProgress(100);
+                        callback.onSuccess(alertId);
+                    }
+
+                    @Override
+                    public void onError(@NonNull Exception e) {
+                        if (durable) {
+                            Log.w("CreateAlertUseCase", "Submission failed, replaying from outbox later: " + e.getMessage());
+                            AlertOutbox.executor().execute(() -> outbox.recordFailure(pending.getIdempotencyKey(), e.getMessage()));
+                            AlertOutboxWorker.schedule(appContext);
+                            callback.onQueued(pending.getIdempotencyKey());
+                        } else {
+                            String errorMessage = e.getMessage() != null ? e.getMessage() : "Failed to submit alert for review.";
+                            callback.onError(errorMessage);
+                        }
+                    }
+
+                    @Override
+                    public void onProgress(int progress) {
+                        callback.onProgress(progress);
+                    }
+                });
+            });
         });
     }
 
-    private void tryBase64Fallback(Context context, Uri imageUri, String type, String severity,
-                                 String location, String description, String userId, CreateAlertCallback callback) {
+    /**
+     * Uploads the image if it is not stored yet and creates the alert under its idempotency key
+     * Safe to call again for the same pending alert; it is also what AlertOutboxWorker replays.
+     * Which alert the report goes under is chosen once, before anything is uploaded, and kept in
+     * the outbox, so a replay never files it under a different alert.
+     */
+    public void submitPending(Context context, PendingAlert pending, @Nullable PreparedImage image, SubmitCallback callback) {
+        if (pending.getParentAlertId() == null) {
+            chooseParent(context, pending, () -> submitToParent(context, pending, image, callback));
+        } else {
+            submitToParent(context, pending, image, callback);
+        }
+    }
+
+    private void submitToParent(Context context, PendingAlert pending, @Nullable PreparedImage image, SubmitCallback callback) {
+        if (image != null && pending.getImageUrl() == null) {
+            tryFirebaseStorageUpload(context, pending, image, callback);
+        } else {
+            createAlertWithImageUrl(context, pending, pending.getImageUrl(), pending.getThumbnailUrl(), callback);
+        }
+    }
+
+    /**
+     * Files the report under a recent nearby alert of the same type, or under its own key when there is none
+     */
+    private void chooseParent(Context context, PendingAlert pending, Runnable then) {
+        CoordinatesUtil.LatLon latLon = CoordinatesUtil.scratch();
+        if (!CoordinatesUtil.tryParseLatLon(pending.getLocation(), latLon)) {
+            setParent(context, pending, pending.getIdempotencyKey(), then);
+            return;
+        }
+
+        Date since = new Date(pending.getCreatedAt() - COALESCE_WINDOW_MS);
+        repository.findRecentNearby(pending.getType(), latLon.latitude, latLon.longitude,
+                COALESCE_RADIUS_KM, since, new SubmittedAlertRepository.FindNearbyCallback() {
+                    @Override
+                    public void onSuccess(@NonNull List<SubmittedAlert> candidates) {
+                        String parentId = candidates.isEmpty() ? pending.getIdempotencyKey() : candidates.get(0).getId();
+                        for (SubmittedAlert candidate : candidates) {
+                            // Outbox rows from before the parent was stored may already have gone through
+                            if (pending.getIdempotencyKey().equals(candidate.getId())) {
+                                parentId = candidate.getId();
+                                break;
+                            }
+                        }
+                        setParent(context, pending, parentId, then);
+                    }
 
-        base64ImageService.convertImageToBase64(context, imageUri, new Base64ImageService.ImageConversionCallback() {
+                    @Override
+                    public void onError(@NonNull Exception e) {
+                        // The check only saves writes, never hold a report back because of it
+                        Log.w("CreateAlertUseCase", "Duplicate check failed, creating new alert: " + e.getMessage());
+                        setParent(context, pending, pending.getIdempotencyKey(), then);
+                    }
+                });
+    }
+
+    /**
+     * Stores the choice in the outbox before anything is written under it, then continues on the main thread
+     */
+    private void setParent(Context context, PendingAlert pending, String parentId, Runnable then) {
+        pending.setParentAlertId(parentId);
+        AlertOutbox outbox = outboxProvider.get(context);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        AlertOutbox.executor().execute(() -> {
+            outbox.markParent(pending.getIdempotencyKey(), parentId);
+            mainHandler.post(then);
+        });
+    }
+
+    private void tryFirebaseStorageUpload(Context context, PendingAlert pending, PreparedImage image, SubmitCallback callback) {
+
+        imageStorageService.uploadPreparedImage(context, image, new ImageStorageService.ImageUploadCallback() {
             @Override
-            public void onSuccess(@NonNull String base64Image) {
-                Log.d("CreateAlertUseCase", "Base64 conversion successful, creating alert");
-                createAlertWithImageUrl(type, severity, location, description, base64Image, userId, callback);
+            public void onSuccess(@NonNull String downloadUrl) {
+                Log.d("CreateAlertUseCase", "Firebase Storage upload successful");
+                // Rows fall back to loading the full image when there is no thumbnail
+                onImageStored(context, pending, downloadUrl, image.getThumbnail(), callback);
             }
 
             @Override
             public void onError(@NonNull Exception e) {
-                // Both methods failed, offer user choice
-                Log.e("CreateAlertUseCase", "Both Firebase Storage and Base64 failed: " + e.getMessage(), e);
+                // Firebase Storage failed, try Base64 fallback with the same bytes
+                Log.w("CreateAlertUseCase", "Firebase Storage failed, using Base64 fallback: " + e.getMessage());
+
+                tryBase64Fallback(context, pending, image, callback);
+            }
+
+            @Override
+            public void onProgress(int progress) {
+                // Firebase Storage upload is from 40% to 80%
+                callback.onProgress(40 + progress * 40 / 100);
+            }
+        });
+    }
 
-                // Use main thread handler to show user-friendly error
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    String errorMessage = "Image upload failed. Would you like to submit the alert without the image?";
+    private void tryBase64Fallback(Context context, PendingAlert pending, PreparedImage image, SubmitCallback callback) {
 
-                    // For now, automatically create without image after showing error
-                    callback.onError(errorMessage);
+        callback.onProgress(85);
+        String thumbnail = image.getThumbnail();
 
-                    // After 2 seconds, create the alert without image
-                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                        Log.d("CreateAlertUseCase", "Creating alert without image due to upload failures");
-                        createAlertWithImageUrl(type, severity, location, description, null, userId, callback);
-                    }, 2000);
-                });
+        // Keep only a thumbnail inline; the full image goes to a separate collection loaded on demand
+        alertImageStore.saveImage(image.getJpegData(), new AlertImageStore.SaveImageCallback() {
+            @Override
+            public void onSuccess(@NonNull String reference) {
+                onImageStored(context, pending, reference, thumbnail, callback);
             }
 
             @Override
-            public void onProgress(int progress) {
-                // Base64 conversion is from 80% to 95%
-                callback.onProgress(80 + (progress * 15 / 100));
+            public void onError(@NonNull Exception e) {
+                Log.w("CreateAlertUseCase", "Full image store failed, keeping thumbnail only: " + e.getMessage());
+                createAlertWithImageUrl(context, pending, thumbnail, thumbnail, callback);
             }
         });
     }
 
-    private void createAlertWithImageUrl(String type, String severity, String location,
-                                       String description, @Nullable String imageUrl, String userId, CreateAlertCallback callback) {
+    /**
+     * Remembers the stored image in the outbox, so a replay does not upload it again
+     */
+    private void onImageStored(Context context, PendingAlert pending, String imageUrl, @Nullable String thumbnailUrl,
+                               SubmitCallback callback) {
+        pending.setImageUrl(imageUrl);
+        pending.setThumbnailUrl(thumbnailUrl);
+        AlertOutbox outbox = outboxProvider.get(context);
+        AlertOutbox.executor().execute(() -> outbox.markImageStored(pending.getIdempotencyKey(), imageUrl, thumbnailUrl));
+        createAlertWithImageUrl(context, pending, imageUrl, thumbnailUrl, callback);
+    }
+
+    private void createAlertWithImageUrl(Context context, PendingAlert pending, @Nullable String imageUrl,
+                                         @Nullable String thumbnailUrl, SubmitCallback callback) {
 
         SubmittedAlert submittedAlert = new SubmittedAlert(
                 null,
-                type.trim(),
-                severity.trim(),
-                location.trim(),
-                description.trim(),
+                pending.getType(),
+                pending.getSeverity(),
+                pending.getLocation(),
+                pending.getDescription(),
                 imageUrl,
-                userId,
+                pending.getUserId(),
                 null
         );
+        submittedAlert.setThumbnailUrl(thumbnailUrl);
 
-        repository.createSubmittedAlert(submittedAlert, new SubmittedAlertRepository.CreateSubmittedAlertCallback() {
+        String parentId = pending.getParentAlertId();
+        if (parentId == null || parentId.equals(pending.getIdempotencyKey())) {
+            writeNewAlert(submittedAlert, pending, callback);
+        } else {
+            attachToExisting(context, parentId, submittedAlert, pending, callback);
+        }
+    }
+
+    /**
+     * Attaches the report to a matching alert still awaiting review, so moderators see one entry
+     */
+    private void attachToExisting(Context context, String parentId, SubmittedAlert report, PendingAlert pending,
+                                  SubmitCallback callback) {
+        Log.d("CreateAlertUseCase", "Attaching report " + pending.getIdempotencyKey() + " to alert " + parentId);
+        repository.attachReport(parentId, report, pending.getIdempotencyKey(), new SubmittedAlertRepository.CreateSubmittedAlertCallback() {
             @Override
             public void onSuccess(@NonNull String alertId) {
-                callback.onProgress(100);
                 callback.onSuccess(alertId);
             }
 
             @Override
             public void onError(@NonNull Exception e) {
-                String errorMessage = e.getMessage() != null ? e.getMessage() : "Failed to submit alert for review.";
-                callback.onError(errorMessage);
+                if (!isNotFound(e)) {
+                    // Replayed later against the same alert
+                    callback.onError(e);
+                    return;
+                }
+                // The alert was reviewed and deleted in the meantime, so nothing was attached to it
+                Log.w("CreateAlertUseCase", "Alert " + parentId + " is gone, creating new alert");
+                setParent(context, pending, pending.getIdempotencyKey(), () -> writeNewAlert(report, pending, callback));
             }
         });
     }
+
+    private static boolean isNotFound(Exception e) {
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.NOT_FOUND;
+    }
+
+    private void writeNewAlert(SubmittedAlert submittedAlert, PendingAlert pending, SubmitCallback callback) {
+        repository.createSubmittedAlert(submittedAlert, pending.getIdempotencyKey(), new SubmittedAlertRepository.CreateSubmittedAlertCallback() {
+            @Override
+            public void onSuccess(@NonNull String alertId) {
+                callback.onSuccess(alertId);
+            }
+
+            @Override
+            public void onError(@NonNull Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
+
+    private static boolean isOnline(Context context) {
+        ConnectivityManager connectivityManager = context.getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) return true;
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.getActiveNetwork());
+        return capabilities != null && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
 }
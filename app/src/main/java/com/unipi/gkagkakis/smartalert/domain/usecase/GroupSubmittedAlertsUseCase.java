@@ -0,0 +1,118 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import androidx.annotation.NonNull;
+
+import com.unipi.gkagkakis.smartalert.Utils.SpatialGridIndex;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Use case for grouping submitted alerts that were reported near each other
+ * Pure computation with no Android dependencies, safe to run on a background thread
+ */
+public class GroupSubmittedAlertsUseCase {
+
+    public static final double GROUPING_DISTANCE_KM = 5.0;
+
+    /**
+     * Groups alerts within GROUPING_DISTANCE_KM of each group's first alert
+     * @param submittedAlerts Alerts in display order (most recent first)
+     * @return New list of groups sorted by creation time of their first alert
+     */
+    @NonNull
+    public List<SubmittedAlertGroup> groupAlerts(@NonNull List<SubmittedAlert> submittedAlerts) {
+        List<SubmittedAlertGroup> groups = new ArrayList<>();
+
+        int count = submittedAlerts.size();
+        boolean[] grouped = new boolean[count];
+
+        // Index alerts with valid coordinates by grid cell
+        SpatialGridIndex<Integer> index = new SpatialGridIndex<>(GROUPING_DISTANCE_KM);
+        Map<String, List<Integer>> alertsByRawLocation = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            SubmittedAlert alert = submittedAlerts.get(i);
+            String location = alert.getLocation();
+            if (location == null) continue;
+
+            if (alert.hasCoordinates()) {
+                index.add(i, alert.getLatitude(), alert.getLongitude());
+            } else {
+                // Unparseable locations can only match by case-insensitive string comparison
+                String key = location.toLowerCase(Locale.ROOT);
+                List<Integer> sameLocation = alertsByRawLocation.get(key);
+                if (sameLocation == null) {
+                    sameLocation = new ArrayList<>();
+                    alertsByRawLocation.put(key, sameLocation);
+                }
+                sameLocation.add(i);
+            }
+        }
+
+        List<Integer> nearby = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (grouped[i]) continue;
+            grouped[i] = true;
+
+            SubmittedAlert currentAlert = submittedAlerts.get(i);
+            SubmittedAlertGroup group = new SubmittedAlertGroup();
+            group.addSubmittedAlert(currentAlert);
+
+            // Find alerts within 5km of the current alert, keeping the original list order
+            nearby.clear();
+            if (currentAlert.hasCoordinates()) {
+                index.findWithinRadius(currentAlert.getLatitude(), currentAlert.getLongitude(), nearby);
+                Collections.sort(nearby);
+            } else if (currentAlert.getLocation() != null) {
+                nearby.addAll(alertsByRawLocation.get(currentAlert.getLocation().toLowerCase(Locale.ROOT)));
+            }
+
+            for (int other : nearby) {
+                if (!grouped[other]) {
+                    grouped[other] = true;
+                    group.addSubmittedAlert(submittedAlerts.get(other));
+                }
+            }
+
+            updateGroupLocation(group);
+            groups.add(group);
+        }
+
+        sortByMostRecent(groups);
+        return groups;
+    }
+
+    /**
+     * Set group location based on first alert and count
+     */
+    public static void updateGroupLocation(@NonNull SubmittedAlertGroup group) {
+        SubmittedAlert firstAlert = group.getFirstAlert();
+        if (firstAlert == null) return;
+
+        if (group.getAlertCount() > 1) {
+            group.setGroupLocation(firstAlert.getLocation() + " (" + group.getAlertCount() + " nearby alerts)");
+        } else {
+            group.setGroupLocation(firstAlert.getLocation());
+        }
+    }
+
+    /**
+     * Sort groups by creation time (most recent first)
+     */
+    public static void sortByMostRecent(@NonNull List<SubmittedAlertGroup> groups) {
+        groups.sort((group1, group2) -> {
+            SubmittedAlert alert1 = group1.getFirstAlert();
+            SubmittedAlert alert2 = group2.getFirstAlert();
+            if (alert1 != null && alert2 != null && alert1.getCreatedAt() != null && alert2.getCreatedAt() != null) {
+                return alert2.getCreatedAt().compareTo(alert1.getCreatedAt());
+            }
+            return 0;
+        });
+    }
+}
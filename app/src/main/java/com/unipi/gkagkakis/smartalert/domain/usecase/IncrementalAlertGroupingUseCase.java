@@ -0,0 +1,201 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import androidx.annotation.NonNull;
+
+import com.unipi.gkagkakis.smartalert.Utils.SpatialGridIndex;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertChange;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Use case that keeps submitted alert groups up to date from a stream of changes
+ * Each change costs one spatial index lookup instead of regrouping the whole queue.
+ * Applying an initial feed in display order produces the same groups as GroupSubmittedAlertsUseCase.
+ * Alerts arriving later differ on purpose: the batch pass would let a new alert, being the most
+ * recent, seed its own group and pull members out of the groups around it, while here it joins
+ * the existing group it is in range of. Groups on screen therefore never reshuffle while the
+ * queue is open; reset() and a fresh feed bring them back in line with the batch pass.
+ * Not thread-safe: callers must apply changes and take snapshots from a single thread.
+ */
+public class IncrementalAlertGroupingUseCase {
+
+    private static final class Group {
+        final long sequence;
+        final List<SubmittedAlert> alerts = new ArrayList<>();
+        SubmittedAlertGroup snapshot; // null when the group changed since the last snapshot
+
+        Group(long sequence) {
+            this.sequence = sequence;
+        }
+
+        SubmittedAlert seed() {
+            return alerts.get(0);
+        }
+    }
+
+    // Groups are indexed by the position of their first alert, which every member is near
+    private final SpatialGridIndex<Group> seedIndex = new SpatialGridIndex<>(GroupSubmittedAlertsUseCase.GROUPING_DISTANCE_KM);
+    private final Map<String, Group> groupsByRawLocation = new HashMap<>();
+    private final Map<String, Group> groupsByAlertId = new HashMap<>();
+    private final Set<Group> groups = new LinkedHashSet<>();
+    private final List<Group> candidates = new ArrayList<>();
+    private long nextSequence;
+
+    public void reset() {
+        seedIndex.clear();
+        groupsByRawLocation.clear();
+        groupsByAlertId.clear();
+        groups.clear();
+        nextSequence = 0;
+    }
+
+    public void applyChanges(@NonNull List<SubmittedAlertChange> changes) {
+        for (SubmittedAlertChange change : changes) {
+            SubmittedAlert alert = change.getSubmittedAlert();
+            switch (change.getType()) {
+                case ADDED:
+                    if (groupsByAlertId.containsKey(alert.getId())) {
+                        modifyAlert(alert);
+                    } else {
+                        addAlert(alert);
+                    }
+                    break;
+                case MODIFIED:
+                    modifyAlert(alert);
+                    break;
+                case REMOVED:
+                    removeAlert(alert.getId());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Immutable view of the current groups, sorted by creation time of their first alert
+     * Unchanged groups reuse their previous snapshot instance so list diffing skips them
+     */
+    @NonNull
+    public List<SubmittedAlertGroup> snapshot() {
+        List<SubmittedAlertGroup> result = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            if (group.snapshot == null) {
+                SubmittedAlertGroup snapshot = new SubmittedAlertGroup();
+                for (SubmittedAlert alert : group.alerts) {
+                    snapshot.addSubmittedAlert(alert);
+                }
+                GroupSubmittedAlertsUseCase.updateGroupLocation(snapshot);
+                group.snapshot = snapshot;
+            }
+            result.add(group.snapshot);
+        }
+        GroupSubmittedAlertsUseCase.sortByMostRecent(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    private void addAlert(SubmittedAlert alert) {
+        Group group = findGroupFor(alert);
+        if (group == null) {
+            group = new Group(nextSequence++);
+            group.alerts.add(alert);
+            groups.add(group);
+            if (alert.hasCoordinates()) {
+                seedIndex.add(group, alert.getLatitude(), alert.getLongitude());
+            } else if (alert.getLocation() != null) {
+                groupsByRawLocation.put(rawLocationKey(alert), group);
+            }
+        } else {
+            group.alerts.add(alert);
+            group.snapshot = null;
+        }
+        groupsByAlertId.put(alert.getId(), group);
+    }
+
+    private Group findGroupFor(SubmittedAlert alert) {
+        if (alert.getLocation() == null) {
+            return null;
+        }
+        if (!alert.hasCoordinates()) {
+            return groupsByRawLocation.get(rawLocationKey(alert));
+        }
+
+        // Join the earliest created group whose first alert is in range. For the initial feed that is the
+        // first seed in display order, as in the batch pass; a later arrival joins it instead of seeding
+        candidates.clear();
+        seedIndex.findWithinRadius(alert.getLatitude(), alert.getLongitude(), candidates);
+        Group best = null;
+        for (Group candidate : candidates) {
+            if (best == null || candidate.sequence < best.sequence) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private void modifyAlert(SubmittedAlert alert) {
+        Group group = groupsByAlertId.get(alert.getId());
+        if (group == null) {
+            addAlert(alert);
+            return;
+        }
+
+        int position = indexOf(group, alert.getId());
+        if (Objects.equals(group.alerts.get(position).getLocation(), alert.getLocation())) {
+            // Same location keeps group membership, only the alert content changed
+            group.alerts.set(position, alert);
+            group.snapshot = null;
+        } else {
+            removeAlert(alert.getId());
+            addAlert(alert);
+        }
+    }
+
+    private void removeAlert(String alertId) {
+        Group group = groupsByAlertId.remove(alertId);
+        if (group == null) return;
+
+        int position = indexOf(group, alertId);
+        if (position > 0) {
+            group.alerts.remove(position);
+            group.snapshot = null;
+            return;
+        }
+
+        // The first alert anchored the group, so regroup the remaining members
+        SubmittedAlert seed = group.seed();
+        if (seed.hasCoordinates()) {
+            seedIndex.remove(group, seed.getLatitude(), seed.getLongitude());
+        } else if (seed.getLocation() != null) {
+            groupsByRawLocation.remove(rawLocationKey(seed));
+        }
+        groups.remove(group);
+
+        for (int i = 1; i < group.alerts.size(); i++) {
+            SubmittedAlert member = group.alerts.get(i);
+            groupsByAlertId.remove(member.getId());
+            addAlert(member);
+        }
+    }
+
+    private static int indexOf(Group group, String alertId) {
+        for (int i = 0; i < group.alerts.size(); i++) {
+            if (Objects.equals(group.alerts.get(i).getId(), alertId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String rawLocationKey(SubmittedAlert alert) {
+        return alert.getLocation().toLowerCase(Locale.ROOT);
+    }
+}
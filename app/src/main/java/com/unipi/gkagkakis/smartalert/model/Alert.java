@@ -3,6 +3,7 @@ package com.unipi.gkagkakis.smartalert.model;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.ServerTimestamp;
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
 
 import java.util.Date;
 
@@ -21,6 +22,10 @@ public class Alert {
     @ServerTimestamp
     private Date createdAt;
 
+    // Coordinates parsed once from location; NaN when the location has no valid coordinates
+    @Exclude private double latitude = Double.NaN;
+    @Exclude private double longitude = Double.NaN;
+
     public Alert() {}
 
     public Alert(String id, String type, String severity, String location, String description,
@@ -29,6 +34,7 @@ public class Alert {
         this.type = type;
         this.severity = severity;
         this.location = location;
+        parseCoordinates();
         this.description = description;
         this.imageUrl = imageUrl;
         this.userId = userId;
@@ -45,9 +51,20 @@ public class Alert {
     public void setSeverity(String severity) { this.severity = severity; }
 
     public String getLocation() { return location; }
-    public void setLocation(String location) { this.location = location; }
+    public void setLocation(String location) { this.location = location; parseCoordinates(); }
+
+    @Exclude public boolean hasCoordinates() { return !Double.isNaN(latitude); }
+    @Exclude public double getLatitude() { return latitude; }
+    @Exclude public double getLongitude() { return longitude; }
 
     public String getDescription() { return description; }
 
     public Date getCreatedAt() { return createdAt; }
+
+    private void parseCoordinates() {
+        CoordinatesUtil.LatLon latLon = CoordinatesUtil.scratch();
+        boolean parsed = location != null && CoordinatesUtil.tryParseLatLon(location, latLon);
+        latitude = parsed ? latLon.latitude : Double.NaN;
+        longitude = parsed ? latLon.longitude : Double.NaN;
+    }
 }
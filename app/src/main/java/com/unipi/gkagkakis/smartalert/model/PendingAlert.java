@@ -0,0 +1,132 @@
+package com.unipi.gkagkakis.smartalert.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * An alert submission kept in the local outbox until Firestore has accepted it
+ * The idempotency key doubles as the submitted_alerts document id, so replaying it never duplicates the alert.
+ */
+public class PendingAlert {
+    private final String idempotencyKey;
+    private final String userId;
+    private final String type;
+    private final String severity;
+    private final String location;
+    private final String description;
+    private final long createdAt;
+
+    // Prepared image kept on disk until it is uploaded; null for alerts without an image
+    private String imagePath;
+    private int imageWidth;
+    private int imageHeight;
+    private String thumbnailUrl;
+    // Set once the image is stored remotely, so a replay does not upload it again
+    private String imageUrl;
+    // Alert the report is filed under, or its own key when it starts a new one; null until chosen
+    private String parentAlertId;
+    private int attempts;
+
+    public PendingAlert(@NonNull String idempotencyKey, @NonNull String userId, @NonNull String type,
+                        @NonNull String severity, @NonNull String location, @NonNull String description,
+                        long createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.userId = userId;
+        this.type = type;
+        this.severity = severity;
+        this.location = location;
+        this.description = description;
+        this.createdAt = createdAt;
+    }
+
+    @NonNull
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    @NonNull
+    public String getUserId() {
+        return userId;
+    }
+
+    @NonNull
+    public String getType() {
+        return type;
+    }
+
+    @NonNull
+    public String getSeverity() {
+        return severity;
+    }
+
+    @NonNull
+    public String getLocation() {
+        return location;
+    }
+
+    @NonNull
+    public String getDescription() {
+        return description;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Nullable
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(@Nullable String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public void setImageSize(int imageWidth, int imageHeight) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    @Nullable
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(@Nullable String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    @Nullable
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(@Nullable String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    @Nullable
+    public String getParentAlertId() {
+        return parentAlertId;
+    }
+
+    public void setParentAlertId(@Nullable String parentAlertId) {
+        this.parentAlertId = parentAlertId;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,46 @@
+package com.unipi.gkagkakis.smartalert.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A picked image after decoding, resizing and compressing, produced once per alert
+ * Every upload path consumes the same bytes, so a fallback never re-processes the source.
+ */
+public class PreparedImage {
+    private final byte[] jpegData;
+    private final int width;
+    private final int height;
+    private final String thumbnail;
+
+    public PreparedImage(@NonNull byte[] jpegData, int width, int height, @Nullable String thumbnail) {
+        this.jpegData = jpegData;
+        this.width = width;
+        this.height = height;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * @return The compressed JPEG; shared, so callers must not modify it
+     */
+    @NonNull
+    public byte[] getJpegData() {
+        return jpegData;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return A small JPEG data URI for list rows, or null if it could not be encoded
+     */
+    @Nullable
+    public String getThumbnail() {
+        return thumbnail;
+    }
+}
@@ -3,6 +3,8 @@ package com.unipi.gkagkakis.smartalert.model;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.ServerTimestamp;
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
 
 import java.util.Date;
 
@@ -16,11 +18,21 @@ public class SubmittedAlert {
     private String location;
     private String description;
     private String imageUrl;
+    // Small inline image for list rows; imageUrl then points at the full image, loaded on demand
+    private String thumbnailUrl;
     private String userId;
+    // Reports from other users attached to this one instead of becoming their own documents
+    private int reportCount = 1;
 
     @ServerTimestamp
     private Date createdAt;
 
+    // Coordinates parsed once from location; NaN when the location has no valid coordinates
+    @Exclude
+    private double latitude = Double.NaN;
+    @Exclude
+    private double longitude = Double.NaN;
+
     // No-argument constructor required by Firebase Firestore for deserialization
     public SubmittedAlert() {
         // Default constructor - Firebase will populate fields via setters
@@ -33,6 +45,7 @@ public class SubmittedAlert {
         this.type = type;
         this.severity = severity;
         this.location = location;
+        parseCoordinates();
         this.description = description;
         this.imageUrl = imageUrl;
         this.userId = userId;
@@ -71,6 +84,22 @@ public class SubmittedAlert {
 
     public void setLocation(String location) {
         this.location = location;
+        parseCoordinates();
+    }
+
+    @Exclude
+    public boolean hasCoordinates() {
+        return !Double.isNaN(latitude);
+    }
+
+    @Exclude
+    public double getLatitude() {
+        return latitude;
+    }
+
+    @Exclude
+    public double getLongitude() {
+        return longitude;
     }
 
     public String getDescription() {
@@ -85,11 +114,41 @@ public class SubmittedAlert {
         return imageUrl;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
     public String getUserId() {
         return userId;
     }
 
+    public int getReportCount() {
+        return reportCount;
+    }
+
+    public void setReportCount(int reportCount) {
+        this.reportCount = reportCount;
+    }
+
+    /**
+     * Stored for geohash range queries; derived from the location, so it is never read back
+     */
+    public String getGeohash() {
+        return hasCoordinates() ? GeohashUtil.encode(latitude, longitude, GeohashUtil.STORED_PRECISION) : null;
+    }
+
     public Date getCreatedAt() {
         return createdAt;
     }
-}
\ No newline at end of file
+
+    private void parseCoordinates() {
+        CoordinatesUtil.LatLon latLon = CoordinatesUtil.scratch();
+        boolean parsed = location != null && CoordinatesUtil.tryParseLatLon(location, latLon);
+        latitude = parsed ? latLon.latitude : Double.NaN;
+        longitude = parsed ? latLon.longitude : Double.NaN;
+    }
+}
@@ -0,0 +1,29 @@
+package com.unipi.gkagkakis.smartalert.model;
+
+/**
+ * A single added, modified or removed submitted alert from the real-time moderation feed
+ */
+public class SubmittedAlertChange {
+
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final SubmittedAlert submittedAlert;
+
+    public SubmittedAlertChange(Type type, SubmittedAlert submittedAlert) {
+        this.type = type;
+        this.submittedAlert = submittedAlert;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SubmittedAlert getSubmittedAlert() {
+        return submittedAlert;
+    }
+}
@@ -40,6 +40,19 @@ public class SubmittedAlertGroup {
         return alertCount;
     }
 
+    /**
+     * Reports behind the group's alerts, including those attached to an alert as duplicates
+     */
+    public int getReportCount() {
+        int reports = 0;
+        if (submittedAlerts != null) {
+            for (SubmittedAlert submittedAlert : submittedAlerts) {
+                reports += Math.max(1, submittedAlert.getReportCount());
+            }
+        }
+        return reports;
+    }
+
     public boolean isExpanded() {
         return isExpanded;
     }
@@ -59,6 +72,14 @@ public class SubmittedAlertGroup {
         return null;
     }
 
+    /**
+     * Stable identifier for the group, taken from its first alert
+     */
+    public String getGroupId() {
+        SubmittedAlert firstAlert = getFirstAlert();
+        return firstAlert != null ? firstAlert.getId() : null;
+    }
+
     public boolean isPending() {
         return "PENDING".equals(status);
     }
@@ -2,31 +2,32 @@ package com.unipi.gkagkakis.smartalert.presentation.UI;
 
 import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.unipi.gkagkakis.smartalert.R;
-import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
 import com.unipi.gkagkakis.smartalert.Utils.LocationUtils;
 import com.unipi.gkagkakis.smartalert.Utils.StatusBarHelper;
 import com.unipi.gkagkakis.smartalert.Utils.ThemeManager;
 import com.unipi.gkagkakis.smartalert.data.repository.AlertRepositoryImpl;
-import com.unipi.gkagkakis.smartalert.data.repository.SubmittedAlertRepositoryImpl;
 import com.unipi.gkagkakis.smartalert.data.service.AlertSeedService;
 import com.unipi.gkagkakis.smartalert.domain.repository.AlertRepository;
-import com.unipi.gkagkakis.smartalert.domain.repository.SubmittedAlertRepository;
 import com.unipi.gkagkakis.smartalert.model.Alert;
 import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
 import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
 import com.unipi.gkagkakis.smartalert.presentation.adapter.SubmittedAlertGroupAdapter;
+import com.unipi.gkagkakis.smartalert.presentation.viewmodel.AdminViewAlertsViewModel;
 import com.unipi.gkagkakis.smartalert.service.FCMNotificationSender;
 
 import java.util.ArrayList;
@@ -35,12 +36,23 @@ import java.util.Locale;
 
 public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAlertGroupAdapter.OnGroupActionListener {
 
-    private static final double GROUPING_DISTANCE_KM = 5.0;
+    // Rows assumed visible before the list has been laid out
+    private static final int INITIAL_VISIBLE_ROWS = 10;
+    // How long the first list waits for the addresses of its visible rows
+    private static final long FIRST_BIND_WAIT_MS = 400;
 
     private SubmittedAlertGroupAdapter adapter;
-    private SubmittedAlertRepository submittedAlertRepository;
+    private LinearLayoutManager layoutManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private List<SubmittedAlertGroup> heldGroups;
+    private final Runnable submitHeldGroups = () -> {
+        if (heldGroups != null) {
+            adapter.submitList(heldGroups);
+            heldGroups = null;
+        }
+    };
+    private AdminViewAlertsViewModel viewModel;
     private AlertRepository alertRepository;
-    private List<SubmittedAlertGroup> submittedAlertGroups;
     private FCMNotificationSender fcmNotificationSender;
 
     @Override
@@ -54,7 +66,8 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
 
         initViews();
         initRepositories();
-        loadSubmittedAlerts();
+        observeViewModel();
+        viewModel.startListening();
     }
 
     private void initViews() {
@@ -68,98 +81,113 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
         }
 
         RecyclerView recyclerView = findViewById(R.id.recyclerViewAlerts);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
 
-        submittedAlertGroups = new ArrayList<>();
-        adapter = new SubmittedAlertGroupAdapter(submittedAlertGroups, this);
+        adapter = new SubmittedAlertGroupAdapter(this);
         recyclerView.setAdapter(adapter);
     }
 
     private void initRepositories() {
-        submittedAlertRepository = SubmittedAlertRepositoryImpl.getInstance();
+        viewModel = new ViewModelProvider(this).get(AdminViewAlertsViewModel.class);
         alertRepository = AlertRepositoryImpl.getInstance();
         fcmNotificationSender = new FCMNotificationSender(this);
     }
 
-    private void loadSubmittedAlerts() {
-        submittedAlertRepository.getAllSubmittedAlerts(new SubmittedAlertRepository.GetAllSubmittedAlertsCallback() {
-            @SuppressLint("NotifyDataSetChanged")
-            @Override
-            public void onSuccess(@NonNull List<SubmittedAlert> submittedAlerts) {
-                groupSubmittedAlerts(submittedAlerts);
-                adapter.notifyDataSetChanged();
-            }
+    private void observeViewModel() {
+        viewModel.submittedAlertGroups.observe(this, this::showGroups);
 
-            @Override
-            public void onError(@NonNull Exception e) {
-                Toast.makeText(AdminViewAlertsActivity.this,
-                        "Failed to load submitted alerts: " + e.getMessage(),
-                        Toast.LENGTH_LONG).show();
+        viewModel.error.observe(this, error -> {
+            if (error != null) {
+                Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+                viewModel.clearError();
             }
         });
     }
 
-    private void groupSubmittedAlerts(List<SubmittedAlert> submittedAlerts) {
-        submittedAlertGroups.clear();
-        List<SubmittedAlert> remainingAlerts = new ArrayList<>(submittedAlerts);
-
-        while (!remainingAlerts.isEmpty()) {
-            SubmittedAlert currentAlert = remainingAlerts.remove(0);
-            SubmittedAlertGroup group = new SubmittedAlertGroup();
-            group.addSubmittedAlert(currentAlert);
-
-            // Find alerts within 5km of the current alert
-            List<SubmittedAlert> alertsToRemove = new ArrayList<>();
-            for (SubmittedAlert otherAlert : remainingAlerts) {
-                if (areAlertsNearby(currentAlert, otherAlert)) {
-                    group.addSubmittedAlert(otherAlert);
-                    alertsToRemove.add(otherAlert);
-                }
-            }
+    /**
+     * Prefetches the addresses of the groups, then shows them
+     * The first list is held until its visible rows have addresses, or briefly at most, so rows
+     * do not fill in one by one; later updates show at once while the cache fills behind them.
+     */
+    private void showGroups(List<SubmittedAlertGroup> groups) {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            first = 0;
+            last = INITIAL_VISIBLE_ROWS - 1;
+        }
 
-            // Remove grouped alerts from remaining alerts
-            remainingAlerts.removeAll(alertsToRemove);
+        List<String> locations = new ArrayList<>();
+        int visibleCount = collectLocationsByPriority(groups, first, last, locations);
 
-            // Set group location based on first alert and count
-            if (group.getAlertCount() > 1) {
-                group.setGroupLocation(currentAlert.getLocation() + " (" + group.getAlertCount() + " nearby alerts)");
-            } else {
-                group.setGroupLocation(currentAlert.getLocation());
-            }
+        if (heldGroups != null) {
+            // Still waiting on the first list; show the newest one when the wait ends
+            heldGroups = groups;
+            LocationUtils.prefetchAddresses(this, locations, 0, null);
+        } else if (adapter.getItemCount() > 0 || groups.isEmpty()) {
+            LocationUtils.prefetchAddresses(this, locations, 0, null);
+            adapter.submitList(groups);
+        } else {
+            heldGroups = groups;
+            mainHandler.postDelayed(submitHeldGroups, FIRST_BIND_WAIT_MS);
+            LocationUtils.prefetchAddresses(this, locations, visibleCount, submitHeldGroups);
+        }
+    }
 
-            submittedAlertGroups.add(group);
+    /**
+     * Orders group locations for prefetching: visible group headers, then the other alerts of
+     * visible groups, then the remaining groups nearest the visible ones first
+     * @return How many leading locations belong to visible group headers
+     */
+    private int collectLocationsByPriority(List<SubmittedAlertGroup> groups, int first, int last,
+                                           List<String> locations) {
+        int firstVisible = Math.min(first, groups.size());
+        int lastVisible = Math.min(last, groups.size() - 1);
+        for (int i = firstVisible; i <= lastVisible; i++) {
+            addFirstLocation(groups.get(i), locations);
+        }
+        int visibleCount = locations.size();
+        for (int i = firstVisible; i <= lastVisible; i++) {
+            addOtherLocations(groups.get(i), locations);
         }
 
-        // Sort groups by creation time (most recent first)
-        submittedAlertGroups.sort((group1, group2) -> {
-            SubmittedAlert alert1 = group1.getFirstAlert();
-            SubmittedAlert alert2 = group2.getFirstAlert();
-            if (alert1 != null && alert2 != null && alert1.getCreatedAt() != null && alert2.getCreatedAt() != null) {
-                return alert2.getCreatedAt().compareTo(alert1.getCreatedAt());
+        // Walk outwards from the visible window, alternating below and above it
+        for (int below = lastVisible + 1, above = firstVisible - 1; below < groups.size() || above >= 0; below++, above--) {
+            if (below < groups.size()) {
+                addFirstLocation(groups.get(below), locations);
+                addOtherLocations(groups.get(below), locations);
             }
-            return 0;
-        });
+            if (above >= 0) {
+                addFirstLocation(groups.get(above), locations);
+                addOtherLocations(groups.get(above), locations);
+            }
+        }
+        return visibleCount;
     }
 
-    private boolean areAlertsNearby(SubmittedAlert alert1, SubmittedAlert alert2) {
-        String location1 = alert1.getLocation();
-        String location2 = alert2.getLocation();
-
-        if (location1 == null || location2 == null) {
-            return false;
+    /**
+     * The header shows the first alert's location; getGroupLocation() adds a count and cannot be parsed
+     */
+    private static void addFirstLocation(SubmittedAlertGroup group, List<String> locations) {
+        SubmittedAlert firstAlert = group.getFirstAlert();
+        if (firstAlert != null) {
+            locations.add(firstAlert.getLocation());
         }
+    }
 
-        // Try to parse coordinates from location strings
-        String coords1 = CoordinatesUtil.tryParseCoordinates(location1);
-        String coords2 = CoordinatesUtil.tryParseCoordinates(location2);
-
-        if (coords1 == null || coords2 == null) {
-            // If we can't parse coordinates, fall back to string comparison
-            return location1.equalsIgnoreCase(location2);
+    private static void addOtherLocations(SubmittedAlertGroup group, List<String> locations) {
+        List<SubmittedAlert> alerts = group.getSubmittedAlerts();
+        for (int i = 1; i < alerts.size(); i++) {
+            locations.add(alerts.get(i).getLocation());
         }
+    }
 
-        double distance = CoordinatesUtil.calculateDistanceFromStrings(coords1, coords2);
-        return distance >= 0 && distance <= GROUPING_DISTANCE_KM;
+    @Override
+    protected void onDestroy() {
+        mainHandler.removeCallbacks(submitHeldGroups);
+        heldGroups = null;
+        super.onDestroy();
     }
 
     @Override
@@ -181,8 +209,11 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
             alertRepository.createAlert(newAlert, new AlertRepository.CreateAlertCallback() {
                 @Override
                 public void onSuccess(@NonNull String alertId) {
+                    // Notifications carry the id so devices dedupe and replace them by alert
+                    newAlert.setId(alertId);
+
                     // Delete all submitted alerts in the group
-                    deleteSubmittedAlertsInGroup(group, position);
+                    viewModel.deleteGroup(group);
 
                     sendPushNotificationToAllUsers(newAlert);
                 }
@@ -199,36 +230,10 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
     @Override
     public void onRejectGroup(SubmittedAlertGroup group, int position) {
         // Simply delete all submitted alerts in the group
-        deleteSubmittedAlertsInGroup(group, position);
+        viewModel.deleteGroup(group);
         Toast.makeText(this, "Alert group rejected", Toast.LENGTH_SHORT).show();
     }
 
-    private void deleteSubmittedAlertsInGroup(SubmittedAlertGroup group, int position) {
-        List<SubmittedAlert> alertsToDelete = new ArrayList<>(group.getSubmittedAlerts());
-        final int[] deletedCount = {0};
-        final int totalCount = alertsToDelete.size();
-
-        for (SubmittedAlert alert : alertsToDelete) {
-            submittedAlertRepository.deleteSubmittedAlert(alert.getId(), new SubmittedAlertRepository.DeleteSubmittedAlertCallback() {
-                @Override
-                public void onSuccess() {
-                    deletedCount[0]++;
-                    if (deletedCount[0] == totalCount) {
-                        // All alerts deleted, remove group from list
-                        submittedAlertGroups.remove(position);
-                        adapter.notifyItemRemoved(position);
-                    }
-                }
-
-                @Override
-                public void onError(@NonNull Exception e) {
-                    Toast.makeText(AdminViewAlertsActivity.this,
-                            "Failed to delete some alerts: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                }
-            });
-        }
-    }
-
     @SuppressLint("DefaultLocale")
     private String createGroupDescription(SubmittedAlertGroup group) {
         if (group.getAlertCount() == 1) {
@@ -242,61 +247,49 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
     }
 
     private void sendPushNotificationToAllUsers(Alert alert) {
-        // Parse coordinates from the alert location
-        String coordinates = CoordinatesUtil.tryParseCoordinates(alert.getLocation());
-        if (coordinates == null) {
+        if (!alert.hasCoordinates()) {
             Toast.makeText(this, "Cannot send notifications: Invalid location coordinates", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Extract latitude and longitude
-        String[] parts = coordinates.split(",");
-        if (parts.length != 2) {
-            Toast.makeText(this, "Cannot send notifications: Invalid coordinate format", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        try {
-            double latitude = Double.parseDouble(parts[0].trim());
-            double longitude = Double.parseDouble(parts[1].trim());
+        double latitude = alert.getLatitude();
+        double longitude = alert.getLongitude();
 
-            // Convert coordinates to readable location name
-            LocationUtils.getAddressFromCoordinates(this, latitude, longitude, new LocationUtils.GeocodeCallback() {
-                @Override
-                public void onSuccess(String address) {
-                    // Use the readable address for notifications
-                    fcmNotificationSender.sendAlertNotificationToNearbyUsers(
-                            latitude,
-                            longitude,
-                            alert.getType(),
-                            alert.getDescription(),
-                            address, // Use readable address instead of coordinates
-                            alert.getSeverity() // Include severity parameter
-                    );
-
-                    Toast.makeText(AdminViewAlertsActivity.this, "Notifications sent to nearby users (within 10km)", Toast.LENGTH_SHORT).show();
-                }
-
-                @Override
-                public void onError(String error) {
-                    Log.e("AdminViewAlerts", "Failed to get address: " + error);
-                    // Fallback to coordinates if geocoding fails
-                    fcmNotificationSender.sendAlertNotificationToNearbyUsers(
-                            latitude,
-                            longitude,
-                            alert.getType(),
-                            alert.getDescription(),
-                            "nearby location", // Generic fallback
-                            alert.getSeverity() // Include severity parameter
-                    );
-
-                    Toast.makeText(AdminViewAlertsActivity.this, "Notifications sent to nearby users (within 10km)", Toast.LENGTH_SHORT).show();
-                }
-            });
+        // Convert coordinates to readable location name
+        LocationUtils.getAddressFromCoordinates(this, latitude, longitude, new LocationUtils.GeocodeCallback() {
+            @Override
+            public void onSuccess(String address) {
+                // Use the readable address for notifications
+                fcmNotificationSender.sendAlertNotificationToNearbyUsers(
+                        alert.getId(),
+                        latitude,
+                        longitude,
+                        alert.getType(),
+                        alert.getDescription(),
+                        address, // Use readable address instead of coordinates
+                        alert.getSeverity() // Include severity parameter
+                );
+
+                Toast.makeText(AdminViewAlertsActivity.this, "Notifications sent to nearby users (within 10km)", Toast.LENGTH_SHORT).show();
+            }
 
-        } catch (NumberFormatException e) {
-            Toast.makeText(this, "Cannot send notifications: Invalid coordinate values", Toast.LENGTH_SHORT).show();
-        }
+            @Override
+            public void onError(String error) {
+                Log.e("AdminViewAlerts", "Failed to get address: " + error);
+                // Fallback to coordinates if geocoding fails
+                fcmNotificationSender.sendAlertNotificationToNearbyUsers(
+                        alert.getId(),
+                        latitude,
+                        longitude,
+                        alert.getType(),
+                        alert.getDescription(),
+                        "nearby location", // Generic fallback
+                        alert.getSeverity() // Include severity parameter
+                );
+
+                Toast.makeText(AdminViewAlertsActivity.this, "Notifications sent to nearby users (within 10km)", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -308,6 +301,8 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_admin_view_alerts, menu);
+        menu.findItem(R.id.action_topic_delivery)
+                .setChecked(fcmNotificationSender.getDeliveryMode() == FCMNotificationSender.DeliveryMode.TOPIC);
         return true;
     }
 
@@ -319,9 +314,19 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
             seedAlertData();
             return true;
         } else if (id == R.id.action_refresh) {
-            loadSubmittedAlerts();
+            viewModel.refresh();
             Toast.makeText(this, "Refreshing alerts...", Toast.LENGTH_SHORT).show();
             return true;
+        } else if (id == R.id.action_topic_delivery) {
+            // Topic broadcast sends one message per area cell; devices check their own distance
+            boolean topicDelivery = !item.isChecked();
+            item.setChecked(topicDelivery);
+            fcmNotificationSender.setDeliveryMode(topicDelivery
+                    ? FCMNotificationSender.DeliveryMode.TOPIC
+                    : FCMNotificationSender.DeliveryMode.PER_USER);
+            Toast.makeText(this, topicDelivery ? "Alerts will be broadcast to area topics" : "Alerts will be sent to each nearby user",
+                    Toast.LENGTH_SHORT).show();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -345,9 +350,7 @@ public class AdminViewAlertsActivity extends BaseActivity implements SubmittedAl
             public void onSeedComplete(int successCount, int totalCount) {
                 String message = String.format(Locale.getDefault(), "Seeded %d/%d alerts successfully", successCount, totalCount);
                 Toast.makeText(AdminViewAlertsActivity.this, message, Toast.LENGTH_LONG).show();
-
-                // Refresh the submitted alerts list to show the new data
-                loadSubmittedAlerts();
+                // Seeded alerts reach the list through the real-time change listener
             }
 
             @Override
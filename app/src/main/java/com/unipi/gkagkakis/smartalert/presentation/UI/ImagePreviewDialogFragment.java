@@ -10,14 +10,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.DialogFragment;
 import com.unipi.gkagkakis.smartalert.R;
+import com.unipi.gkagkakis.smartalert.Utils.ImageLoader;
 
 /**
  * Dialog fragment for previewing images with blurred background
- * Supports both Uri and Bitmap image sources following clean architecture
+ * Supports Uri, Bitmap and image URL sources following clean architecture
  */
 public class ImagePreviewDialogFragment extends DialogFragment {
     private static final String ARG_HAS_BITMAP = "has_bitmap";
     private static final String ARG_IMAGE_URI = "image_uri";
+    private static final String ARG_IMAGE_URL = "image_url";
 
     // Temporary storage for bitmap - will be cleared after use
     private Bitmap tempImageBitmap;
@@ -36,6 +38,19 @@ public class ImagePreviewDialogFragment extends DialogFragment {
         return fragment;
     }
 
+    /**
+     * Creates instance with an image URL source, loaded through ImageLoader at the size of the preview
+     */
+    public static ImagePreviewDialogFragment newInstance(String imageUrl, Bitmap blurredBackground) {
+        ImagePreviewDialogFragment fragment = new ImagePreviewDialogFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_IMAGE_URL, imageUrl);
+        args.putBoolean(ARG_HAS_BITMAP, false);
+        fragment.setArguments(args);
+        fragment.tempBlurredBackground = blurredBackground;
+        return fragment;
+    }
+
     /**
      * Creates instance with Bitmap image source
      */
@@ -87,9 +102,14 @@ public class ImagePreviewDialogFragment extends DialogFragment {
 
         boolean hasBitmap = args.getBoolean(ARG_HAS_BITMAP, false);
 
+        String imageUrl = args.getString(ARG_IMAGE_URL);
+
         if (hasBitmap && tempImageBitmap != null) {
             // Display bitmap image
             imageView.setImageBitmap(tempImageBitmap);
+        } else if (imageUrl != null) {
+            // The view is not measured yet, so the image is decoded for the screen
+            ImageLoader.loadImage(imageUrl, imageView, null);
         } else {
             // Display Uri image
             Uri imageUri = args.getParcelable(ARG_IMAGE_URI);
@@ -101,6 +121,10 @@ public class ImagePreviewDialogFragment extends DialogFragment {
 
     @Override
     public void onDestroyView() {
+        View view = getView();
+        if (view != null) {
+            ImageLoader.cancel(view.findViewById(R.id.iv_preview));
+        }
         super.onDestroyView();
         // Clear bitmap references to prevent memory leaks
         clearBitmapReferences();
@@ -181,6 +181,12 @@ public class NewAlertFragment extends Fragment {
             }
         });
 
+        alertViewModel.getWarning().observe(getViewLifecycleOwner(), warning -> {
+            if (warning != null && !warning.isEmpty()) {
+                Toast.makeText(requireContext(), warning, Toast.LENGTH_LONG).show();
+            }
+        });
+
         alertViewModel.getCreatedId().observe(getViewLifecycleOwner(), alertId -> {
             if (alertId != null && !alertId.isEmpty()) {
                 Toast.makeText(requireContext(), "Alert created successfully!", Toast.LENGTH_SHORT).show();
@@ -189,6 +195,14 @@ public class NewAlertFragment extends Fragment {
             }
         });
 
+        alertViewModel.getQueuedId().observe(getViewLifecycleOwner(), alertId -> {
+            if (alertId != null && !alertId.isEmpty()) {
+                Toast.makeText(requireContext(), "No connection. Alert saved and will be sent automatically.", Toast.LENGTH_LONG).show();
+                requireActivity().getSupportFragmentManager().popBackStack();
+                alertViewModel.clearResult();
+            }
+        });
+
         // Observe NewAlertViewModel for location operations
         newAlertViewModel.currentLocation.observe(getViewLifecycleOwner(), location -> {
             if (location != null && !location.isEmpty()) {
@@ -43,6 +43,24 @@ public class AlertGroupAdapter extends RecyclerView.Adapter<AlertGroupAdapter.Al
         holder.bind(group);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull AlertGroupViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.cancelLocationLookups();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        // Rows still on screen are never recycled, so drop their lookups here
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            if (holder instanceof AlertGroupViewHolder) {
+                ((AlertGroupViewHolder) holder).cancelLocationLookups();
+            }
+        }
+    }
+
     @Override
     public int getItemCount() {
         return alertGroups.size();
@@ -89,7 +107,8 @@ public class AlertGroupAdapter extends RecyclerView.Adapter<AlertGroupAdapter.Al
                 // Show/hide alerts list
                 layoutAlertsList.setVisibility(group.isExpanded() ? View.VISIBLE : View.GONE);
 
-                // Clear previous alerts
+                // Clear previous alerts, dropping lookups meant for their views
+                cancelAlertLocationLookups();
                 layoutAlertsList.removeAllViews();
 
                 // Add alerts to the list if expanded
@@ -108,26 +127,28 @@ public class AlertGroupAdapter extends RecyclerView.Adapter<AlertGroupAdapter.Al
             }
         }
 
+        void cancelLocationLookups() {
+            LocationUtils.cancelAddress(textGroupLocation);
+            cancelAlertLocationLookups();
+        }
+
+        private void cancelAlertLocationLookups() {
+            for (int i = 0; i < layoutAlertsList.getChildCount(); i++) {
+                TextView textLocation = layoutAlertsList.getChildAt(i).findViewById(R.id.textAlertLocation);
+                if (textLocation != null) {
+                    LocationUtils.cancelAddress(textLocation);
+                }
+            }
+        }
+
         private void displayLocationForGroup(AlertGroup group) {
             String rawLocation = group.getGroupLocation();
 
             // Set initial text (coordinates or raw location)
             textGroupLocation.setText(rawLocation != null ? rawLocation : "Unknown location");
 
-            // Try to get human-readable address
-            LocationUtils.parseLocationAndGetAddress(itemView.getContext(), rawLocation, new LocationUtils.GeocodeCallback() {
-                @Override
-                public void onSuccess(String address) {
-                    // Update with human-readable address
-                    textGroupLocation.setText(address);
-                }
-
-                @Override
-                public void onError(String error) {
-                    // Keep the original location text if geocoding fails
-                    // textGroupLocation already shows the raw location
-                }
-            });
+            // Replace with the human-readable address once known; a recycled row drops the result
+            LocationUtils.bindAddress(textGroupLocation, rawLocation, "%s");
         }
 
         private View createAlertView(Alert alert) {
@@ -158,20 +179,8 @@ public class AlertGroupAdapter extends RecyclerView.Adapter<AlertGroupAdapter.Al
             // Set initial text with "Location: " prefix
             textLocation.setText(String.format("Location: %s", rawLocation != null ? rawLocation : "Unknown"));
 
-            // Try to get human-readable address
-            LocationUtils.parseLocationAndGetAddress(itemView.getContext(), rawLocation, new LocationUtils.GeocodeCallback() {
-                @Override
-                public void onSuccess(String address) {
-                    // Update with human-readable address
-                    textLocation.setText(String.format("Location: %s", address));
-                }
-
-                @Override
-                public void onError(String error) {
-                    // Keep the original location text if geocoding fails
-                    // textLocation already shows the raw location
-                }
-            });
+            // Replace with the human-readable address once known
+            LocationUtils.bindAddress(textLocation, rawLocation, "Location: %s");
         }
     }
 }
@@ -18,6 +18,8 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.appcompat.view.ContextThemeWrapper;
 import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.unipi.gkagkakis.smartalert.R;
@@ -29,23 +31,65 @@ import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
 import com.unipi.gkagkakis.smartalert.presentation.UI.ImagePreviewDialogFragment;
 
 import java.text.SimpleDateFormat;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
 
-public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAlertGroupAdapter.SubmittedAlertGroupViewHolder> {
+public class SubmittedAlertGroupAdapter extends ListAdapter<SubmittedAlertGroup, SubmittedAlertGroupAdapter.SubmittedAlertGroupViewHolder> {
 
-    private final List<SubmittedAlertGroup> submittedAlertGroups;
     private final SimpleDateFormat dateFormat;
     private final OnGroupActionListener listener;
 
+    // Expansion is UI state, kept here so group snapshots stay immutable across regrouping
+    private final Set<String> expandedGroupIds = new HashSet<>();
+
     public interface OnGroupActionListener {
         void onAcceptGroup(SubmittedAlertGroup group, int position);
 
         void onRejectGroup(SubmittedAlertGroup group, int position);
     }
 
-    public SubmittedAlertGroupAdapter(List<SubmittedAlertGroup> submittedAlertGroups, OnGroupActionListener listener) {
-        this.submittedAlertGroups = submittedAlertGroups;
+    private static final DiffUtil.ItemCallback<SubmittedAlertGroup> DIFF_CALLBACK = new DiffUtil.ItemCallback<SubmittedAlertGroup>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SubmittedAlertGroup oldItem, @NonNull SubmittedAlertGroup newItem) {
+            return Objects.equals(oldItem.getGroupId(), newItem.getGroupId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SubmittedAlertGroup oldItem, @NonNull SubmittedAlertGroup newItem) {
+            if (!Objects.equals(oldItem.getGroupLocation(), newItem.getGroupLocation())
+                    || !Objects.equals(oldItem.getStatus(), newItem.getStatus())
+                    || oldItem.getAlertCount() != newItem.getAlertCount()) {
+                return false;
+            }
+
+            List<SubmittedAlert> oldAlerts = oldItem.getSubmittedAlerts();
+            List<SubmittedAlert> newAlerts = newItem.getSubmittedAlerts();
+            for (int i = 0; i < oldAlerts.size(); i++) {
+                if (!hasSameContent(oldAlerts.get(i), newAlerts.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean hasSameContent(SubmittedAlert oldAlert, SubmittedAlert newAlert) {
+            return Objects.equals(oldAlert.getId(), newAlert.getId())
+                    && Objects.equals(oldAlert.getType(), newAlert.getType())
+                    && Objects.equals(oldAlert.getSeverity(), newAlert.getSeverity())
+                    && Objects.equals(oldAlert.getLocation(), newAlert.getLocation())
+                    && Objects.equals(oldAlert.getDescription(), newAlert.getDescription())
+                    && Objects.equals(oldAlert.getImageUrl(), newAlert.getImageUrl())
+                    && Objects.equals(oldAlert.getThumbnailUrl(), newAlert.getThumbnailUrl())
+                    && Objects.equals(oldAlert.getCreatedAt(), newAlert.getCreatedAt())
+                    && oldAlert.getReportCount() == newAlert.getReportCount();
+        }
+    };
+
+    public SubmittedAlertGroupAdapter(OnGroupActionListener listener) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
         this.dateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
     }
@@ -60,13 +104,42 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
 
     @Override
     public void onBindViewHolder(@NonNull SubmittedAlertGroupViewHolder holder, int position) {
-        SubmittedAlertGroup group = submittedAlertGroups.get(position);
+        SubmittedAlertGroup group = getItem(position);
         holder.bind(group, listener, dateFormat, this);
     }
 
     @Override
-    public int getItemCount() {
-        return submittedAlertGroups.size();
+    public void onViewRecycled(@NonNull SubmittedAlertGroupViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.cancelImageLoads();
+        holder.cancelLocationLookups();
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        // Rows still on screen are never recycled, so drop their lookups here
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            if (holder instanceof SubmittedAlertGroupViewHolder) {
+                ((SubmittedAlertGroupViewHolder) holder).cancelImageLoads();
+                ((SubmittedAlertGroupViewHolder) holder).cancelLocationLookups();
+            }
+        }
+    }
+
+    boolean isExpanded(SubmittedAlertGroup group) {
+        return expandedGroupIds.contains(group.getGroupId());
+    }
+
+    void toggleExpanded(SubmittedAlertGroup group, int position) {
+        String groupId = group.getGroupId();
+        if (!expandedGroupIds.remove(groupId)) {
+            expandedGroupIds.add(groupId);
+        }
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position);
+        }
     }
 
     public static class SubmittedAlertGroupViewHolder extends RecyclerView.ViewHolder {
@@ -98,12 +171,17 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
         public void bind(SubmittedAlertGroup group, OnGroupActionListener listener, SimpleDateFormat dateFormat, SubmittedAlertGroupAdapter adapter) {
             SubmittedAlert firstAlert = group.getFirstAlert();
             if (firstAlert != null) {
+                boolean expanded = adapter.isExpanded(group);
                 textGroupTitle.setText(String.format(Locale.getDefault(), "%s Alert", firstAlert.getType()));
 
                 // Parse and display human-readable location
                 displayLocationForGroup(group);
 
-                if (group.getAlertCount() > 1) {
+                int reportCount = group.getReportCount();
+                if (reportCount > group.getAlertCount()) {
+                    textGroupCount.setText(String.format(Locale.getDefault(), "%d alerts, %d reports", group.getAlertCount(), reportCount));
+                    textGroupCount.setVisibility(View.VISIBLE);
+                } else if (group.getAlertCount() > 1) {
                     textGroupCount.setText(String.format(Locale.getDefault(), "%d alerts", group.getAlertCount()));
                     textGroupCount.setVisibility(View.VISIBLE);
                 } else {
@@ -136,17 +214,19 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
 
                 // Set expand/collapse icon
                 imageExpandCollapse.setImageResource(
-                        group.isExpanded() ? R.drawable.ic_expand_less : R.drawable.ic_expand_more
+                        expanded ? R.drawable.ic_expand_less : R.drawable.ic_expand_more
                 );
 
                 // Show/hide alerts list
-                layoutAlertsList.setVisibility(group.isExpanded() ? View.VISIBLE : View.GONE);
+                layoutAlertsList.setVisibility(expanded ? View.VISIBLE : View.GONE);
 
-                // Clear previous alerts
+                // Clear previous alerts, dropping image loads and lookups meant for their views
+                cancelImageLoads();
+                cancelAlertLocationLookups();
                 layoutAlertsList.removeAllViews();
 
                 // Add alerts to the list if expanded
-                if (group.isExpanded()) {
+                if (expanded) {
                     for (SubmittedAlert alert : group.getSubmittedAlerts()) {
                         View alertView = createAlertView(alert, dateFormat);
                         layoutAlertsList.addView(alertView);
@@ -154,10 +234,7 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
                 }
 
                 // Set click listeners
-                layoutGroupHeader.setOnClickListener(v -> {
-                    group.setExpanded(!group.isExpanded());
-                    adapter.notifyItemChanged(getBindingAdapterPosition());
-                });
+                layoutGroupHeader.setOnClickListener(v -> adapter.toggleExpanded(group, getBindingAdapterPosition()));
 
                 btnAccept.setOnClickListener(v -> {
                     if (listener != null) {
@@ -173,26 +250,37 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
             }
         }
 
+        void cancelImageLoads() {
+            for (int i = 0; i < layoutAlertsList.getChildCount(); i++) {
+                ImageView imageAlertPhoto = layoutAlertsList.getChildAt(i).findViewById(R.id.imageAlertPhoto);
+                if (imageAlertPhoto != null) {
+                    ImageLoader.cancel(imageAlertPhoto);
+                }
+            }
+        }
+
+        void cancelLocationLookups() {
+            LocationUtils.cancelAddress(textGroupLocation);
+            cancelAlertLocationLookups();
+        }
+
+        private void cancelAlertLocationLookups() {
+            for (int i = 0; i < layoutAlertsList.getChildCount(); i++) {
+                TextView textLocation = layoutAlertsList.getChildAt(i).findViewById(R.id.textAlertLocation);
+                if (textLocation != null) {
+                    LocationUtils.cancelAddress(textLocation);
+                }
+            }
+        }
+
         private void displayLocationForGroup(SubmittedAlertGroup group) {
             String rawLocation = group.getGroupLocation();
 
             // Set initial text (coordinates or raw location)
             textGroupLocation.setText(rawLocation != null ? rawLocation : "Unknown location");
 
-            // Try to get human-readable address
-            LocationUtils.parseLocationAndGetAddress(itemView.getContext(), rawLocation, new LocationUtils.GeocodeCallback() {
-                @Override
-                public void onSuccess(String address) {
-                    // Update with human-readable address
-                    textGroupLocation.setText(address);
-                }
-
-                @Override
-                public void onError(String error) {
-                    // Keep the original location text if geocoding fails
-                    // textGroupLocation already shows the raw location
-                }
-            });
+            // Replace with the human-readable address once known; a recycled row drops the result
+            LocationUtils.bindAddress(textGroupLocation, rawLocation, "%s");
         }
 
         private View createAlertView(SubmittedAlert alert, SimpleDateFormat dateFormat) {
@@ -228,39 +316,51 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
 
         private void handleAlertImage(SubmittedAlert alert, LinearLayout layoutAlertImage, ImageView imageAlertPhoto) {
             String imageUrl = alert.getImageUrl();
+            String thumbnailUrl = alert.getThumbnailUrl();
 
             if (imageUrl != null && !imageUrl.isEmpty()) {
                 // Show the image container
                 layoutAlertImage.setVisibility(View.VISIBLE);
 
-                // Load image using ImageLoader utility
-                ImageLoader.loadImage(
-                    imageUrl,
-                    imageAlertPhoto,
-                    new ImageLoader.ImageLoadCallback() {
-                        @Override
-                        public void onImageLoaded(@NonNull Bitmap bitmap) {
-                            // Image loaded successfully
-                            imageAlertPhoto.setImageBitmap(bitmap);
-
-                            // Add click listener for full-screen preview with blur effect
-                            imageAlertPhoto.setOnClickListener(v -> showImagePreview(bitmap));
-                        }
-
-                        @Override
-                        public void onError(@NonNull Exception e) {
-                            // Hide image container if loading fails
-                            layoutAlertImage.setVisibility(View.GONE);
-                        }
-                    }
-                );
+                // Show the inline thumbnail when there is one; the full image is only fetched for the preview
+                boolean hasThumbnail = thumbnailUrl != null && !thumbnailUrl.isEmpty() && !thumbnailUrl.equals(imageUrl);
+                loadRowImage(hasThumbnail ? thumbnailUrl : imageUrl, imageUrl, layoutAlertImage, imageAlertPhoto);
             } else {
                 // Hide image container if no image URL
                 layoutAlertImage.setVisibility(View.GONE);
             }
         }
 
-        private void showImagePreview(Bitmap bitmap) {
+        private void loadRowImage(String rowImageUrl, String imageUrl, LinearLayout layoutAlertImage, ImageView imageAlertPhoto) {
+            // Load image using ImageLoader utility
+            ImageLoader.loadImage(
+                rowImageUrl,
+                imageAlertPhoto,
+                new ImageLoader.ImageLoadCallback() {
+                    @Override
+                    public void onImageLoaded(@NonNull Bitmap bitmap) {
+                        // Add click listener for full-screen preview with blur effect
+                        imageAlertPhoto.setOnClickListener(v -> showImagePreview(imageUrl));
+                    }
+
+                    @Override
+                    public void onError(@NonNull Exception e) {
+                        if (!rowImageUrl.equals(imageUrl)) {
+                            // Unusable thumbnail, show the full image in the row instead
+                            loadRowImage(imageUrl, imageUrl, layoutAlertImage, imageAlertPhoto);
+                            return;
+                        }
+                        // Hide image container if loading fails
+                        layoutAlertImage.setVisibility(View.GONE);
+                    }
+                }
+            );
+        }
+
+        /**
+         * Opens the full image in its own view, so it is loaded at screen size rather than row size
+         */
+        private void showImagePreview(String imageUrl) {
             // Get the activity to access the window and fragment manager
             Activity activity = null;
             Context context = itemView.getContext();
@@ -279,7 +379,7 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
 
                 Bitmap blurred = BlurHelper.blur(context, screenshot, 15);
                 ImagePreviewDialogFragment dialog =
-                    ImagePreviewDialogFragment.newInstance(bitmap, blurred);
+                    ImagePreviewDialogFragment.newInstance(imageUrl, blurred);
                 dialog.show(fragmentActivity.getSupportFragmentManager(), "image_preview");
             } else {
                 // Fallback to simple dialog if we can't get FragmentActivity
@@ -287,8 +387,9 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
                 dialog.setContentView(R.layout.dialog_image_preview);
 
                 ImageView previewImage = dialog.findViewById(R.id.iv_preview);
-                previewImage.setImageBitmap(bitmap);
+                ImageLoader.loadImage(imageUrl, previewImage, null);
                 previewImage.setOnClickListener(v -> dialog.dismiss());
+                dialog.setOnDismissListener(d -> ImageLoader.cancel(previewImage));
                 dialog.show();
             }
         }
@@ -320,20 +421,8 @@ public class SubmittedAlertGroupAdapter extends RecyclerView.Adapter<SubmittedAl
             // Set initial text with "Location: " prefix
             textLocation.setText(String.format(Locale.getDefault(), "Location: %s", rawLocation != null ? rawLocation : "Unknown"));
 
-            // Try to get human-readable address
-            LocationUtils.parseLocationAndGetAddress(itemView.getContext(), rawLocation, new LocationUtils.GeocodeCallback() {
-                @Override
-                public void onSuccess(String address) {
-                    // Update with human-readable address
-                    textLocation.setText(String.format(Locale.getDefault(), "Location: %s", address));
-                }
-
-                @Override
-                public void onError(String error) {
-                    // Keep the original location text if geocoding fails
-                    // textLocation already shows the raw location
-                }
-            });
+            // Replace with the human-readable address once known
+            LocationUtils.bindAddress(textLocation, rawLocation, "Location: %s");
         }
     }
 }
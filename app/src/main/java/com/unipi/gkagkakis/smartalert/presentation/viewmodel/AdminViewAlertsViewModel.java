@@ -0,0 +1,126 @@
+package com.unipi.gkagkakis.smartalert.presentation.viewmodel;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.unipi.gkagkakis.smartalert.data.repository.SubmittedAlertRepositoryImpl;
+import com.unipi.gkagkakis.smartalert.domain.repository.SubmittedAlertRepository;
+import com.unipi.gkagkakis.smartalert.domain.usecase.IncrementalAlertGroupingUseCase;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertChange;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ViewModel for AdminViewAlertsActivity following MVVM pattern
+ * Streams submitted alerts and groups them incrementally on a background executor,
+ * publishing immutable group snapshots for the moderation list
+ */
+public class AdminViewAlertsViewModel extends ViewModel {
+
+    // Private MutableLiveData for internal state management
+    private final MutableLiveData<List<SubmittedAlertGroup>> _submittedAlertGroups = new MutableLiveData<>(Collections.emptyList());
+    private final MutableLiveData<String> _error = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> _isLoading = new MutableLiveData<>(false);
+
+    // Public read-only LiveData for UI observation
+    public final LiveData<List<SubmittedAlertGroup>> submittedAlertGroups = _submittedAlertGroups;
+    public final LiveData<String> error = _error;
+    public final LiveData<Boolean> isLoading = _isLoading;
+
+    private final SubmittedAlertRepository submittedAlertRepository;
+    private final IncrementalAlertGroupingUseCase groupingUseCase;
+    private final ExecutorService groupingExecutor = Executors.newSingleThreadExecutor();
+    private SubmittedAlertRepository.ListenerHandle listenerHandle;
+
+    public AdminViewAlertsViewModel() {
+        this.submittedAlertRepository = SubmittedAlertRepositoryImpl.getInstance();
+        this.groupingUseCase = new IncrementalAlertGroupingUseCase();
+    }
+
+    public LiveData<List<SubmittedAlertGroup>> getSubmittedAlertGroups() {
+        return submittedAlertGroups;
+    }
+
+    /**
+     * Subscribes to submitted alert changes and applies them to the groups off the main thread
+     */
+    public void startListening() {
+        if (listenerHandle != null) return;
+        _isLoading.setValue(true);
+
+        listenerHandle = submittedAlertRepository.listenToSubmittedAlerts(new SubmittedAlertRepository.SubmittedAlertChangesListener() {
+            @Override
+            public void onChanges(@NonNull List<SubmittedAlertChange> changes) {
+                groupingExecutor.execute(() -> {
+                    groupingUseCase.applyChanges(changes);
+                    _submittedAlertGroups.postValue(groupingUseCase.snapshot());
+                    _isLoading.postValue(false);
+                });
+            }
+
+            @Override
+            public void onError(@NonNull Exception e) {
+                _isLoading.setValue(false);
+                _error.setValue("Failed to load submitted alerts: " + e.getMessage());
+            }
+        });
+    }
+
+    public void stopListening() {
+        if (listenerHandle != null) {
+            listenerHandle.remove();
+            listenerHandle = null;
+        }
+    }
+
+    /**
+     * Drops the current groups and resubscribes, rebuilding them from a fresh snapshot
+     */
+    public void refresh() {
+        stopListening();
+        groupingExecutor.execute(groupingUseCase::reset);
+        startListening();
+    }
+
+    /**
+     * Deletes every submitted alert in the group
+     */
+    public void deleteGroup(@NonNull SubmittedAlertGroup group) {
+        List<SubmittedAlert> alertsToDelete = new ArrayList<>(group.getSubmittedAlerts());
+        for (SubmittedAlert alert : alertsToDelete) {
+            submittedAlertRepository.deleteSubmittedAlert(alert.getId(), new SubmittedAlertRepository.DeleteSubmittedAlertCallback() {
+                @Override
+                public void onSuccess() {
+                    // Removed alerts arrive through the change listener, which updates the groups
+                }
+
+                @Override
+                public void onError(@NonNull Exception e) {
+                    _error.setValue("Failed to delete some alerts: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Clears error state
+     */
+    public void clearError() {
+        _error.setValue(null);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        stopListening();
+        groupingExecutor.shutdownNow();
+    }
+}
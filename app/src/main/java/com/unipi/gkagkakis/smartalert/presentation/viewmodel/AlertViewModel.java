@@ -19,13 +19,17 @@ public class AlertViewModel extends ViewModel {
     // Private MutableLiveData for internal state management
     private final MutableLiveData<Boolean> _saving = new MutableLiveData<>(false);
     private final MutableLiveData<String> _createdId = new MutableLiveData<>();
+    private final MutableLiveData<String> _queuedId = new MutableLiveData<>();
     private final MutableLiveData<String> _error = new MutableLiveData<>();
+    private final MutableLiveData<String> _warning = new MutableLiveData<>();
     private final MutableLiveData<Integer> _uploadProgress = new MutableLiveData<>(0);
 
     // Public read-only LiveData for UI observation
     public final LiveData<Boolean> saving = _saving;
     public final LiveData<String> createdId = _createdId;
+    public final LiveData<String> queuedId = _queuedId;
     public final LiveData<String> error = _error;
+    public final LiveData<String> warning = _warning;
     public final LiveData<Integer> uploadProgress = _uploadProgress;
 
     private final CreateAlertUseCase createAlertUseCase;
@@ -37,11 +41,14 @@ public class AlertViewModel extends ViewModel {
     // Getter methods for backward compatibility
     public LiveData<Boolean> getSaving() { return saving; }
     public LiveData<String> getCreatedId() { return createdId; }
+    public LiveData<String> getQueuedId() { return queuedId; }
     public LiveData<String> getError() { return error; }
+    public LiveData<String> getWarning() { return warning; }
     public LiveData<Integer> getUploadProgress() { return uploadProgress; }
 
     public void createAlert(Context context, String type, String severity, String location, String description, @Nullable Uri imageUri) {
         _error.setValue(null);
+        _warning.setValue(null);
         _saving.setValue(true);
         _uploadProgress.setValue(0);
 
@@ -61,12 +68,24 @@ public class AlertViewModel extends ViewModel {
                     _createdId.setValue(alertId);
                 }
 
+                @Override
+                public void onQueued(@NonNull String alertId) {
+                    _saving.setValue(false);
+                    _queuedId.setValue(alertId);
+                }
+
                 @Override
                 public void onError(@NonNull String errorMessage) {
                     _saving.setValue(false);
                     _error.setValue(errorMessage);
                 }
 
+                @Override
+                public void onWarning(@NonNull String message) {
+                    // Still saving, so the button stays disabled
+                    _warning.setValue(message);
+                }
+
                 @Override
                 public void onProgress(int progress) {
                     _uploadProgress.setValue(progress);
@@ -77,6 +96,8 @@ public class AlertViewModel extends ViewModel {
 
     public void clearResult() {
         _createdId.setValue(null);
+        _queuedId.setValue(null);
         _error.setValue(null);
+        _warning.setValue(null);
     }
 }
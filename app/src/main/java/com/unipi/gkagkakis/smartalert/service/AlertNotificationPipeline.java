@@ -0,0 +1,190 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides how incoming alert messages are shown
+ * Repeats of the same alert id within the dedupe window are dropped. Once a burst of alerts
+ * arrives, they collapse into one summary whose updates are rate limited.
+ * Holds no Android state, so it can be driven by a fake clock.
+ */
+public class AlertNotificationPipeline {
+
+    private static final long DEFAULT_DEDUPE_WINDOW_MS = 10 * 60 * 1000;
+    private static final long DEFAULT_BURST_WINDOW_MS = 60 * 1000;
+    private static final int DEFAULT_BURST_THRESHOLD = 3;
+    private static final long DEFAULT_MIN_SUMMARY_INTERVAL_MS = 5 * 1000;
+
+    // Bounds memory if a mass event delivers many distinct alerts inside the dedupe window
+    private static final int MAX_TRACKED_ALERTS = 256;
+    private static final int MAX_SUMMARY_LINES = 5;
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    public enum Action {
+        /** Post a standalone notification tagged with the alert key */
+        SHOW_SINGLE,
+        /** Post or replace the summary notification */
+        SHOW_SUMMARY,
+        /** Summary changed but was updated too recently, flush after getDelayMs() */
+        DEFER_SUMMARY,
+        /** Already shown within the dedupe window */
+        DROP_DUPLICATE
+    }
+
+    public static final class Decision {
+        private final Action action;
+        private final String alertKey;
+        private final int summaryCount;
+        private final List<String> summaryLines;
+        private final long delayMs;
+
+        Decision(Action action, @Nullable String alertKey, int summaryCount, List<String> summaryLines, long delayMs) {
+            this.action = action;
+            this.alertKey = alertKey;
+            this.summaryCount = summaryCount;
+            this.summaryLines = summaryLines;
+            this.delayMs = delayMs;
+        }
+
+        @NonNull
+        public Action getAction() { return action; }
+        @Nullable
+        public String getAlertKey() { return alertKey; }
+        public int getSummaryCount() { return summaryCount; }
+        @NonNull
+        public List<String> getSummaryLines() { return summaryLines; }
+        public long getDelayMs() { return delayMs; }
+    }
+
+    private static AlertNotificationPipeline instance;
+
+    private final Clock clock;
+    private final long dedupeWindowMs;
+    private final long burstWindowMs;
+    private final int burstThreshold;
+    private final long minSummaryIntervalMs;
+
+    private final LinkedHashMap<String, Long> shownAt = new LinkedHashMap<>();
+    private final Deque<Long> recentArrivals = new ArrayDeque<>();
+    private final Deque<String> summaryLines = new ArrayDeque<>();
+    private int summaryCount;
+    private long lastSummaryPostedAt = Long.MIN_VALUE;
+    private boolean summaryDirty;
+
+    @VisibleForTesting
+    AlertNotificationPipeline(@NonNull Clock clock, long dedupeWindowMs, long burstWindowMs,
+                              int burstThreshold, long minSummaryIntervalMs) {
+        this.clock = clock;
+        this.dedupeWindowMs = dedupeWindowMs;
+        this.burstWindowMs = burstWindowMs;
+        this.burstThreshold = burstThreshold;
+        this.minSummaryIntervalMs = minSummaryIntervalMs;
+    }
+
+    public static synchronized AlertNotificationPipeline getInstance() {
+        if (instance == null) {
+            instance = new AlertNotificationPipeline(System::currentTimeMillis, DEFAULT_DEDUPE_WINDOW_MS,
+                    DEFAULT_BURST_WINDOW_MS, DEFAULT_BURST_THRESHOLD, DEFAULT_MIN_SUMMARY_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * @param alertKey Alert id, or any stable key for messages that carry none
+     * @param summaryLine Short text for this alert inside the summary
+     */
+    @NonNull
+    public synchronized Decision onAlert(@NonNull String alertKey, @NonNull String summaryLine) {
+        long now = clock.currentTimeMillis();
+        expireShown(now);
+
+        if (shownAt.containsKey(alertKey)) {
+            return new Decision(Action.DROP_DUPLICATE, alertKey, summaryCount, Collections.emptyList(), 0);
+        }
+        shownAt.put(alertKey, now);
+        if (shownAt.size() > MAX_TRACKED_ALERTS) {
+            Iterator<String> eldest = shownAt.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+
+        while (!recentArrivals.isEmpty() && now - recentArrivals.peekFirst() >= burstWindowMs) {
+            recentArrivals.pollFirst();
+        }
+        recentArrivals.addLast(now);
+
+        if (recentArrivals.size() < burstThreshold && summaryCount == 0) {
+            return new Decision(Action.SHOW_SINGLE, alertKey, 0, Collections.emptyList(), 0);
+        }
+
+        // Burst: fold this alert into the summary, which starts from the alerts already in the window
+        if (summaryCount == 0) {
+            summaryCount = recentArrivals.size() - 1;
+        }
+        summaryCount++;
+        summaryLines.addFirst(summaryLine);
+        while (summaryLines.size() > MAX_SUMMARY_LINES) {
+            summaryLines.pollLast();
+        }
+        summaryDirty = true;
+
+        long sinceLastPost = now - lastSummaryPostedAt;
+        if (lastSummaryPostedAt == Long.MIN_VALUE || sinceLastPost >= minSummaryIntervalMs) {
+            return postSummary(now);
+        }
+        return new Decision(Action.DEFER_SUMMARY, alertKey, summaryCount,
+                Collections.emptyList(), minSummaryIntervalMs - sinceLastPost);
+    }
+
+    /**
+     * Posts a deferred summary update if one is still pending
+     * @return A SHOW_SUMMARY decision, or null when nothing changed or the interval has not passed
+     */
+    @Nullable
+    public synchronized Decision flushSummary() {
+        long now = clock.currentTimeMillis();
+        if (!summaryDirty || now - lastSummaryPostedAt < minSummaryIntervalMs) {
+            return null;
+        }
+        return postSummary(now);
+    }
+
+    private void resetSummary() {
+        summaryCount = 0;
+        summaryLines.clear();
+        summaryDirty = false;
+        lastSummaryPostedAt = Long.MIN_VALUE;
+    }
+
+    private Decision postSummary(long now) {
+        lastSummaryPostedAt = now;
+        summaryDirty = false;
+        return new Decision(Action.SHOW_SUMMARY, null, summaryCount, new ArrayList<>(summaryLines), 0);
+    }
+
+    private void expireShown(long now) {
+        Iterator<Map.Entry<String, Long>> iterator = shownAt.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() < dedupeWindowMs) break;
+            iterator.remove();
+        }
+        // A quiet period ends the burst, so the next alert shows on its own again
+        if (summaryCount > 0 && !summaryDirty && now - lastSummaryPostedAt >= burstWindowMs) {
+            resetSummary();
+        }
+    }
+}
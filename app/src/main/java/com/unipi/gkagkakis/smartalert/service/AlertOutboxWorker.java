@@ -0,0 +1,168 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.unipi.gkagkakis.smartalert.data.service.AlertOutbox;
+import com.unipi.gkagkakis.smartalert.domain.usecase.CreateAlertUseCase;
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+import com.unipi.gkagkakis.smartalert.model.PreparedImage;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Replays the alert outbox once the device has a network connection
+ * Drains in batches, oldest first, and stops at the first failure so WorkManager backs off
+ * and tries again; submissions are idempotent, so a replay never duplicates an alert.
+ * A submission that has failed AlertOutbox.MAX_ATTEMPTS times is dead-lettered and skipped,
+ * so it cannot hold back the ones behind it. A submission that timed out keeps its claim until
+ * the lease runs out, since its write may still land and a replay before then would race it.
+ */
+public class AlertOutboxWorker extends Worker {
+    private static final String TAG = "AlertOutboxWorker";
+    private static final String UNIQUE_WORK_NAME = "alert_outbox";
+    private static final int BATCH_SIZE = 10;
+    private static final long BACKOFF_SECONDS = 30;
+    // Stays inside WorkManager's ten minute execution window; the retry resumes a cut-off upload
+    private static final long SUBMIT_TIMEOUT_MINUTES = 4;
+
+    @VisibleForTesting
+    interface Submitter {
+        /**
+         * Runs one submission and waits for it
+         * @return null on success, otherwise the failure; a TimeoutException if it gave up waiting
+         */
+        @Nullable
+        Exception submit(@NonNull PendingAlert pending);
+    }
+
+    public AlertOutboxWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Queues a drain that waits for connectivity; runs after any drain already in progress
+     */
+    public static void schedule(@NonNull Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(AlertOutboxWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    /**
+     * Schedules a drain only if something is waiting, e.g. after the app was killed while offline
+     */
+    public static void scheduleIfPending(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        AlertOutbox.executor().execute(() -> {
+            if (AlertOutbox.getInstance(appContext).count() > 0) {
+                schedule(appContext);
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (FirebaseAuth.getInstance().getCurrentUser() == null) {
+            // Rules reject unauthenticated writes; scheduleIfPending picks the outbox up on the next app start
+            Log.w(TAG, "No signed-in user, leaving outbox for later");
+            return Result.success();
+        }
+
+        AlertOutbox outbox = AlertOutbox.getInstance(getApplicationContext());
+        CreateAlertUseCase useCase = new CreateAlertUseCase();
+        return drain(outbox, pending -> submit(useCase, pending, outbox), this::isStopped);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static Result drain(@NonNull AlertOutbox outbox, @NonNull Submitter submitter, @NonNull BooleanSupplier stopped) {
+        List<PendingAlert> batch;
+        while (!(batch = outbox.nextBatch(BATCH_SIZE)).isEmpty()) {
+            for (PendingAlert pending : batch) {
+                if (stopped.getAsBoolean()) return Result.retry();
+                // Being sent by the screen that created it
+                if (!outbox.claim(pending.getIdempotencyKey())) continue;
+
+                Exception error = submitter.submit(pending);
+                if (error != null) {
+                    Log.w(TAG, "Replay of " + pending.getIdempotencyKey() + " failed: " + error.getMessage());
+                    // Releasing a timed-out claim would let the next drain send it while the first write is in flight
+                    boolean dead = error instanceof TimeoutException
+                            ? outbox.recordTimeout(pending.getIdempotencyKey(), error.getMessage())
+                            : outbox.recordFailure(pending.getIdempotencyKey(), error.getMessage());
+                    if (dead) continue;
+                    return Result.retry();
+                }
+                outbox.remove(pending);
+                Log.d(TAG, "Replayed alert " + pending.getIdempotencyKey());
+            }
+        }
+        // Whatever is left is claimed elsewhere; come back in case that sender dies before finishing
+        return outbox.count() > 0 ? Result.retry() : Result.success();
+    }
+
+    @Nullable
+    private Exception submit(@NonNull CreateAlertUseCase useCase, @NonNull PendingAlert pending, @NonNull AlertOutbox outbox) {
+        PreparedImage image = null;
+        if (pending.getImageUrl() == null) {
+            byte[] imageData = outbox.loadImage(pending);
+            if (imageData != null) {
+                image = new PreparedImage(imageData, pending.getImageWidth(), pending.getImageHeight(), pending.getThumbnailUrl());
+            }
+        }
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        useCase.submitPending(getApplicationContext(), pending, image, new CreateAlertUseCase.SubmitCallback() {
+            @Override
+            public void onSuccess(@NonNull String alertId) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(@NonNull Exception e) {
+                failure.set(e);
+                done.countDown();
+            }
+
+            @Override
+            public void onProgress(int progress) {
+            }
+        });
+
+        try {
+            if (!done.await(SUBMIT_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                return new TimeoutException("Timed out submitting alert");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+        return failure.get();
+    }
+}
@@ -0,0 +1,89 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
+
+/**
+ * Keeps this device subscribed to the FCM topic of the geohash cell it is in
+ * Alerts broadcast to a cell topic are filtered on the device against the last known location,
+ * which this manager also persists for SmartAlertFirebaseMessagingService
+ */
+public class AlertTopicManager {
+    private static final String TAG = "AlertTopicManager";
+    private static final String PREF_NAME = "alert_topic_prefs";
+    private static final String KEY_SUBSCRIBED_CELL = "subscribed_cell";
+    private static final String KEY_LAST_LATITUDE = "last_latitude";
+    private static final String KEY_LAST_LONGITUDE = "last_longitude";
+
+    /** Cell precision of alert topics (~39km x 19.5km), larger than the notification radius */
+    public static final int TOPIC_PRECISION = 4;
+    private static final String TOPIC_PREFIX = "alerts_geo_";
+
+    private static AlertTopicManager instance;
+    private final SharedPreferences preferences;
+
+    private AlertTopicManager(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized AlertTopicManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlertTopicManager(context);
+        }
+        return instance;
+    }
+
+    @NonNull
+    public static String topicForCell(@NonNull String cell) {
+        return TOPIC_PREFIX + cell;
+    }
+
+    /**
+     * Records the device location and moves the topic subscription when the cell changes
+     */
+    public void onLocationChanged(double latitude, double longitude) {
+        preferences.edit()
+                .putLong(KEY_LAST_LATITUDE, Double.doubleToRawLongBits(latitude))
+                .putLong(KEY_LAST_LONGITUDE, Double.doubleToRawLongBits(longitude))
+                .apply();
+
+        String cell = GeohashUtil.encode(latitude, longitude, TOPIC_PRECISION);
+        String previousCell = preferences.getString(KEY_SUBSCRIBED_CELL, null);
+        if (cell.equals(previousCell)) return;
+
+        FirebaseMessaging messaging = FirebaseMessaging.getInstance();
+        messaging.subscribeToTopic(topicForCell(cell))
+                .addOnSuccessListener(aVoid -> {
+                    preferences.edit().putString(KEY_SUBSCRIBED_CELL, cell).apply();
+                    Log.d(TAG, "Subscribed to alert cell " + cell);
+
+                    if (previousCell != null) {
+                        messaging.unsubscribeFromTopic(topicForCell(previousCell))
+                                .addOnFailureListener(e -> Log.w(TAG, "Failed to unsubscribe from alert cell " + previousCell, e));
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to subscribe to alert cell " + cell, e));
+    }
+
+    /**
+     * @return The last location passed to onLocationChanged, or null if none was recorded
+     */
+    @Nullable
+    public Location getLastKnownLocation() {
+        if (!preferences.contains(KEY_LAST_LATITUDE) || !preferences.contains(KEY_LAST_LONGITUDE)) {
+            return null;
+        }
+        Location location = new Location(TAG);
+        location.setLatitude(Double.longBitsToDouble(preferences.getLong(KEY_LAST_LATITUDE, 0)));
+        location.setLongitude(Double.longBitsToDouble(preferences.getLong(KEY_LAST_LONGITUDE, 0)));
+        return location;
+    }
+}
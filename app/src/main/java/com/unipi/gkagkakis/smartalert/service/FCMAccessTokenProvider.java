@@ -0,0 +1,114 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Provides OAuth access tokens for the FCM v1 API
+ * Loads the service account credentials once and reuses the token until shortly
+ * before it expires; concurrent callers share a single refresh
+ */
+public class FCMAccessTokenProvider implements FCMDeliveryEngine.AccessTokenSource {
+    private static final String TAG = "FCMAccessTokenProvider";
+    private static final String SERVICE_ACCOUNT_ASSET = "service-account-key.json";
+    private static final String SCOPE = "https://www.googleapis.com/auth/cloud-platform";
+
+    // Refresh this long before expiry so an in-flight send never carries a stale token
+    private static final long REFRESH_MARGIN_MS = 5 * 60 * 1000;
+
+    interface CredentialsLoader {
+        @NonNull
+        GoogleCredentials load() throws IOException;
+    }
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    private static FCMAccessTokenProvider instance;
+
+    private final CredentialsLoader credentialsLoader;
+    private final Clock clock;
+    private final Object refreshLock = new Object();
+
+    private GoogleCredentials credentials;
+    private volatile AccessToken cachedToken;
+
+    @VisibleForTesting
+    FCMAccessTokenProvider(@NonNull CredentialsLoader credentialsLoader, @NonNull Clock clock) {
+        this.credentialsLoader = credentialsLoader;
+        this.clock = clock;
+    }
+
+    public static synchronized FCMAccessTokenProvider getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new FCMAccessTokenProvider(() -> {
+                try (InputStream serviceAccount = appContext.getAssets().open(SERVICE_ACCOUNT_ASSET)) {
+                    return GoogleCredentials.fromStream(serviceAccount).createScoped(List.of(SCOPE));
+                }
+            }, System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    /**
+     * @return A valid access token, or null if credentials could not be loaded or refreshed
+     */
+    @Nullable
+    @Override
+    public String getAccessToken() {
+        AccessToken token = cachedToken;
+        if (isFresh(token)) {
+            return token.getTokenValue();
+        }
+
+        synchronized (refreshLock) {
+            // Another thread may have refreshed while we waited
+            token = cachedToken;
+            if (isFresh(token)) {
+                return token.getTokenValue();
+            }
+
+            try {
+                if (credentials == null) {
+                    credentials = credentialsLoader.load();
+                }
+                credentials.refresh();
+                token = credentials.getAccessToken();
+                cachedToken = token;
+                Log.d(TAG, "Access token refreshed, expires at: " + (token != null ? token.getExpirationTime() : null));
+                return token != null ? token.getTokenValue() : null;
+            } catch (IOException e) {
+                Log.e(TAG, "Error getting access token", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Drops the cached token so the next call refreshes, e.g. after the FCM API rejects it
+     */
+    @Override
+    public void invalidate() {
+        cachedToken = null;
+    }
+
+    private boolean isFresh(@Nullable AccessToken token) {
+        if (token == null) return false;
+        Date expiration = token.getExpirationTime();
+        return expiration == null || expiration.getTime() - REFRESH_MARGIN_MS > clock.currentTimeMillis();
+    }
+}
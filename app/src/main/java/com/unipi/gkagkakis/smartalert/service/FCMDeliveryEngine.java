@@ -0,0 +1,345 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Delivers FCM v1 messages with a bounded number of requests in flight
+ * All sends share one OkHttpClient, so requests multiplex over a single HTTP/2 connection.
+ * 429 and 5xx responses are retried with exponential backoff, and every batch
+ * ends with a DeliveryReport of sent, failed and invalid-token counts.
+ */
+public class FCMDeliveryEngine {
+    private static final String TAG = "FCMDeliveryEngine";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long DEFAULT_INITIAL_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private static final OkHttpClient SHARED_CLIENT = createSharedClient();
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+
+    public interface AccessTokenSource {
+        @Nullable
+        String getAccessToken();
+
+        void invalidate();
+    }
+
+    public interface DeliveryCallback {
+        void onComplete(@NonNull DeliveryReport report);
+    }
+
+    /**
+     * A serialized FCM v1 request body addressed to a single registration token or topic
+     */
+    public static final class OutgoingMessage {
+        final String fcmToken;
+        final String body;
+
+        public OutgoingMessage(@NonNull String fcmToken, @NonNull String body) {
+            this.fcmToken = fcmToken;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Outcome counts for one batch of messages
+     */
+    public static final class DeliveryReport {
+        private final int total;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger invalidTokens = new AtomicInteger();
+        private final AtomicInteger retries = new AtomicInteger();
+        private final Queue<String> invalidTokenValues = new ConcurrentLinkedQueue<>();
+
+        DeliveryReport(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() { return total; }
+        public int getSent() { return sent.get(); }
+        public int getFailed() { return failed.get(); }
+        public int getInvalidTokens() { return invalidTokens.get(); }
+        public int getRetries() { return retries.get(); }
+
+        /**
+         * @return Registration tokens FCM reported as unregistered or malformed
+         */
+        @NonNull
+        public List<String> getInvalidTokenValues() {
+            return new ArrayList<>(invalidTokenValues);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d messages: %d sent, %d failed, %d invalid tokens, %d retries",
+                    total, getSent(), getFailed(), getInvalidTokens(), getRetries());
+        }
+    }
+
+    private final OkHttpClient client;
+    private final String endpointUrl;
+    private final AccessTokenSource tokenSource;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+
+    public FCMDeliveryEngine(@NonNull String endpointUrl, @NonNull AccessTokenSource tokenSource) {
+        this(SHARED_CLIENT, endpointUrl, tokenSource, RETRY_SCHEDULER,
+                DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MS);
+    }
+
+    public FCMDeliveryEngine(@NonNull OkHttpClient client, @NonNull String endpointUrl,
+                             @NonNull AccessTokenSource tokenSource, @NonNull ScheduledExecutorService retryScheduler,
+                             int maxInFlight, int maxAttempts, long initialBackoffMs) {
+        this.client = client;
+        this.endpointUrl = endpointUrl;
+        this.tokenSource = tokenSource;
+        this.retryScheduler = retryScheduler;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    private static OkHttpClient createSharedClient() {
+        // The engine bounds concurrency itself, so let the dispatcher run as many as it asks for
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64);
+
+        return new OkHttpClient.Builder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(2, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Sends all messages asynchronously; the callback runs once every message has a final outcome
+     */
+    public void deliver(@NonNull List<OutgoingMessage> messages, @NonNull DeliveryCallback callback) {
+        Batch batch = new Batch(messages, callback);
+        if (messages.isEmpty()) {
+            callback.onComplete(batch.report);
+            return;
+        }
+
+        // Without credentials nothing can be sent, fail the whole batch up front
+        if (tokenSource.getAccessToken() == null) {
+            Log.e(TAG, "No access token, dropping " + messages.size() + " messages");
+            batch.report.failed.addAndGet(messages.size());
+            callback.onComplete(batch.report);
+            return;
+        }
+
+        int initial = Math.min(maxInFlight, messages.size());
+        for (int i = 0; i < initial; i++) {
+            batch.startNext();
+        }
+    }
+
+    private enum Outcome {
+        SENT,
+        FAILED,
+        INVALID_TOKEN
+    }
+
+    private final class Batch {
+        final List<OutgoingMessage> messages;
+        final DeliveryCallback callback;
+        final DeliveryReport report;
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final AtomicInteger remaining;
+
+        Batch(List<OutgoingMessage> messages, DeliveryCallback callback) {
+            this.messages = messages;
+            this.callback = callback;
+            this.report = new DeliveryReport(messages.size());
+            this.remaining = new AtomicInteger(messages.size());
+        }
+
+        void startNext() {
+            int index = nextIndex.getAndIncrement();
+            if (index < messages.size()) {
+                send(messages.get(index), 1);
+            }
+        }
+
+        void send(OutgoingMessage message, int attempt) {
+            String accessToken = tokenSource.getAccessToken();
+            if (accessToken == null) {
+                Log.e(TAG, "No access token, dropping message to: " + message.fcmToken);
+                finish(message, Outcome.FAILED);
+                return;
+            }
+
+            Request request = new Request.Builder()
+                    .url(endpointUrl)
+                    .post(RequestBody.create(message.body, JSON))
+                    .addHeader("Authorization", "Bearer " + accessToken)
+                    .build();
+
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    Log.w(TAG, "Send attempt " + attempt + " failed for token: " + message.fcmToken, e);
+                    retryOrFail(message, attempt, -1);
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    try (ResponseBody body = response.body()) {
+                        int code = response.code();
+                        if (response.isSuccessful()) {
+                            finish(message, Outcome.SENT);
+                        } else if (code == 401) {
+                            // Token revoked or expired early, fetch a new one and try again
+                            tokenSource.invalidate();
+                            retryOrFail(message, attempt, 0);
+                        } else if (code == 429 || code >= 500) {
+                            retryOrFail(message, attempt, parseRetryAfterMs(response.header("Retry-After")));
+                        } else {
+                            String responseBody = body != null ? body.string() : "";
+                            if (isInvalidTokenResponse(responseBody)) {
+                                Log.w(TAG, "Invalid FCM token: " + message.fcmToken);
+                                finish(message, Outcome.INVALID_TOKEN);
+                            } else {
+                                Log.e(TAG, "Failed to send notification. Response: " + responseBody);
+                                finish(message, Outcome.FAILED);
+                            }
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Failed to read FCM response", e);
+                        finish(message, Outcome.FAILED);
+                    }
+                }
+            });
+        }
+
+        void retryOrFail(OutgoingMessage message, int attempt, long retryAfterMs) {
+            if (attempt >= maxAttempts) {
+                finish(message, Outcome.FAILED);
+                return;
+            }
+            report.retries.incrementAndGet();
+            long delay = retryAfterMs >= 0 ? retryAfterMs : backoffDelayMs(attempt);
+            retryScheduler.schedule(() -> send(message, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        }
+
+        void finish(OutgoingMessage message, Outcome outcome) {
+            switch (outcome) {
+                case SENT:
+                    report.sent.incrementAndGet();
+                    break;
+                case INVALID_TOKEN:
+                    report.invalidTokens.incrementAndGet();
+                    report.invalidTokenValues.add(message.fcmToken);
+                    break;
+                default:
+                    report.failed.incrementAndGet();
+                    break;
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                callback.onComplete(report);
+            } else {
+                startNext();
+            }
+        }
+    }
+
+    private long backoffDelayMs(int attempt) {
+        // Exponential backoff with full jitter
+        long ceiling = Math.min(MAX_BACKOFF_MS, initialBackoffMs << (attempt - 1));
+        return ThreadLocalRandom.current().nextLong(0, ceiling + 1);
+    }
+
+    private static long parseRetryAfterMs(@Nullable String retryAfter) {
+        if (retryAfter == null) return -1;
+        try {
+            return Math.min(MAX_BACKOFF_MS, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Whether a v1 error body says the registration token itself is dead
+     * UNREGISTERED always refers to the token; INVALID_ARGUMENT only when it names the token,
+     * since a malformed payload returns the same code for every recipient
+     */
+    static boolean isInvalidTokenResponse(@NonNull String responseBody) {
+        try {
+            JSONObject error = new JSONObject(responseBody).optJSONObject("error");
+            if (error == null) return false;
+
+            String errorCode = error.optString("status", null);
+            boolean mentionsToken = error.optString("message", "").contains("registration token");
+
+            JSONArray details = error.optJSONArray("details");
+            if (details != null) {
+                for (int i = 0; i < details.length(); i++) {
+                    JSONObject detail = details.optJSONObject(i);
+                    if (detail == null) continue;
+
+                    if (detail.has("errorCode")) {
+                        errorCode = detail.getString("errorCode");
+                    }
+                    JSONArray violations = detail.optJSONArray("fieldViolations");
+                    if (violations != null) {
+                        for (int j = 0; j < violations.length(); j++) {
+                            JSONObject violation = violations.optJSONObject(j);
+                            if (violation != null && "message.token".equals(violation.optString("field"))) {
+                                mentionsToken = true;
+                            }
+                        }
+                    }
+                }
+            }
+
+            return "UNREGISTERED".equals(errorCode)
+                    || ("INVALID_ARGUMENT".equals(errorCode) && mentionsToken);
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+}
@@ -1,72 +1,93 @@
 package com.unipi.gkagkakis.smartalert.service;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
-import com.google.auth.oauth2.GoogleCredentials;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
+import com.unipi.gkagkakis.smartalert.Utils.ProximityFilter;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 public class FCMNotificationSender {
     private static final String TAG = "FCMNotificationSender";
     private static final String FCM_URL = "https://fcm.googleapis.com/v1/projects/%s/messages:send";
-    private static final String SCOPE = "https://www.googleapis.com/auth/cloud-platform";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
-    // Earth's radius in kilometers
-    private static final double EARTH_RADIUS_KM = 6371.0;
     private static final double NOTIFICATION_RADIUS_KM = 10.0;
 
-    private final Context context;
-    private final OkHttpClient client;
+    private static final String INVALID_TOKEN_REASON = "FCM reported token as invalid";
+
+    private static final String PREF_NAME = "fcm_delivery_prefs";
+    private static final String KEY_DELIVERY_MODE = "delivery_mode";
+
+    /**
+     * How alerts reach nearby devices
+     * PER_USER sends one message per user within range; TOPIC publishes one message per
+     * geohash cell topic and lets each device check its own distance
+     */
+    public enum DeliveryMode {
+        PER_USER,
+        TOPIC
+    }
+
+    private final FCMAccessTokenProvider tokenProvider;
     private final FirebaseFirestore firestore;
     private final ExecutorService executor;
+    private final SharedPreferences preferences;
     private String projectId;
 
     public FCMNotificationSender(Context context) {
-        this.context = context;
-        this.client = new OkHttpClient();
+        this.tokenProvider = FCMAccessTokenProvider.getInstance(context);
         this.firestore = FirebaseFirestore.getInstance();
         this.executor = Executors.newCachedThreadPool();
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
 
         // Set your Firebase project ID here
         this.projectId = "smartalert-ed251"; // Replace with your actual project ID if different
     }
 
-    public void sendAlertNotificationToNearbyUsers(double alertLatitude, double alertLongitude,
+    public void sendAlertNotificationToNearbyUsers(String alertId, double alertLatitude, double alertLongitude,
                                                    String alertType, String alertDescription,
                                                    String locationName, String severity) {
         executor.execute(() -> {
             try {
-                // Get access token
-                String accessToken = getAccessToken();
-                if (accessToken == null) {
+                // Warm the access token, cached across alerts until shortly before it expires
+                if (tokenProvider.getAccessToken() == null) {
                     Log.e(TAG, "Failed to get access token");
                     return;
                 }
 
                 // Send notification to nearby users
-                findAndNotifyNearbyUsers(accessToken, alertLatitude, alertLongitude,
-                    alertType, alertDescription, locationName, severity);
+                if (getDeliveryMode() == DeliveryMode.TOPIC) {
+                    broadcastToNearbyCells(alertId, alertLatitude, alertLongitude,
+                        alertType, alertDescription, locationName, severity);
+                } else {
+                    findAndNotifyNearbyUsers(alertId, alertLatitude, alertLongitude,
+                        alertType, alertDescription, locationName, severity);
+                }
 
             } catch (Exception e) {
                 Log.e(TAG, "Error sending notifications", e);
@@ -74,59 +95,199 @@ public class FCMNotificationSender {
         });
     }
 
-    private void findAndNotifyNearbyUsers(String accessToken, double alertLat, double alertLng,
+    private void findAndNotifyNearbyUsers(String alertId, double alertLat, double alertLng,
                                         String alertType, String alertDescription, String locationName, String severity) {
-        firestore.collection("users")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    int totalUsers = 0;
-                    int nearbyUsers = 0;
-                    int notifiedUsers = 0;
-
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        totalUsers++;
-                        try {
-                            String fcmToken = document.getString("fcmToken");
-                            if (fcmToken == null || fcmToken.isEmpty()) {
-                                Log.d(TAG, "Skipping user " + document.getId() + " - no FCM token");
-                                continue; // Skip users without FCM tokens
-                            }
-
-                            // Get user's location from separate latitude/longitude fields
-                            Double userLatitude = document.getDouble("latitude");
-                            Double userLongitude = document.getDouble("longitude");
+        // Only read users whose geohash falls in a cell overlapping the notification radius
+        List<String> prefixes = GeohashUtil.coveringPrefixes(alertLat, alertLng, NOTIFICATION_RADIUS_KM);
+        List<Task<QuerySnapshot>> queries = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            queries.add(firestore.collection("users")
+                    .orderBy("geohash")
+                    .startAt(prefix)
+                    .endAt(prefix + GeohashUtil.RANGE_END_SUFFIX)
+                    .get());
+        }
 
-                            if (userLatitude == null || userLongitude == null) {
-                                Log.d(TAG, "Skipping user " + document.getId() + " - no latitude/longitude data");
-                                continue; // Skip users without location coordinates
+        Tasks.<QuerySnapshot>whenAllSuccess(queries)
+                .addOnSuccessListener(results -> {
+                    int documentCount = 0;
+                    for (QuerySnapshot result : results) {
+                        documentCount += result.size();
+                    }
+                    // Users with a token and a location, in parallel lists for the bulk distance check
+                    Set<String> seenUserIds = new HashSet<>();
+                    List<QueryDocumentSnapshot> located = new ArrayList<>();
+                    List<String> tokens = new ArrayList<>();
+                    double[] latitudes = new double[documentCount];
+                    double[] longitudes = new double[documentCount];
+
+                    for (QuerySnapshot result : results) {
+                        for (QueryDocumentSnapshot document : result) {
+                            if (!seenUserIds.add(document.getId())) continue;
+                            try {
+                                String fcmToken = document.getString("fcmToken");
+                                if (fcmToken == null || fcmToken.isEmpty()) {
+                                    Log.d(TAG, "Skipping user " + document.getId() + " - no FCM token");
+                                    continue; // Skip users without FCM tokens
+                                }
+
+                                // Get user's location from separate latitude/longitude fields
+                                Double userLatitude = document.getDouble("latitude");
+                                Double userLongitude = document.getDouble("longitude");
+
+                                if (userLatitude == null || userLongitude == null) {
+                                    Log.d(TAG, "Skipping user " + document.getId() + " - no latitude/longitude data");
+                                    continue; // Skip users without location coordinates
+                                }
+
+                                latitudes[located.size()] = userLatitude;
+                                longitudes[located.size()] = userLongitude;
+                                located.add(document);
+                                tokens.add(fcmToken);
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error processing user document: " + document.getId(), e);
                             }
-
-                            // Calculate distance
-                            double distance = calculateDistance(alertLat, alertLng, userLatitude, userLongitude);
-
-                            // If user is within 10km, send notification
-                            if (distance <= NOTIFICATION_RADIUS_KM) {
-                                nearbyUsers++;
-                                Log.d(TAG, "Sending notification to user " + document.getId() + " at distance: " + String.format("%.2f", distance) + "km");
-                                sendNotificationToUser(accessToken, fcmToken, alertType,
-                                    alertDescription, locationName, severity, distance);
-                                notifiedUsers++;
-                            } else {
-                                Log.d(TAG, "User " + document.getId() + " is too far away: " + String.format("%.2f", distance) + "km");
+                        }
+                    }
+                    int candidateUsers = seenUserIds.size();
+
+                    // Exact distance check in bulk, geohash cells overshoot the radius
+                    ProximityFilter filter = new ProximityFilter(alertLat, alertLng, NOTIFICATION_RADIUS_KM);
+                    int[] nearby = new int[located.size()];
+                    int nearbyUsers = filter.filter(latitudes, longitudes, located.size(), nearby);
+
+                    List<FCMDeliveryEngine.OutgoingMessage> messages = new ArrayList<>();
+                    Map<String, List<String>> userIdsByToken = new HashMap<>();
+                    for (int i = 0; i < nearbyUsers; i++) {
+                        int index = nearby[i];
+                        String userId = located.get(index).getId();
+                        String fcmToken = tokens.get(index);
+                        // Only users within range get a message, so only they need the distance
+                        double distance = CoordinatesUtil.calculateDistance(alertLat, alertLng, latitudes[index], longitudes[index]);
+                        Log.d(TAG, "Queueing notification to user " + userId + " at distance: " + String.format("%.2f", distance) + "km");
+                        FCMDeliveryEngine.OutgoingMessage message = buildMessage(alertId, fcmToken, alertType,
+                            alertDescription, locationName, severity, distance);
+                        if (message != null) {
+                            List<String> userIds = userIdsByToken.get(fcmToken);
+                            if (userIds == null) {
+                                // Several users can share a token, only send it once
+                                userIds = new ArrayList<>(1);
+                                userIdsByToken.put(fcmToken, userIds);
+                                messages.add(message);
                             }
-
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing user document: " + document.getId(), e);
+                            userIds.add(userId);
                         }
                     }
 
-                    Log.i(TAG, "Alert processed: " + totalUsers + " total users, " + nearbyUsers + " within 10km, " + notifiedUsers + " notifications sent");
+                    Log.i(TAG, "Alert processed: " + candidateUsers + " users in " + prefixes.size() + " geohash cells, " + nearbyUsers + " within 10km");
+
+                    FCMDeliveryEngine deliveryEngine = new FCMDeliveryEngine(String.format(FCM_URL, projectId), tokenProvider);
+                    deliveryEngine.deliver(messages, report -> {
+                        Log.i(TAG, "Alert delivery report: " + report);
+                        pruneInvalidTokens(report.getInvalidTokenValues(), userIdsByToken);
+                    });
                 })
                 .addOnFailureListener(e -> Log.e(TAG, "Error fetching users", e));
     }
 
-    private void sendNotificationToUser(String accessToken, String fcmToken, String alertType,
-                                      String alertDescription, String locationName, String severity, double distance) {
+    private void broadcastToNearbyCells(String alertId, double alertLat, double alertLng,
+                                        String alertType, String alertDescription, String locationName, String severity) {
+        List<String> cells = GeohashUtil.coveringCells(alertLat, alertLng, NOTIFICATION_RADIUS_KM, AlertTopicManager.TOPIC_PRECISION);
+        List<FCMDeliveryEngine.OutgoingMessage> messages = new ArrayList<>(cells.size());
+        for (String cell : cells) {
+            FCMDeliveryEngine.OutgoingMessage message = buildTopicMessage(alertId, AlertTopicManager.topicForCell(cell),
+                alertLat, alertLng, alertType, alertDescription, locationName, severity);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+
+        Log.i(TAG, "Broadcasting alert to " + messages.size() + " geohash cell topics");
+        FCMDeliveryEngine deliveryEngine = new FCMDeliveryEngine(String.format(FCM_URL, projectId), tokenProvider);
+        deliveryEngine.deliver(messages, report -> Log.i(TAG, "Alert broadcast report: " + report));
+    }
+
+    /**
+     * Data-only message, so the receiving service can drop it before showing anything
+     */
+    @Nullable
+    private FCMDeliveryEngine.OutgoingMessage buildTopicMessage(String alertId, String topic, double alertLat, double alertLng, String alertType,
+                                                                String alertDescription, String locationName, String severity) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("alert_type", alertType != null ? alertType : "safety");
+            data.put("location", locationName != null ? locationName : "nearby");
+            data.put("severity", severity != null ? severity : "unknown");
+            data.put("description", alertDescription != null ? alertDescription : "");
+            data.put(SmartAlertFirebaseMessagingService.KEY_ALERT_LATITUDE, String.valueOf(alertLat));
+            data.put(SmartAlertFirebaseMessagingService.KEY_ALERT_LONGITUDE, String.valueOf(alertLng));
+            data.put(SmartAlertFirebaseMessagingService.KEY_RADIUS_KM, String.valueOf(NOTIFICATION_RADIUS_KM));
+            if (alertId != null) {
+                data.put(SmartAlertFirebaseMessagingService.KEY_ALERT_ID, alertId);
+            }
+
+            JSONObject android = new JSONObject();
+            android.put("priority", "high");
+
+            JSONObject fcmMessage = new JSONObject();
+            fcmMessage.put("topic", topic);
+            fcmMessage.put("data", data);
+            fcmMessage.put("android", android);
+
+            JSONObject message = new JSONObject();
+            message.put("message", fcmMessage);
+            return new FCMDeliveryEngine.OutgoingMessage(topic, message.toString());
+
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creating topic notification JSON", e);
+            return null;
+        }
+    }
+
+    /**
+     * Clears dead tokens from their users so later alerts skip them
+     * Uses the same fcmToken/tokenClearedReason fields as FCMTokenManager, which
+     * restores the token the next time the app registers it. Each user is cleared in a
+     * transaction that first checks the stored token is still the dead one, so a token the
+     * user registered after the fan-out read is kept.
+     */
+    private void pruneInvalidTokens(List<String> invalidTokens, Map<String, List<String>> userIdsByToken) {
+        if (invalidTokens.isEmpty()) return;
+
+        Map<String, Object> clearToken = new HashMap<>();
+        clearToken.put("fcmToken", null);
+        clearToken.put("tokenClearedReason", INVALID_TOKEN_REASON);
+        clearToken.put("tokenClearedAt", System.currentTimeMillis());
+
+        for (String token : invalidTokens) {
+            List<String> userIds = userIdsByToken.get(token);
+            if (userIds == null) continue;
+
+            for (String userId : userIds) {
+                DocumentReference userRef = firestore.collection("users").document(userId);
+                firestore.runTransaction(transaction -> {
+                            DocumentSnapshot user = transaction.get(userRef);
+                            if (!token.equals(user.getString("fcmToken"))) {
+                                return false;
+                            }
+                            transaction.update(userRef, clearToken);
+                            return true;
+                        })
+                        .addOnSuccessListener(cleared -> {
+                            if (cleared) {
+                                Log.i(TAG, "Cleared invalid FCM token of user " + userId);
+                            } else {
+                                Log.d(TAG, "User " + userId + " registered a new token, keeping it");
+                            }
+                        })
+                        .addOnFailureListener(e -> Log.e(TAG, "Failed to clear invalid FCM token of user " + userId, e));
+            }
+        }
+    }
+
+    @Nullable
+    private FCMDeliveryEngine.OutgoingMessage buildMessage(String alertId, String fcmToken, String alertType,
+                                                           String alertDescription, String locationName, String severity, double distance) {
         try {
             JSONObject message = new JSONObject();
             JSONObject notification = new JSONObject();
@@ -148,6 +309,9 @@ public class FCMNotificationSender {
             data.put("distance", String.valueOf(distance));
             data.put("description", alertDescription != null ? alertDescription : "");
             data.put("click_action", "FLUTTER_NOTIFICATION_CLICK");
+            if (alertId != null) {
+                data.put(SmartAlertFirebaseMessagingService.KEY_ALERT_ID, alertId);
+            }
 
             // Build FCM message
             fcmMessage.put("token", fcmToken);
@@ -161,73 +325,40 @@ public class FCMNotificationSender {
             androidNotification.put("color", "#FF0000"); // Red color for alerts
             androidNotification.put("sound", "default");
             androidNotification.put("channel_id", "smart_alert_notifications");
+            if (alertId != null) {
+                // Repeats of the same alert replace each other in the tray while the app is in the background
+                androidNotification.put("tag", alertId);
+            }
             android.put("notification", androidNotification);
             android.put("priority", "high");
             fcmMessage.put("android", android);
 
             message.put("message", fcmMessage);
 
-            // Send the notification
-            String url = String.format(FCM_URL, projectId);
-            RequestBody body = RequestBody.create(message.toString(), JSON);
-            Request request = new Request.Builder()
-                    .url(url)
-                    .post(body)
-                    .addHeader("Authorization", "Bearer " + accessToken)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to send notification to token: " + fcmToken, e);
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "Notification sent successfully to: " + fcmToken);
-                    } else {
-                        Log.e(TAG, "Failed to send notification. Response: " + response.body().string());
-                    }
-                }
-            });
+            return new FCMDeliveryEngine.OutgoingMessage(fcmToken, message.toString());
 
         } catch (JSONException e) {
             Log.e(TAG, "Error creating notification JSON", e);
+            return null;
         }
     }
 
-    /**
-     * Calculate distance between two points using Haversine formula
-     */
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                Math.sin(dLon / 2) * Math.sin(dLon / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return EARTH_RADIUS_KM * c;
+    public void setProjectId(String projectId) {
+        this.projectId = projectId;
     }
 
-    private String getAccessToken() {
-        try {
-            InputStream serviceAccount = context.getAssets().open("service-account-key.json");
-            GoogleCredentials googleCredentials = GoogleCredentials
-                    .fromStream(serviceAccount)
-                    .createScoped(List.of(SCOPE));
-            googleCredentials.refresh();
-            return googleCredentials.getAccessToken().getTokenValue();
-        } catch (IOException e) {
-            Log.e(TAG, "Error getting access token", e);
-            return null;
-        }
+    /**
+     * Delivery mode chosen by the admin, PER_USER unless topic broadcast was switched on
+     */
+    public DeliveryMode getDeliveryMode() {
+        String mode = preferences.getString(KEY_DELIVERY_MODE, DeliveryMode.PER_USER.name());
+        return DeliveryMode.TOPIC.name().equals(mode) ? DeliveryMode.TOPIC : DeliveryMode.PER_USER;
     }
 
-    public void setProjectId(String projectId) {
-        this.projectId = projectId;
+    /**
+     * Persists the mode so later alerts from this device use it
+     */
+    public void setDeliveryMode(DeliveryMode deliveryMode) {
+        preferences.edit().putString(KEY_DELIVERY_MODE, deliveryMode.name()).apply();
     }
 }
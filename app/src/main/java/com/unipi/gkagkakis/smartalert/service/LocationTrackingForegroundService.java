@@ -34,6 +34,7 @@ import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.SetOptions;
 
 import com.unipi.gkagkakis.smartalert.R;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
 import com.unipi.gkagkakis.smartalert.presentation.UI.HomepageActivity;
 
 import java.util.HashMap;
@@ -155,6 +156,8 @@ public class LocationTrackingForegroundService extends Service {
                     // Check if we should update based on distance
                     if (shouldUpdateLocation(location)) {
                         updateLocationInFirestore(location.getLatitude(), location.getLongitude());
+                        AlertTopicManager.getInstance(LocationTrackingForegroundService.this)
+                                .onLocationChanged(location.getLatitude(), location.getLongitude());
                         lastStoredLocation = location; // Update the last stored location
                         updateNotification();
                     } else {
@@ -231,6 +234,7 @@ public class LocationTrackingForegroundService extends Service {
         locationData.put("lastLocationUpdate", System.currentTimeMillis());
         locationData.put("latitude", latitude);
         locationData.put("longitude", longitude);
+        locationData.put("geohash", GeohashUtil.encode(latitude, longitude, GeohashUtil.STORED_PRECISION));
         locationData.put("locationSource", "background_service");
 
         firestore.collection("users")
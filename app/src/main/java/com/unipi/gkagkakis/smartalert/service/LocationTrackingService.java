@@ -26,6 +26,7 @@ import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.SetOptions;
+import com.unipi.gkagkakis.smartalert.Utils.GeohashUtil;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -260,6 +261,7 @@ public class LocationTrackingService {
         locationData.put("lastLocationUpdate", System.currentTimeMillis());
         locationData.put("latitude", latitude);
         locationData.put("longitude", longitude);
+        locationData.put("geohash", GeohashUtil.encode(latitude, longitude, GeohashUtil.STORED_PRECISION));
         locationData.put("locationSource", "manual_update");
 
         firestore.collection("users")
@@ -5,7 +5,10 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.location.Location;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
@@ -15,11 +18,24 @@ import com.google.firebase.messaging.RemoteMessage;
 import com.unipi.gkagkakis.smartalert.R;
 import com.unipi.gkagkakis.smartalert.presentation.UI.HomepageActivity;
 
+import java.util.Map;
+
 public class SmartAlertFirebaseMessagingService extends FirebaseMessagingService {
 
     private static final String TAG = "FCMService";
     private static final String CHANNEL_ID = "smart_alert_notifications";
 
+    private static final String GROUP_KEY_ALERTS = "com.unipi.gkagkakis.smartalert.ALERTS";
+    private static final int ALERT_NOTIFICATION_ID = 0;
+    private static final int SUMMARY_NOTIFICATION_ID = 1;
+
+    static final String KEY_ALERT_ID = "alert_id";
+
+    // Data keys of cell topic broadcasts, which carry the alert position for the distance check
+    static final String KEY_ALERT_LATITUDE = "alert_latitude";
+    static final String KEY_ALERT_LONGITUDE = "alert_longitude";
+    static final String KEY_RADIUS_KM = "radius_km";
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -30,30 +46,86 @@ public class SmartAlertFirebaseMessagingService extends FirebaseMessagingService
     public void onMessageReceived(RemoteMessage remoteMessage) {
         Log.d(TAG, "From: " + remoteMessage.getFrom());
 
-        // Check if message contains a notification payload
-        if (remoteMessage.getNotification() != null) {
-            Log.d(TAG, "Message Notification Body: " + remoteMessage.getNotification().getBody());
-            showNotification(
-                remoteMessage.getNotification().getTitle(),
-                remoteMessage.getNotification().getBody()
-            );
-        }
+        String title = null;
+        String message = null;
 
-        // Handle data payload
+        // Handle data payload, which carries the alert id; fall back to the notification payload
         if (remoteMessage.getData().size() > 0) {
             Log.d(TAG, "Message data payload: " + remoteMessage.getData());
 
+            // Topic broadcasts reach the whole cell, keep only those within range of this device
+            if (remoteMessage.getData().containsKey(KEY_ALERT_LATITUDE) && !isWithinAlertRadius(remoteMessage.getData())) {
+                Log.d(TAG, "Cell broadcast ignored - alert is out of range");
+                return;
+            }
+
             String alertType = remoteMessage.getData().get("alert_type");
             String location = remoteMessage.getData().get("location");
             String severity = remoteMessage.getData().get("severity");
 
-            String title = "Alert Nearby - Be Careful!";
-            String message = String.format("A %s alert has been reported near %s. Severity: %s",
+            title = "Alert Nearby - Be Careful!";
+            message = String.format("A %s alert has been reported near %s. Severity: %s",
                 alertType != null ? alertType : "safety",
                 location != null ? location : "your location",
                 severity != null ? severity : "unknown");
+        } else if (remoteMessage.getNotification() != null) {
+            Log.d(TAG, "Message Notification Body: " + remoteMessage.getNotification().getBody());
+            title = remoteMessage.getNotification().getTitle();
+            message = remoteMessage.getNotification().getBody();
+        }
+
+        if (message == null) return;
+        String alertKey = getAlertKey(remoteMessage, title, message);
+        showDecision(AlertNotificationPipeline.getInstance().onAlert(alertKey, message), title, message);
+    }
+
+    private String getAlertKey(RemoteMessage remoteMessage, String title, String message) {
+        String alertId = remoteMessage.getData().get(KEY_ALERT_ID);
+        if (alertId != null) return alertId;
+        if (remoteMessage.getMessageId() != null) return remoteMessage.getMessageId();
+        return title + "\n" + message;
+    }
+
+    private void showDecision(AlertNotificationPipeline.Decision decision, String title, String message) {
+        switch (decision.getAction()) {
+            case SHOW_SINGLE:
+                showNotification(decision.getAlertKey(), title, message);
+                break;
+            case SHOW_SUMMARY:
+                showSummaryNotification(getApplicationContext(), decision);
+                break;
+            case DEFER_SUMMARY:
+                // Rate limited, post whatever accumulated once the interval has passed
+                Context appContext = getApplicationContext();
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
+                    AlertNotificationPipeline.Decision flushed = AlertNotificationPipeline.getInstance().flushSummary();
+                    if (flushed != null) {
+                        showSummaryNotification(appContext, flushed);
+                    }
+                }, decision.getDelayMs());
+                break;
+            case DROP_DUPLICATE:
+                Log.d(TAG, "Duplicate alert dropped: " + decision.getAlertKey());
+                break;
+        }
+    }
+
+    private boolean isWithinAlertRadius(Map<String, String> data) {
+        Location lastKnown = AlertTopicManager.getInstance(this).getLastKnownLocation();
+        if (lastKnown == null) {
+            return false;
+        }
 
-            showNotification(title, message);
+        try {
+            Location alertLocation = new Location(TAG);
+            alertLocation.setLatitude(Double.parseDouble(data.get(KEY_ALERT_LATITUDE)));
+            alertLocation.setLongitude(Double.parseDouble(data.get(KEY_ALERT_LONGITUDE)));
+            String radius = data.get(KEY_RADIUS_KM);
+            double radiusKm = radius != null ? Double.parseDouble(radius) : 10.0;
+            return lastKnown.distanceTo(alertLocation) <= radiusKm * 1000;
+        } catch (NumberFormatException | NullPointerException e) {
+            Log.w(TAG, "Malformed cell broadcast location", e);
+            return false;
         }
     }
 
@@ -66,7 +138,7 @@ public class SmartAlertFirebaseMessagingService extends FirebaseMessagingService
         FCMTokenManager.getInstance(this).sendTokenToServer(token);
     }
 
-    private void showNotification(String title, String messageBody) {
+    private void showNotification(String tag, String title, String messageBody) {
         Intent intent = new Intent(this, HomepageActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
@@ -80,12 +152,47 @@ public class SmartAlertFirebaseMessagingService extends FirebaseMessagingService
                         .setContentText(messageBody)
                         .setAutoCancel(true)
                         .setPriority(NotificationCompat.PRIORITY_HIGH)
+                        .setGroup(GROUP_KEY_ALERTS)
                         .setContentIntent(pendingIntent);
 
         NotificationManager notificationManager =
                 (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
-        notificationManager.notify(0, notificationBuilder.build());
+        // Tagged by alert key, so a repeat of the same alert replaces instead of stacking
+        notificationManager.notify(tag, ALERT_NOTIFICATION_ID, notificationBuilder.build());
+    }
+
+    private static void showSummaryNotification(Context context, AlertNotificationPipeline.Decision decision) {
+        Intent intent = new Intent(context, HomepageActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
+
+        String title = decision.getSummaryCount() + " alerts reported nearby";
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        for (String line : decision.getSummaryLines()) {
+            style.addLine(line);
+        }
+
+        NotificationCompat.Builder notificationBuilder =
+                new NotificationCompat.Builder(context, CHANNEL_ID)
+                        .setSmallIcon(R.drawable.ic_notification)
+                        .setContentTitle(title)
+                        .setContentText("Be careful, several alerts were reported in your area")
+                        .setStyle(style)
+                        .setNumber(decision.getSummaryCount())
+                        .setAutoCancel(true)
+                        .setOnlyAlertOnce(true)
+                        .setPriority(NotificationCompat.PRIORITY_HIGH)
+                        .setGroup(GROUP_KEY_ALERTS)
+                        .setGroupSummary(true)
+                        .setContentIntent(pendingIntent);
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        notificationManager.notify(SUMMARY_NOTIFICATION_ID, notificationBuilder.build());
     }
 
     private void createNotificationChannel() {
@@ -0,0 +1,63 @@
+package com.unipi.gkagkakis.smartalert;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Helpers for the JVM benchmarks kept next to the unit tests
+ * Benchmarks are skipped unless RUN_BENCHMARKS is set, e.g.
+ * RUN_BENCHMARKS=1 ./gradlew testDebugUnitTest --tests '*BenchmarkTest'
+ */
+public final class Benchmarks {
+
+    // Results are written here so the JIT cannot drop the measured work
+    private static volatile Object sink;
+
+    private Benchmarks() {
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Set RUN_BENCHMARKS to run benchmarks", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    public static void consume(Object result) {
+        sink = result;
+    }
+
+    /**
+     * Runs the task warmups times untimed, then runs times
+     * @return Duration of the fastest timed run in milliseconds
+     */
+    public static double bestMillis(int warmups, int runs, Runnable task) {
+        for (int i = 0; i < warmups; i++) {
+            task.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    /**
+     * Bytes the current thread allocates while running the task, after warmups untimed runs
+     * Needs a HotSpot-based JVM, which is what local unit tests run on.
+     */
+    public static long allocatedBytes(int warmups, Runnable task) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation counters unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+
+        for (int i = 0; i < warmups; i++) {
+            task.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        task.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+}
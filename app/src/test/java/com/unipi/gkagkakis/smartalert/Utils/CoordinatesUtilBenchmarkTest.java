@@ -0,0 +1,103 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import com.unipi.gkagkakis.smartalert.Benchmarks;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The scanner against the regex parser it replaced, on the location shapes alerts carry
+ * Runs under Robolectric for the reference parser's android.net.Uri, which instruments both
+ * parsers alike, so the ratio means more than the absolute times.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CoordinatesUtilBenchmarkTest {
+
+    private static final int PARSES_PER_RUN = 200_000;
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void decimalPairs() {
+        compare("decimal pairs", inputs(random -> String.format(Locale.US, "%.6f, %.6f", latitude(random), longitude(random))));
+    }
+
+    @Test
+    public void mapUrls() {
+        compare("map URLs", inputs(random -> String.format(Locale.US, "https://maps.google.com/?q=%.6f%%2C%.6f",
+                latitude(random), longitude(random))));
+    }
+
+    @Test
+    public void looseNumbers() {
+        compare("loose numbers", inputs(random -> "Near " + (int) latitude(random) + " " + (int) longitude(random)));
+    }
+
+    @Test
+    public void unparseable() {
+        compare("no coordinates", inputs(random -> "Syntagma Square, Athens"));
+    }
+
+    private static void compare(String name, String[] inputs) {
+        CoordinatesUtil.LatLon latLon = new CoordinatesUtil.LatLon();
+        for (String input : inputs) {
+            double[] expected = RegexCoordinatesParser.tryParseLatLon(input);
+            assertEquals(input, expected != null, CoordinatesUtil.tryParseLatLon(input, latLon));
+        }
+
+        Runnable scanner = () -> {
+            double sum = 0;
+            for (int i = 0; i < PARSES_PER_RUN; i++) {
+                if (CoordinatesUtil.tryParseLatLon(inputs[i % inputs.length], latLon)) sum += latLon.latitude;
+            }
+            Benchmarks.consume(sum);
+        };
+        Runnable regex = () -> {
+            double sum = 0;
+            for (int i = 0; i < PARSES_PER_RUN; i++) {
+                double[] parsed = RegexCoordinatesParser.tryParseLatLon(inputs[i % inputs.length]);
+                if (parsed != null) sum += parsed[0];
+            }
+            Benchmarks.consume(sum);
+        };
+
+        double scannerNs = Benchmarks.bestMillis(3, 5, scanner) * 1e6 / PARSES_PER_RUN;
+        double regexNs = Benchmarks.bestMillis(3, 5, regex) * 1e6 / PARSES_PER_RUN;
+        double scannerBytes = (double) Benchmarks.allocatedBytes(1, scanner) / PARSES_PER_RUN;
+        double regexBytes = (double) Benchmarks.allocatedBytes(1, regex) / PARSES_PER_RUN;
+        System.out.printf("%s: scanner %.0f ns and %.0f bytes per parse, regex %.0f ns and %.0f bytes (%.1fx)%n",
+                name, scannerNs, scannerBytes, regexNs, regexBytes, regexNs / scannerNs);
+    }
+
+    private interface InputShape {
+        String next(Random random);
+    }
+
+    private static String[] inputs(InputShape shape) {
+        Random random = new Random(24);
+        String[] inputs = new String[1024];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = shape.next(random);
+        }
+        return inputs;
+    }
+
+    // Around Greece, where the app's alerts are
+    private static double latitude(Random random) {
+        return 35 + random.nextDouble() * 6;
+    }
+
+    private static double longitude(Random random) {
+        return 20 + random.nextDouble() * 8;
+    }
+}
@@ -0,0 +1,192 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import com.unipi.gkagkakis.smartalert.Benchmarks;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the scanner on known inputs and against the regex parser it replaced on generated ones
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CoordinatesUtilTest {
+
+    private static final String[] SEPARATORS = {
+            ",", ", ", " , ", " ,", "\t,\n", ";", " ", "  ", "/", "|", "&", "=", "?", "#", ":", "+",
+            "%2C", "%2c", "%20", "%", "%E2%82%AC", "%zz", "%2"
+    };
+    private static final String[] WORDS = {
+            "Lat", "lon:", "Athens", "q", "query", "q=", "query=", "https://maps.google.com/", "geo:",
+            "http://maps.example.com/maps?", "https://www.google.com/maps/search/?api=1&query=",
+            "www.example.com?", "?q=", "&q=", "#q=", "é", "€", " ", "abc123"
+    };
+
+    @Test
+    public void parsesDecimalPairs() {
+        assertParses("37.983810, 23.727539", 37.983810, 23.727539);
+        assertParses("  -33.8688 ,151.2093 ", -33.8688, 151.2093);
+        assertParses("Location: +40.7128,\t-74.0060 (NYC)", 40.7128, -74.0060);
+        // The first pair with a valid latitude wins over a later one
+        assertParses("123.5, 10.5 and 37.9, 23.7", 23.5, 10.5);
+    }
+
+    @Test
+    public void parsesMapUrls() {
+        assertParses("https://maps.google.com/?q=37.98%2C23.72", 37.98, 23.72);
+        assertParses("https://www.google.com/maps/search/?api=1&query=40.7128+,+-74.0060", 40.7128, -74.0060);
+        assertParses("https://maps.example.com/?q=Athens&query=37.98,23.72#map", 37.98, 23.72);
+        // Opaque URIs have no query parameters, so only the loose numbers remain
+        assertParses("geo:0,0?q=37.98%2C23.72", 0, 0);
+        // A malformed escape swallows the characters up to its first bad digit, here the dot
+        assertParses("https://maps.example.com/?api=1&q=%4.80%2C23.5", 1, 4.8);
+    }
+
+    @Test
+    public void parsesLooseNumbers() {
+        assertParses("Syntagma 37 23", 37, 23);
+        assertParses("lat 37.5 lon -23", 37.5, -23);
+        // At most three integer digits per number
+        assertParses("lat 0451 lon 23", 45, 1);
+    }
+
+    @Test
+    public void rejectsInputsWithoutValidCoordinates() {
+        assertFalse(CoordinatesUtil.tryParseLatLon("", new CoordinatesUtil.LatLon()));
+        assertFalse(CoordinatesUtil.tryParseLatLon(" \t ", new CoordinatesUtil.LatLon()));
+        assertFalse(CoordinatesUtil.tryParseLatLon("Athens, Greece", new CoordinatesUtil.LatLon()));
+        assertFalse(CoordinatesUtil.tryParseLatLon("95.0, 23.0", new CoordinatesUtil.LatLon()));
+        assertFalse(CoordinatesUtil.tryParseLatLon("only 37.98", new CoordinatesUtil.LatLon()));
+        assertNull(CoordinatesUtil.tryParseCoordinates("nowhere"));
+    }
+
+    @Test
+    public void formatsParsedCoordinates() {
+        assertEquals("37.983810,23.727539", CoordinatesUtil.tryParseCoordinates("37.98381, 23.727539"));
+    }
+
+    @Test
+    public void holderIsReusable() {
+        CoordinatesUtil.LatLon latLon = new CoordinatesUtil.LatLon();
+        StringBuilder longInput = new StringBuilder();
+        for (int i = 0; i < 100; i++) longInput.append("word ");
+        longInput.append("10.5, 20.5");
+
+        assertTrue(CoordinatesUtil.tryParseLatLon("1.5, 2.5", latLon));
+        assertTrue(CoordinatesUtil.tryParseLatLon(longInput.toString(), latLon));
+        assertEquals(10.5, latLon.latitude, 0);
+        assertTrue(CoordinatesUtil.tryParseLatLon("3.5, 4.5", latLon));
+        assertEquals(3.5, latLon.latitude, 0);
+        assertEquals(4.5, latLon.longitude, 0);
+    }
+
+    @Test
+    public void parsingDoesNotAllocateOnceHolderFits() {
+        CoordinatesUtil.LatLon latLon = new CoordinatesUtil.LatLon();
+        String[] inputs = {"37.983810, 23.727539", "https://maps.google.com/?q=37.98%2C23.72", "Syntagma 37 23"};
+
+        long allocated = Benchmarks.allocatedBytes(1000, () -> {
+            for (String input : inputs) {
+                CoordinatesUtil.tryParseLatLon(input, latLon);
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void agreesWithRegexParser() {
+        Random random = new Random(24);
+        CoordinatesUtil.LatLon latLon = new CoordinatesUtil.LatLon();
+        int parsed = 0;
+        int checked = 200_000;
+        for (int i = 0; i < checked; i++) {
+            String input = random.nextInt(4) == 0 ? realisticInput(random) : fragmentInput(random);
+            double[] expected = RegexCoordinatesParser.tryParseLatLon(input);
+            boolean found = CoordinatesUtil.tryParseLatLon(input, latLon);
+
+            String message = "input \"" + input + "\"";
+            assertEquals(message, expected != null, found);
+            if (found) {
+                assertEquals(message, expected[0], latLon.latitude, 0);
+                assertEquals(message, expected[1], latLon.longitude, 0);
+                parsed++;
+            }
+        }
+        // Both outcomes should be well represented
+        assertTrue("parsed " + parsed, parsed > checked / 5 && parsed < checked * 4 / 5);
+    }
+
+    private static void assertParses(String input, double latitude, double longitude) {
+        CoordinatesUtil.LatLon latLon = new CoordinatesUtil.LatLon();
+        assertTrue(input, CoordinatesUtil.tryParseLatLon(input, latLon));
+        assertEquals(input, latitude, latLon.latitude, 0);
+        assertEquals(input, longitude, latLon.longitude, 0);
+
+        double[] expected = RegexCoordinatesParser.tryParseLatLon(input);
+        assertNotNull(input, expected);
+        assertEquals(input, expected[0], latLon.latitude, 0);
+        assertEquals(input, expected[1], latLon.longitude, 0);
+    }
+
+    /**
+     * Shapes users and map apps actually produce
+     */
+    private static String realisticInput(Random random) {
+        double latitude = random.nextDouble() * 180 - 90;
+        double longitude = random.nextDouble() * 360 - 180;
+        String pair = String.format(Locale.US, "%." + random.nextInt(8) + "f, %." + random.nextInt(8) + "f", latitude, longitude);
+        switch (random.nextInt(5)) {
+            case 0:
+                return pair;
+            case 1:
+                return "https://maps.google.com/?q=" + pair.replace(", ", "%2C");
+            case 2:
+                return "https://www.google.com/maps/search/?api=1&query=" + pair.replace(" ", "+");
+            case 3:
+                return "Near " + (int) latitude + " " + (int) longitude;
+            default:
+                return "  " + pair + "  ";
+        }
+    }
+
+    /**
+     * Random numbers, separators and URL pieces, so each parser branch meets odd input
+     */
+    private static String fragmentInput(Random random) {
+        StringBuilder input = new StringBuilder();
+        int fragments = 1 + random.nextInt(8);
+        for (int i = 0; i < fragments; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    appendNumber(input, random);
+                    break;
+                case 1:
+                    input.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                    break;
+                default:
+                    input.append(WORDS[random.nextInt(WORDS.length)]);
+                    break;
+            }
+        }
+        return input.toString();
+    }
+
+    private static void appendNumber(StringBuilder input, Random random) {
+        int sign = random.nextInt(4);
+        if (sign == 1) input.append('-');
+        if (sign == 2) input.append('+');
+        int intDigits = random.nextInt(6);
+        for (int i = 0; i < intDigits; i++) input.append((char) ('0' + random.nextInt(10)));
+        if (random.nextInt(3) != 0) {
+            input.append('.');
+            int fractionDigits = random.nextInt(4) == 0 ? random.nextInt(25) : random.nextInt(9);
+            for (int i = 0; i < fractionDigits; i++) input.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+}
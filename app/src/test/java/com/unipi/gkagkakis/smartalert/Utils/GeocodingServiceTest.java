@@ -0,0 +1,253 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs lookups against a fake geocoder that counts its calls
+ * The caches and counters are process-wide, so every test uses coordinates of its own and
+ * compares the counters against a snapshot taken before it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GeocodingServiceTest {
+
+    private Context context;
+    private FakeResolver resolver;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        resolver = new FakeResolver();
+        GeocodingService.setResolver(resolver);
+    }
+
+    @Test
+    public void nearbyCoordinatesShareACell() {
+        assertEquals(GeocodingService.cacheKeyFor(37.98010, 23.72510), GeocodingService.cacheKeyFor(37.98040, 23.72540));
+        assertNotEquals(GeocodingService.cacheKeyFor(37.98010, 23.72510), GeocodingService.cacheKeyFor(37.98060, 23.72510));
+        assertNotEquals(GeocodingService.cacheKeyFor(-0.0001, 0), GeocodingService.cacheKeyFor(0.0001, 0));
+
+        double center = GeocodingService.cellCenter(37.98010);
+        assertEquals(37.98010, center, GeocodingService.CELL_DEGREES / 2);
+        assertEquals(center, GeocodingService.cellCenter(37.98040), 1e-12);
+    }
+
+    @Test
+    public void repeatedLookupIsServedFromMemory() {
+        GeocodingService.Stats before = GeocodingService.getStats();
+
+        Result first = lookup(37.90010, 23.70010);
+        // Same cell, answered before lookup returns
+        Result second = new Result();
+        GeocodingService.Request request = GeocodingService.lookup(context, 37.90040, 23.70040, second);
+        GeocodingService.Stats after = GeocodingService.getStats();
+
+        assertTrue(request.isFinished());
+        assertEquals(first.address, second.address);
+        assertEquals(1, resolver.calls.get());
+        assertEquals(1, after.geocoderCalls - before.geocoderCalls);
+        assertEquals(1, after.memoryHits - before.memoryHits);
+        // The geocoder sees the cell center, not the raw coordinates
+        assertEquals(GeocodingService.cellCenter(37.90010), resolver.lastLatitude, 1e-12);
+    }
+
+    @Test
+    public void concurrentLookupsOfACellShareOneGeocoderCall() {
+        resolver.blockUntil = new CountDownLatch(1);
+        GeocodingService.Stats before = GeocodingService.getStats();
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Result result = new Result();
+            GeocodingService.lookup(context, 37.91010 + i * 0.0001, 23.71010, result);
+            results.add(result);
+        }
+        resolver.blockUntil.countDown();
+        for (Result result : results) {
+            await(() -> result.done);
+        }
+        GeocodingService.Stats after = GeocodingService.getStats();
+
+        for (Result result : results) {
+            assertEquals(results.get(0).address, result.address);
+        }
+        assertEquals(1, resolver.calls.get());
+        assertEquals(2, after.dedupedLookups - before.dedupedLookups);
+    }
+
+    @Test
+    public void addressOutlivesMemoryCacheOnDisk() {
+        String address = lookup(37.92010, 23.72010).address;
+        FakeResolver restarted = new FakeResolver();
+        // Also empties the memory cache, as a process restart would
+        GeocodingService.setResolver(restarted);
+        GeocodingService.Stats before = GeocodingService.getStats();
+
+        Result result = lookup(37.92010, 23.72010);
+        GeocodingService.Stats after = GeocodingService.getStats();
+
+        assertEquals(address, result.address);
+        assertEquals(0, restarted.calls.get());
+        assertEquals(1, after.diskHits - before.diskHits);
+    }
+
+    @Test
+    public void failureIsRetriedOnNextLookup() {
+        resolver.failNext = true;
+        GeocodingService.Stats before = GeocodingService.getStats();
+
+        Result failed = lookup(37.93010, 23.73010);
+        Result retried = lookup(37.93010, 23.73010);
+        GeocodingService.Stats after = GeocodingService.getStats();
+
+        assertNull(failed.address);
+        assertTrue(failed.error, failed.error.startsWith("Geocoding failed"));
+        assertNotNull(retried.address);
+        assertEquals(2, resolver.calls.get());
+        assertEquals(1, after.failures - before.failures);
+    }
+
+    @Test
+    public void missingAddressIsCached() {
+        resolver.address = null;
+
+        Result first = lookup(37.94010, 23.74010);
+        Result second = lookup(37.94010, 23.74010);
+
+        assertEquals("No address found", first.error);
+        assertEquals("No address found", second.error);
+        assertEquals(1, resolver.calls.get());
+    }
+
+    @Test
+    public void cancelledRequestIsNotDelivered() {
+        resolver.blockUntil = new CountDownLatch(1);
+        Result cancelled = new Result();
+        GeocodingService.Request request = GeocodingService.lookup(context, 37.95010, 23.75010, cancelled);
+
+        request.cancel();
+        resolver.blockUntil.countDown();
+        // A later lookup of the cell still completes, so the cancelled one has had its chance
+        lookup(37.95010, 23.75010);
+
+        assertTrue(request.isCancelled());
+        assertFalse(cancelled.done);
+    }
+
+    @Test
+    public void prefetchWaitsForDistinctUrgentCells() {
+        AtomicInteger urgentResolved = new AtomicInteger();
+        List<double[]> coordinates = Arrays.asList(
+                new double[]{37.96010, 23.76010},
+                new double[]{37.96040, 23.76040},
+                new double[]{37.96510, 23.76510},
+                new double[]{37.97010, 23.77010});
+
+        // The first two coordinates fall in the same cell
+        GeocodingService.prefetch(context, coordinates, 2, urgentResolved::incrementAndGet);
+        await(() -> urgentResolved.get() > 0);
+        await(() -> resolver.calls.get() == 3);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, urgentResolved.get());
+        assertEquals(3, resolver.calls.get());
+    }
+
+    @Test
+    public void hitRateCountsEveryLookupAnsweredWithoutGeocoder() {
+        assertEquals(0.75, new GeocodingService.Stats(4, 1, 2, 1, 0, 0).hitRate(), 1e-9);
+        assertEquals(0, new GeocodingService.Stats(0, 0, 0, 0, 0, 0).hitRate(), 0);
+    }
+
+    private Result lookup(double latitude, double longitude) {
+        Result result = new Result();
+        GeocodingService.lookup(context, latitude, longitude, result);
+        await(() -> result.done);
+        return result;
+    }
+
+    /**
+     * Runs main looper tasks until the condition holds
+     */
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (!condition.getAsBoolean()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        assertTrue("condition not met in time", condition.getAsBoolean());
+    }
+
+    private static class Result implements LocationUtils.GeocodeCallback {
+        boolean done;
+        String address;
+        String error;
+
+        @Override
+        public void onSuccess(String resolved) {
+            done = true;
+            address = resolved;
+        }
+
+        @Override
+        public void onError(String message) {
+            done = true;
+            error = message;
+        }
+    }
+
+    /**
+     * Names each cell after its coordinates, optionally failing once or waiting for a latch
+     */
+    private static class FakeResolver implements GeocodingService.AddressResolver {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile String address = "Street";
+        volatile boolean failNext;
+        volatile CountDownLatch blockUntil;
+        volatile double lastLatitude;
+
+        @Override
+        public String resolve(double latitude, double longitude) throws IOException {
+            calls.incrementAndGet();
+            lastLatitude = latitude;
+            CountDownLatch latch = blockUntil;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failNext) {
+                failNext = false;
+                throw new IOException("service unavailable");
+            }
+            return address == null ? null : address + " " + latitude + "," + longitude;
+        }
+    }
+}
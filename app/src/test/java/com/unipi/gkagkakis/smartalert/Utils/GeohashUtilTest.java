@@ -0,0 +1,105 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeohashUtilTest {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    @Test
+    public void encodesKnownHashes() {
+        assertEquals("u4pruydqqvj", GeohashUtil.encode(57.64911, 10.40744, 11));
+        assertEquals("ezs42", GeohashUtil.encode(42.6, -5.6, 5));
+        assertEquals("s0000", GeohashUtil.encode(0.0, 0.0, 5));
+    }
+
+    @Test
+    public void longerHashExtendsShorterOne() {
+        String full = GeohashUtil.encode(37.9838, 23.7275, GeohashUtil.STORED_PRECISION);
+        for (int precision = 1; precision < GeohashUtil.STORED_PRECISION; precision++) {
+            assertEquals(full.substring(0, precision), GeohashUtil.encode(37.9838, 23.7275, precision));
+        }
+    }
+
+    @Test
+    public void coveringPrefixesContainEveryPointInRadius() {
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            double latitude = random.nextDouble() * 170.0 - 85.0;
+            double longitude = random.nextDouble() * 360.0 - 180.0;
+            double radiusKm = Math.pow(10, random.nextDouble() * 4 - 1);
+            List<String> prefixes = GeohashUtil.coveringPrefixes(latitude, longitude, radiusKm);
+            assertTrue(prefixes.size() <= 9);
+            assertEquals("no duplicates", prefixes.size(), new HashSet<>(prefixes).size());
+
+            for (int j = 0; j < 50; j++) {
+                double[] point = pointWithin(random, latitude, longitude, radiusKm);
+                if (point == null) continue;
+                String hash = GeohashUtil.encode(point[0], point[1], GeohashUtil.STORED_PRECISION);
+                assertTrue(hash + " outside " + prefixes + " for " + radiusKm + " km around " + latitude + "," + longitude,
+                        startsWithAny(hash, prefixes));
+            }
+        }
+    }
+
+    @Test
+    public void coveringPrefixesFallBackToEverythingNearPole() {
+        assertEquals(Collections.singletonList(""), GeohashUtil.coveringPrefixes(89.99, 10.0, 5.0));
+    }
+
+    @Test
+    public void coveringCellsContainEveryPointInRadius() {
+        Random random = new Random(9);
+        for (int i = 0; i < 500; i++) {
+            double latitude = random.nextDouble() * 170.0 - 85.0;
+            double longitude = random.nextDouble() * 360.0 - 180.0;
+            double radiusKm = 1 + random.nextDouble() * 99;
+            int precision = 2 + random.nextInt(4);
+            List<String> cells = GeohashUtil.coveringCells(latitude, longitude, radiusKm, precision);
+
+            for (int j = 0; j < 50; j++) {
+                double[] point = pointWithin(random, latitude, longitude, radiusKm);
+                if (point == null) continue;
+                String cell = GeohashUtil.encode(point[0], point[1], precision);
+                assertTrue(cell + " missing from " + cells, cells.contains(cell));
+            }
+        }
+    }
+
+    private static boolean startsWithAny(String hash, List<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (hash.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Random point at most radiusKm from the center, often right at the edge
+     * @return null if rounding put it just outside the radius
+     */
+    private static double[] pointWithin(Random random, double latitude, double longitude, double radiusKm) {
+        double distance = random.nextBoolean() ? radiusKm : radiusKm * Math.sqrt(random.nextDouble());
+        double angular = distance / EARTH_RADIUS_KM;
+        double bearing = random.nextDouble() * 2 * Math.PI;
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(angular) + Math.cos(lat1) * Math.sin(angular) * Math.cos(bearing));
+        double lon2 = Math.toRadians(longitude) + Math.atan2(Math.sin(bearing) * Math.sin(angular) * Math.cos(lat1),
+                Math.cos(angular) - Math.sin(lat1) * Math.sin(lat2));
+
+        double pointLat = Math.toDegrees(lat2);
+        double pointLon = Math.toDegrees(lon2);
+        if (pointLon >= 180.0) pointLon -= 360.0;
+        if (pointLon < -180.0) pointLon += 360.0;
+        if (CoordinatesUtil.calculateDistance(latitude, longitude, pointLat, pointLon) > radiusKm) {
+            return null;
+        }
+        return new double[]{pointLat, pointLon};
+    }
+}
@@ -0,0 +1,233 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Looper;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Loads through the real caches, serving images from MockWebServer
+ * Cache counters are process-wide, so each test compares them against a snapshot taken before it.
+ * Native graphics make BitmapFactory really decode the PNG, from bytes as well as from the Base64 stream.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImageLoaderTest {
+
+    private Context context;
+    private MockWebServer server;
+    private byte[] png;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.getApplication();
+        ImageLoader.init(context);
+        server = new MockWebServer();
+        server.start();
+
+        Bitmap bitmap = Bitmap.createBitmap(64, 48, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+        png = output.toByteArray();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void repeatedLoadIsServedFromMemory() {
+        server.enqueue(image());
+        String url = server.url("/memory.png").toString();
+        ImageLoader.CacheStats before = ImageLoader.getCacheStats();
+
+        Bitmap first = load(url, view(200, 100)).bitmap;
+        ImageLoader.CacheStats afterFirst = ImageLoader.getCacheStats();
+        Bitmap second = load(url, view(200, 100)).bitmap;
+        ImageLoader.CacheStats after = ImageLoader.getCacheStats();
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, after.networkLoads - before.networkLoads);
+        assertEquals(1, after.decodes - before.decodes);
+        assertEquals(1, after.memoryHits - afterFirst.memoryHits);
+        assertEquals(afterFirst.decodes, after.decodes);
+    }
+
+    @Test
+    public void otherSizeIsDecodedFromDiskWithoutDownloading() {
+        server.enqueue(image());
+        String url = server.url("/disk.png").toString();
+        ImageLoader.CacheStats before = ImageLoader.getCacheStats();
+
+        assertNotNull(load(url, view(200, 100)).bitmap);
+        // A different target size misses the memory cache but not the encoded bytes on disk
+        assertNotNull(load(url, view(40, 30)).bitmap);
+        ImageLoader.CacheStats after = ImageLoader.getCacheStats();
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, after.networkLoads - before.networkLoads);
+        assertEquals(1, after.diskHits - before.diskHits);
+        assertEquals(2, after.decodes - before.decodes);
+    }
+
+    @Test
+    public void repeatedBase64LoadSkipsDecoder() {
+        String dataUri = "data:image/png;base64," + Base64.getEncoder().encodeToString(png);
+        ImageLoader.CacheStats before = ImageLoader.getCacheStats();
+
+        Bitmap first = load(dataUri, view(200, 100)).bitmap;
+        // An equal but distinct string hits the same content key
+        Bitmap second = load(new String(dataUri), view(200, 100)).bitmap;
+        ImageLoader.CacheStats after = ImageLoader.getCacheStats();
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, after.decodes - before.decodes);
+        assertEquals(1, after.memoryHits - before.memoryHits);
+        assertEquals(before.networkLoads, after.networkLoads);
+    }
+
+    @Test
+    public void differentBase64PayloadsDoNotShareBitmaps() {
+        Bitmap other = Bitmap.createBitmap(32, 32, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        other.compress(Bitmap.CompressFormat.PNG, 100, output);
+
+        Bitmap first = load("data:image/png;base64," + Base64.getEncoder().encodeToString(png), view(200, 100)).bitmap;
+        Bitmap second = load("data:image/png;base64," + Base64.getEncoder().encodeToString(output.toByteArray()),
+                view(200, 100)).bitmap;
+
+        assertEquals(64, first.getWidth());
+        assertEquals(32, second.getWidth());
+    }
+
+    @Test
+    public void concurrentLoadsShareOneDownload() {
+        server.enqueue(image().setBodyDelay(200, TimeUnit.MILLISECONDS));
+        String url = server.url("/shared.png").toString();
+        ImageLoader.CacheStats before = ImageLoader.getCacheStats();
+
+        Result first = new Result();
+        Result second = new Result();
+        ImageLoader.loadImage(url, view(200, 100), first);
+        ImageLoader.loadImage(url, view(200, 100), second);
+        await(first);
+        await(second);
+        ImageLoader.CacheStats after = ImageLoader.getCacheStats();
+
+        assertNotNull(first.bitmap);
+        assertSame(first.bitmap, second.bitmap);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, after.dedupedRequests - before.dedupedRequests);
+        assertEquals(1, after.decodes - before.decodes);
+    }
+
+    @Test
+    public void cancelledLoadIsNotDelivered() {
+        server.enqueue(image().setBodyDelay(200, TimeUnit.MILLISECONDS));
+        server.enqueue(image());
+        ImageView imageView = view(200, 100);
+        Result stale = new Result();
+
+        ImageLoader.loadImage(server.url("/old.png").toString(), imageView, stale);
+        // Rebinding the view cancels its previous load
+        Result current = load(server.url("/new.png").toString(), imageView);
+
+        assertNotNull(current.bitmap);
+        assertFalse(stale.done);
+    }
+
+    @Test
+    public void failedDownloadIsNotCached() {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(image());
+        String url = server.url("/flaky.png").toString();
+
+        Result failed = load(url, view(200, 100));
+        Result retried = load(url, view(200, 100));
+
+        assertNull(failed.bitmap);
+        assertNotNull(failed.error);
+        assertNotNull(retried.bitmap);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private MockResponse image() {
+        return new MockResponse().setHeader("Content-Type", "image/png").setBody(new Buffer().write(png));
+    }
+
+    private ImageView view(int width, int height) {
+        ImageView imageView = new ImageView(context);
+        imageView.setLayoutParams(new ViewGroup.LayoutParams(width, height));
+        return imageView;
+    }
+
+    private static Result load(String url, ImageView imageView) {
+        Result result = new Result();
+        ImageLoader.loadImage(url, imageView, result);
+        await(result);
+        return result;
+    }
+
+    /**
+     * Runs main looper tasks until the load is delivered, which happens right away on a memory hit
+     */
+    private static void await(Result result) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!result.done && System.nanoTime() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (!result.done) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        assertTrue("load was not delivered", result.done);
+    }
+
+    private static class Result implements ImageLoader.ImageLoadCallback {
+        boolean done;
+        Bitmap bitmap;
+        Exception error;
+
+        @Override
+        public void onImageLoaded(@NonNull Bitmap loaded) {
+            done = true;
+            bitmap = loaded;
+        }
+
+        @Override
+        public void onError(@NonNull Exception e) {
+            done = true;
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import com.unipi.gkagkakis.smartalert.Benchmarks;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Filtering a million points against a 10 km radius, with a Haversine call per point as the baseline
+ */
+public class ProximityFilterBenchmarkTest {
+
+    private static final int POINTS = 1_000_000;
+    private static final double CENTER_LATITUDE = 37.98;
+    private static final double CENTER_LONGITUDE = 23.72;
+    private static final double RADIUS_KM = 10;
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void spreadPoints() {
+        // A degree around the center, so the bounding box rejects most points
+        compare("spread", 1.0, 1.0);
+    }
+
+    @Test
+    public void densePoints() {
+        // About 20 km around the center, so most points reach the distance checks
+        compare("dense", 0.18, 0.23);
+    }
+
+    private static void compare(String name, double latSpread, double lonSpread) {
+        Random random = new Random(25);
+        double[] latitudes = new double[POINTS];
+        double[] longitudes = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = CENTER_LATITUDE + (random.nextDouble() * 2 - 1) * latSpread;
+            longitudes[i] = CENTER_LONGITUDE + (random.nextDouble() * 2 - 1) * lonSpread;
+        }
+        int[] matches = new int[POINTS];
+        ProximityFilter filter = new ProximityFilter(CENTER_LATITUDE, CENTER_LONGITUDE, RADIUS_KM);
+
+        int filtered = filter.filter(latitudes, longitudes, POINTS, matches);
+        assertEquals(haversineCount(latitudes, longitudes), filtered);
+
+        double filterMs = Benchmarks.bestMillis(3, 5,
+                () -> Benchmarks.consume(filter.filter(latitudes, longitudes, POINTS, matches)));
+        double haversineMs = Benchmarks.bestMillis(3, 5, () -> Benchmarks.consume(haversineCount(latitudes, longitudes)));
+        System.out.printf("%s %,d points, %,d within %.0f km: filter %.1f ms, haversine %.1f ms (%.1fx)%n",
+                name, POINTS, filtered, RADIUS_KM, filterMs, haversineMs, haversineMs / filterMs);
+    }
+
+    private static int haversineCount(double[] latitudes, double[] longitudes) {
+        int count = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (CoordinatesUtil.calculateDistance(CENTER_LATITUDE, CENTER_LONGITUDE, latitudes[i], longitudes[i]) <= RADIUS_KM) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
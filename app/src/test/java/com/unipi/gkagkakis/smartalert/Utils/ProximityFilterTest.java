@@ -0,0 +1,104 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ProximityFilterTest {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double[] RADII_KM = {0.05, 1, 5, 10, 50, 200, 1000, 3000, 12000};
+
+    @Test
+    public void agreesWithHaversineEverywhere() {
+        Random random = new Random(25);
+        int inside = 0;
+        int checked = 0;
+        for (int c = 0; c < 4000; c++) {
+            // Every fourth center lies close to a pole, where the approximation must step aside
+            double latitude = c % 4 == 0 ? random.nextDouble() * 178 - 89 : random.nextDouble() * 170 - 85;
+            double longitude = random.nextDouble() * 360 - 180;
+            double radiusKm = RADII_KM[random.nextInt(RADII_KM.length)];
+            ProximityFilter filter = new ProximityFilter(latitude, longitude, radiusKm);
+
+            for (int i = 0; i < 500; i++) {
+                // Mostly just inside or outside the radius, where the approximation is least sure
+                double factor = random.nextInt(4) == 0 ? random.nextDouble() * 3 : 1 + (random.nextDouble() - 0.5) * 1e-3;
+                double[] point = destination(latitude, longitude, radiusKm * factor, random.nextDouble() * 2 * Math.PI);
+                boolean exact = CoordinatesUtil.calculateDistance(latitude, longitude, point[0], point[1]) <= radiusKm;
+                assertEquals("center " + latitude + "," + longitude + " radius " + radiusKm + " point " + point[0] + "," + point[1],
+                        exact, filter.contains(point[0], point[1]));
+                if (exact) inside++;
+                checked++;
+            }
+        }
+        assertTrue("inside " + inside, inside > checked / 4 && inside < checked * 3 / 4);
+    }
+
+    @Test
+    public void matchesAcrossAntimeridian() {
+        ProximityFilter filter = new ProximityFilter(10.0, 179.95, 30);
+
+        assertTrue(filter.contains(10.0, -179.95));
+        assertFalse(filter.contains(10.0, -179.5));
+    }
+
+    @Test
+    public void matchesAcrossPole() {
+        ProximityFilter filter = new ProximityFilter(89.9, 0.0, 25);
+
+        // About 22 km away over the pole, despite the opposite longitude
+        assertTrue(filter.contains(89.9, 180.0));
+        assertFalse(filter.contains(89.5, 180.0));
+    }
+
+    @Test
+    public void zeroRadiusMatchesOnlyCenter() {
+        ProximityFilter filter = new ProximityFilter(37.98, 23.72, 0);
+
+        assertTrue(filter.contains(37.98, 23.72));
+        assertFalse(filter.contains(37.98001, 23.72));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeRadius() {
+        new ProximityFilter(37.98, 23.72, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNaNRadius() {
+        new ProximityFilter(37.98, 23.72, Double.NaN);
+    }
+
+    @Test
+    public void filterWritesMatchingIndicesInOrder() {
+        ProximityFilter filter = new ProximityFilter(37.98, 23.72, 10);
+        double[] latitudes = {37.98, 40.64, 37.99, 38.50, 37.97, 37.98};
+        double[] longitudes = {23.72, 22.94, 23.73, 23.72, 23.71, 23.72};
+        int[] matches = new int[latitudes.length];
+
+        // The last point is left out by count
+        int matched = filter.filter(latitudes, longitudes, 5, matches);
+
+        assertEquals(3, matched);
+        assertArrayEquals(new int[]{0, 2, 4}, Arrays.copyOf(matches, matched));
+    }
+
+    /**
+     * Point at the given distance and bearing from the start, on the sphere CoordinatesUtil uses
+     */
+    private static double[] destination(double latitude, double longitude, double distanceKm, double bearing) {
+        double angular = distanceKm / EARTH_RADIUS_KM;
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(angular) + Math.cos(lat1) * Math.sin(angular) * Math.cos(bearing));
+        double lon2 = Math.toRadians(longitude) + Math.atan2(Math.sin(bearing) * Math.sin(angular) * Math.cos(lat1),
+                Math.cos(angular) - Math.sin(lat1) * Math.sin(lat2));
+
+        double pointLongitude = Math.toDegrees(lon2);
+        pointLongitude = ((pointLongitude + 180) % 360 + 360) % 360 - 180;
+        return new double[]{Math.toDegrees(lat2), pointLongitude};
+    }
+}
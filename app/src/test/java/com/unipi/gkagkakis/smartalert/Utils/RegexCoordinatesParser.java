@@ -0,0 +1,69 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex parser CoordinatesUtil used before its scanner, kept as the reference for tests and benchmarks
+ * Needs the real android.net.Uri, so callers run under Robolectric.
+ */
+final class RegexCoordinatesParser {
+    private RegexCoordinatesParser() {}
+
+    private static final Pattern DECIMAL_DEGREES = Pattern.compile(
+            "([-+]?\\d{1,2}\\.\\d+)\\s*,\\s*([-+]?\\d{1,3}\\.\\d+)"
+    );
+    private static final Pattern ANY_DOUBLE = Pattern.compile("([-+]?\\d{1,3}(?:\\.\\d+)?)");
+
+    /**
+     * @return {latitude, longitude}, or null if no valid coordinates were found
+     */
+    @Nullable
+    static double[] tryParseLatLon(@NonNull String input) {
+        String trimmed = input.trim();
+        if (trimmed.isEmpty()) return null;
+
+        Matcher m = DECIMAL_DEGREES.matcher(trimmed);
+        if (m.find()) {
+            double lat = parseDoubleSafe(m.group(1));
+            double lon = parseDoubleSafe(m.group(2));
+            if (CoordinatesUtil.isValidLatLon(lat, lon)) return new double[]{lat, lon};
+        }
+
+        try {
+            Uri uri = Uri.parse(trimmed);
+            String q = uri.getQueryParameter("q");
+            if (q == null) q = uri.getQueryParameter("query");
+            if (q != null) {
+                Matcher mq = DECIMAL_DEGREES.matcher(q);
+                if (mq.find()) {
+                    double lat = parseDoubleSafe(mq.group(1));
+                    double lon = parseDoubleSafe(mq.group(2));
+                    if (CoordinatesUtil.isValidLatLon(lat, lon)) return new double[]{lat, lon};
+                }
+            }
+        } catch (Exception ignored) { }
+
+        Matcher any = ANY_DOUBLE.matcher(trimmed);
+        Double first = null, second = null;
+        while (any.find()) {
+            double val = parseDoubleSafe(any.group(1));
+            if (first == null) first = val;
+            else { second = val; break; }
+        }
+        if (first != null && second != null) {
+            double lat = first, lon = second;
+            if (CoordinatesUtil.isValidLatLon(lat, lon)) return new double[]{lat, lon};
+        }
+        return null;
+    }
+
+    private static double parseDoubleSafe(String s) {
+        try { return Double.parseDouble(s); } catch (Exception e) { return Double.NaN; }
+    }
+}
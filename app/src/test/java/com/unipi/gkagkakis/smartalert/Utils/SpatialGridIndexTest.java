@@ -0,0 +1,135 @@
+package com.unipi.gkagkakis.smartalert.Utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialGridIndexTest {
+
+    @Test
+    public void findWithinRadiusMatchesBruteForce() {
+        Random random = new Random(7);
+        double[] radii = {0.5, 5.0, 50.0, 500.0, 3000.0};
+
+        for (double radiusKm : radii) {
+            int count = 2000;
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+            SpatialGridIndex<Integer> index = new SpatialGridIndex<>(radiusKm);
+            for (int i = 0; i < count; i++) {
+                double[] point = randomPoint(random, radiusKm);
+                latitudes[i] = point[0];
+                longitudes[i] = point[1];
+                index.add(i, point[0], point[1]);
+            }
+            assertEquals(count, index.size());
+
+            List<Integer> found = new ArrayList<>();
+            for (int q = 0; q < 300; q++) {
+                double[] center = randomPoint(random, radiusKm);
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    if (CoordinatesUtil.calculateDistance(center[0], center[1], latitudes[i], longitudes[i]) <= radiusKm) {
+                        expected.add(i);
+                    }
+                }
+
+                found.clear();
+                index.findWithinRadius(center[0], center[1], found);
+                Collections.sort(found);
+                assertEquals("radius " + radiusKm + " around " + center[0] + "," + center[1], expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void findsAcrossAntimeridian() {
+        SpatialGridIndex<String> index = new SpatialGridIndex<>(5.0);
+        index.add("east", 0.0, 179.99);
+
+        List<String> found = new ArrayList<>();
+        index.findWithinRadius(0.0, -179.99, found);
+
+        assertEquals(Collections.singletonList("east"), found);
+    }
+
+    @Test
+    public void findsAcrossPole() {
+        SpatialGridIndex<String> index = new SpatialGridIndex<>(5.0);
+        // About 2.2 km apart over the pole, but half the globe apart in longitude
+        index.add("other side", 89.99, 180.0);
+
+        List<String> found = new ArrayList<>();
+        index.findWithinRadius(89.99, 0.0, found);
+
+        assertEquals(Collections.singletonList("other side"), found);
+    }
+
+    @Test
+    public void removeDropsOnlyThatItem() {
+        SpatialGridIndex<String> index = new SpatialGridIndex<>(5.0);
+        index.add("a", 37.98, 23.72);
+        index.add("b", 37.98, 23.72);
+
+        assertTrue(index.remove("a", 37.98, 23.72));
+        assertFalse(index.remove("a", 37.98, 23.72));
+        assertEquals(1, index.size());
+
+        List<String> found = new ArrayList<>();
+        index.findWithinRadius(37.98, 23.72, found);
+        assertEquals(Collections.singletonList("b"), found);
+    }
+
+    @Test
+    public void removeAtOtherCoordinatesFails() {
+        SpatialGridIndex<String> index = new SpatialGridIndex<>(5.0);
+        index.add("a", 37.98, 23.72);
+
+        assertFalse(index.remove("a", 40.64, 22.94));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void clearEmptiesIndex() {
+        SpatialGridIndex<String> index = new SpatialGridIndex<>(5.0);
+        index.add("a", 37.98, 23.72);
+        index.clear();
+
+        List<String> found = new ArrayList<>();
+        index.findWithinRadius(37.98, 23.72, found);
+        assertEquals(0, index.size());
+        assertTrue(found.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRadius() {
+        new SpatialGridIndex<String>(0);
+    }
+
+    /**
+     * Mostly points anywhere, with some packed near the poles and the antimeridian where cells wrap
+     */
+    private static double[] randomPoint(Random random, double radiusKm) {
+        double spread = Math.min(radiusKm / 111.0 * 3, 30.0);
+        switch (random.nextInt(4)) {
+            case 0:
+                return new double[]{90.0 - random.nextDouble() * spread, random.nextDouble() * 360.0 - 180.0};
+            case 1:
+                return new double[]{random.nextDouble() * 20.0 - 10.0, wrap(180.0 + (random.nextDouble() - 0.5) * spread)};
+            case 2:
+                // Dense cluster, so many points fall right around the radius
+                return new double[]{37.98 + (random.nextDouble() - 0.5) * spread, 23.72 + (random.nextDouble() - 0.5) * spread};
+            default:
+                return new double[]{random.nextDouble() * 180.0 - 90.0, random.nextDouble() * 360.0 - 180.0};
+        }
+    }
+
+    private static double wrap(double longitude) {
+        return longitude > 180.0 ? longitude - 360.0 : longitude;
+    }
+}
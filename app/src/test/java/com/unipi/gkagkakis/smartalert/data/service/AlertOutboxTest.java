@@ -0,0 +1,299 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against a real SQLite database, with a clock the tests move to expire leases
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AlertOutboxTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private Context context;
+    private ManualClockOutbox clock;
+    private AlertOutbox outbox;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        clock = new ManualClockOutbox(context, START);
+        outbox = clock.outbox;
+    }
+
+    @After
+    public void tearDown() {
+        clock.close();
+    }
+
+    @Test
+    public void enqueuedRowStaysClaimedUntilReleased() throws IOException {
+        outbox.enqueue(pending("a", 1), null);
+
+        assertTrue(outbox.nextBatch(10).isEmpty());
+        assertFalse(outbox.claim("a"));
+        assertEquals(1, outbox.count());
+
+        outbox.release("a");
+
+        assertEquals(keys("a"), keys(outbox.nextBatch(10)));
+    }
+
+    @Test
+    public void rowAndImageRoundTrip() throws IOException {
+        PendingAlert alert = pending("a", 1);
+        alert.setImageSize(4000, 3000);
+        alert.setThumbnailUrl("data:image/jpeg;base64,AAAA");
+        byte[] image = {1, 2, 3};
+
+        outbox.enqueue(alert, image);
+        outbox.release("a");
+        PendingAlert stored = outbox.nextBatch(1).get(0);
+
+        assertEquals("user", stored.getUserId());
+        assertEquals("Fire", stored.getType());
+        assertEquals("High", stored.getSeverity());
+        assertEquals("37.98, 23.72", stored.getLocation());
+        assertEquals("description a", stored.getDescription());
+        assertEquals(1, stored.getCreatedAt());
+        assertEquals(4000, stored.getImageWidth());
+        assertEquals(3000, stored.getImageHeight());
+        assertEquals("data:image/jpeg;base64,AAAA", stored.getThumbnailUrl());
+        assertNull(stored.getImageUrl());
+        assertNull(stored.getParentAlertId());
+        assertEquals(0, stored.getAttempts());
+        assertArrayEquals(image, outbox.loadImage(stored));
+    }
+
+    @Test
+    public void enqueueTwiceKeepsTheFirstRow() throws IOException {
+        outbox.enqueue(pending("a", 1), null);
+        outbox.release("a");
+        outbox.recordFailure("a", "offline");
+
+        outbox.enqueue(pending("a", 1), null);
+
+        assertEquals(1, outbox.nextBatch(10).get(0).getAttempts());
+    }
+
+    @Test
+    public void onlyOneSenderHoldsTheClaim() throws IOException {
+        enqueueReleased("a", 1);
+
+        assertTrue(outbox.claim("a"));
+        assertFalse(outbox.claim("a"));
+        assertTrue(outbox.nextBatch(10).isEmpty());
+    }
+
+    @Test
+    public void claimLapsesWhenTheLeaseRunsOut() throws IOException {
+        enqueueReleased("a", 1);
+        assertTrue(outbox.claim("a"));
+
+        clock.advance(AlertOutbox.CLAIM_LEASE_MS - 1);
+        assertFalse(outbox.claim("a"));
+
+        clock.advance(1);
+        assertEquals(keys("a"), keys(outbox.nextBatch(10)));
+        assertTrue(outbox.claim("a"));
+    }
+
+    @Test
+    public void claimFailsForUnknownRow() {
+        assertFalse(outbox.claim("missing"));
+    }
+
+    @Test
+    public void batchPutsOldestFirstAndFailingOnesLast() throws IOException {
+        enqueueReleased("new", 3);
+        enqueueReleased("failing", 1);
+        enqueueReleased("old", 2);
+
+        assertTrue(outbox.claim("failing"));
+        assertFalse(outbox.recordFailure("failing", "offline"));
+
+        assertEquals(keys("old", "new", "failing"), keys(outbox.nextBatch(10)));
+        assertEquals(keys("old", "new"), keys(outbox.nextBatch(2)));
+    }
+
+    @Test
+    public void recordFailureCountsAttemptAndReleasesClaim() throws IOException {
+        enqueueReleased("a", 1);
+        assertTrue(outbox.claim("a"));
+
+        assertFalse(outbox.recordFailure("a", "offline"));
+
+        PendingAlert stored = outbox.nextBatch(10).get(0);
+        assertEquals(1, stored.getAttempts());
+        assertTrue(outbox.claim("a"));
+    }
+
+    @Test
+    public void recordTimeoutCountsAttemptButKeepsClaimUntilLeaseRunsOut() throws IOException {
+        enqueueReleased("a", 1);
+        assertTrue(outbox.claim("a"));
+
+        assertFalse(outbox.recordTimeout("a", "Timed out"));
+
+        assertTrue(outbox.nextBatch(10).isEmpty());
+        assertFalse(outbox.claim("a"));
+        assertEquals(1, outbox.count());
+
+        clock.advance(AlertOutbox.CLAIM_LEASE_MS);
+        assertEquals(1, outbox.nextBatch(10).get(0).getAttempts());
+        assertTrue(outbox.claim("a"));
+    }
+
+    @Test
+    public void lastFailedAttemptDeadLettersTheRow() throws IOException {
+        enqueueReleased("a", 1);
+        enqueueReleased("b", 2);
+
+        for (int attempt = 1; attempt < AlertOutbox.MAX_ATTEMPTS; attempt++) {
+            assertTrue(outbox.claim("a"));
+            assertFalse("attempt " + attempt, outbox.recordFailure("a", "rejected"));
+        }
+        assertTrue(outbox.claim("a"));
+        assertTrue(outbox.recordFailure("a", "rejected"));
+
+        assertEquals(keys("b"), keys(outbox.nextBatch(10)));
+        assertEquals(1, outbox.count());
+        assertFalse(outbox.claim("a"));
+    }
+
+    @Test
+    public void lastTimedOutAttemptDeadLettersTheRow() throws IOException {
+        PendingAlert alert = pending("a", 1);
+        alert.setAttempts(AlertOutbox.MAX_ATTEMPTS - 1);
+        outbox.enqueue(alert, null);
+
+        assertTrue(outbox.recordTimeout("a", "Timed out"));
+
+        clock.advance(AlertOutbox.CLAIM_LEASE_MS);
+        assertTrue(outbox.nextBatch(10).isEmpty());
+        assertEquals(0, outbox.count());
+        assertFalse(outbox.claim("a"));
+    }
+
+    @Test
+    public void markedParentAndImageSurviveReload() throws IOException {
+        enqueueReleased("a", 1);
+
+        outbox.markParent("a", "parent");
+        outbox.markImageStored("a", "https://example.com/a.jpg", "data:image/jpeg;base64,AAAA");
+
+        ManualClockOutbox reopened = new ManualClockOutbox(context, clock.now());
+        PendingAlert stored = reopened.outbox.nextBatch(1).get(0);
+        reopened.close();
+        assertEquals("parent", stored.getParentAlertId());
+        assertEquals("https://example.com/a.jpg", stored.getImageUrl());
+        assertEquals("data:image/jpeg;base64,AAAA", stored.getThumbnailUrl());
+    }
+
+    @Test
+    public void removeDropsRowAndImage() throws IOException {
+        outbox.enqueue(pending("a", 1), new byte[]{1});
+        outbox.release("a");
+        PendingAlert stored = outbox.nextBatch(1).get(0);
+        File image = new File(stored.getImagePath());
+        assertTrue(image.exists());
+
+        outbox.remove(stored);
+
+        assertEquals(0, outbox.count());
+        assertFalse(image.exists());
+        assertNull(outbox.loadImage(stored));
+    }
+
+    @Test
+    public void upgradeFromVersionOneKeepsUnsentAlerts() {
+        // The table as the first release created it, before claims, dead letters and parents
+        File file = context.getDatabasePath("alert_outbox.db");
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        try (SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null)) {
+            db.execSQL("CREATE TABLE pending_alerts ("
+                    + "idempotency_key TEXT PRIMARY KEY NOT NULL, "
+                    + "user_id TEXT NOT NULL, "
+                    + "type TEXT NOT NULL, "
+                    + "severity TEXT NOT NULL, "
+                    + "location TEXT NOT NULL, "
+                    + "description TEXT NOT NULL, "
+                    + "created_at INTEGER NOT NULL, "
+                    + "image_path TEXT, "
+                    + "image_width INTEGER NOT NULL DEFAULT 0, "
+                    + "image_height INTEGER NOT NULL DEFAULT 0, "
+                    + "thumbnail_url TEXT, "
+                    + "image_url TEXT, "
+                    + "attempts INTEGER NOT NULL DEFAULT 0, "
+                    + "last_error TEXT)");
+            ContentValues values = new ContentValues();
+            values.put("idempotency_key", "old");
+            values.put("user_id", "user");
+            values.put("type", "Fire");
+            values.put("severity", "High");
+            values.put("location", "37.98, 23.72");
+            values.put("description", "from version one");
+            values.put("created_at", 1);
+            values.put("attempts", 2);
+            db.insertOrThrow("pending_alerts", null, values);
+            db.setVersion(1);
+        }
+
+        // Opens the version one file; the outbox from setUp never opened its database
+        clock.close();
+        clock = new ManualClockOutbox(context, START);
+        AlertOutbox upgraded = clock.outbox;
+
+        List<PendingAlert> batch = upgraded.nextBatch(10);
+        assertEquals(keys("old"), keys(batch));
+        assertEquals("from version one", batch.get(0).getDescription());
+        assertEquals(2, batch.get(0).getAttempts());
+        assertNull(batch.get(0).getParentAlertId());
+        assertEquals(1, upgraded.count());
+
+        assertTrue(upgraded.claim("old"));
+        upgraded.markParent("old", "parent");
+        upgraded.release("old");
+        assertEquals("parent", upgraded.nextBatch(1).get(0).getParentAlertId());
+    }
+
+    private void enqueueReleased(String key, long createdAt) throws IOException {
+        outbox.enqueue(pending(key, createdAt), null);
+        outbox.release(key);
+    }
+
+    private static PendingAlert pending(String key, long createdAt) {
+        return new PendingAlert(key, "user", "Fire", "High", "37.98, 23.72", "description " + key, createdAt);
+    }
+
+    private static List<String> keys(String... keys) {
+        return Arrays.asList(keys);
+    }
+
+    private static List<String> keys(List<PendingAlert> alerts) {
+        List<String> keys = new ArrayList<>();
+        for (PendingAlert alert : alerts) {
+            keys.add(alert.getIdempotencyKey());
+        }
+        return keys;
+    }
+}
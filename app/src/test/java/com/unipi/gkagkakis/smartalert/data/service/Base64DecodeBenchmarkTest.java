@@ -0,0 +1,125 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+
+import com.unipi.gkagkakis.smartalert.Benchmarks;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap allocated while decoding a Base64 photo: the stream over the data URI against
+ * the substring and byte[] copies it replaced
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class Base64DecodeBenchmarkTest {
+
+    // BitmapFactory.decodeStream reads through a buffer of this size
+    private static final int DECODE_BUFFER_BYTES = 16 * 1024;
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void payloadAllocations() {
+        byte[] photo = new byte[768 * 1024];
+        new Random(14).nextBytes(photo);
+        String dataUri = dataUri(photo);
+
+        assertArrayEquals(photo, drain(Base64ImageService.openBase64Stream(dataUri)));
+        assertArrayEquals(photo, copiedPayload(dataUri));
+
+        long streamed = Benchmarks.allocatedBytes(5, () -> Benchmarks.consume(drainedLength(dataUri)));
+        long copied = Benchmarks.allocatedBytes(5, () -> Benchmarks.consume(copiedPayload(dataUri)));
+        System.out.printf("Base64 payload of %,d chars: stream %,d bytes, substring + decode %,d bytes%n",
+                dataUri.length(), streamed, copied);
+        assertTrue(streamed * 10 < copied);
+    }
+
+    @Test
+    public void bitmapAllocations() {
+        String dataUri = dataUri(noisePng(512, 512));
+
+        long streamed = Benchmarks.allocatedBytes(3,
+                () -> Benchmarks.consume(Base64ImageService.decodeBase64ToBitmap(dataUri, 256, 256)));
+        long copied = Benchmarks.allocatedBytes(3,
+                () -> Benchmarks.consume(decodeLikeBefore(dataUri, 256, 256)));
+        System.out.printf("Bitmap from %,d char data URI: stream %,d bytes, substring + decode %,d bytes%n",
+                dataUri.length(), streamed, copied);
+        assertTrue(streamed < copied);
+    }
+
+    /**
+     * The decode path before streaming, kept here for comparison
+     */
+    private static Bitmap decodeLikeBefore(String base64Image, int reqWidth, int reqHeight) {
+        return Base64ImageService.decodeSampledBitmap(copiedPayload(base64Image), reqWidth, reqHeight);
+    }
+
+    private static byte[] copiedPayload(String base64Image) {
+        String base64Data = base64Image.substring(base64Image.indexOf(",") + 1);
+        return Base64.decode(base64Data, Base64.DEFAULT);
+    }
+
+    private static int drainedLength(String dataUri) {
+        int total = 0;
+        byte[] buffer = new byte[DECODE_BUFFER_BYTES];
+        try (InputStream input = Base64ImageService.openBase64Stream(dataUri)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                total += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total;
+    }
+
+    private static byte[] drain(InputStream input) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[DECODE_BUFFER_BYTES];
+        try (InputStream in = input) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    private static String dataUri(byte[] data) {
+        // DEFAULT wraps lines, like the payloads stored with alerts
+        return "data:image/png;base64," + Base64.encodeToString(data, Base64.DEFAULT);
+    }
+
+    /**
+     * Noise compresses poorly, so the PNG is about as large as a camera photo
+     */
+    private static byte[] noisePng(int width, int height) {
+        int[] pixels = new int[width * height];
+        Random random = new Random(width);
+        Arrays.setAll(pixels, i -> 0xFF000000 | random.nextInt(0x1000000));
+        Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+        return output.toByteArray();
+    }
+}
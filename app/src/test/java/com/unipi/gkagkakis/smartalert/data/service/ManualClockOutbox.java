@@ -0,0 +1,31 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An AlertOutbox whose clock only moves when a test says so, for tests outside this package too
+ */
+public class ManualClockOutbox {
+
+    public final AlertOutbox outbox;
+    private long now;
+
+    public ManualClockOutbox(@NonNull Context context, long start) {
+        this.now = start;
+        this.outbox = new AlertOutbox(context, () -> now);
+    }
+
+    public long now() {
+        return now;
+    }
+
+    public void advance(long millis) {
+        now += millis;
+    }
+
+    public void close() {
+        outbox.close();
+    }
+}
@@ -0,0 +1,190 @@
+package com.unipi.gkagkakis.smartalert.data.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sessions are read back through a second store, as a restarted process would
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UploadSessionStoreTest {
+
+    private static final String PATH = "alert_images/user_1.jpg";
+    private static final Uri SESSION_URI = Uri.parse("https://storage.example.com/upload?upload_id=abc");
+
+    private final long[] now = {1_700_000_000_000L};
+    private Context context;
+    private UploadSessionStore store;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        store = newStore();
+    }
+
+    @Test
+    public void createStoresBytesAndSession() throws IOException {
+        byte[] data = {1, 2, 3, 4};
+        String key = UploadSessionStore.keyFor(data);
+
+        UploadSessionStore.Session created = store.create(key, PATH, data);
+        UploadSessionStore.Session found = newStore().find(key);
+
+        assertArrayEquals(data, Files.readAllBytes(created.file.toPath()));
+        assertNotNull(found);
+        assertEquals(PATH, found.storagePath);
+        assertEquals(created.file, found.file);
+        assertEquals(now[0], found.createdAt);
+        assertNull(found.sessionUri);
+        assertEquals(0, found.bytesUploaded);
+    }
+
+    @Test
+    public void keyIsTheContentHash() {
+        assertEquals(UploadSessionStore.keyFor(new byte[]{1, 2, 3}), UploadSessionStore.keyFor(new byte[]{1, 2, 3}));
+        assertNotEquals(UploadSessionStore.keyFor(new byte[]{1, 2, 3}), UploadSessionStore.keyFor(new byte[]{1, 2, 4}));
+    }
+
+    @Test
+    public void findWithoutSessionReturnsNull() {
+        assertNull(store.find(UploadSessionStore.keyFor(new byte[]{9})));
+    }
+
+    @Test
+    public void findDropsSessionWhoseFileIsGone() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+        assertTrue(session.file.delete());
+
+        assertNull(store.find(session.key));
+        assertFalse(prefs().contains(session.key));
+    }
+
+    @Test
+    public void findDropsExpiredSession() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+
+        now[0] += TimeUnit.HOURS.toMillis(24);
+        assertNotNull(store.find(session.key));
+
+        now[0] += 1;
+        assertNull(store.find(session.key));
+        assertFalse(session.file.exists());
+        assertFalse(prefs().contains(session.key));
+    }
+
+    @Test
+    public void findDropsUnreadableSession() {
+        prefs().edit().putString("broken", "{not json").commit();
+
+        assertNull(store.find("broken"));
+        assertFalse(prefs().contains("broken"));
+    }
+
+    @Test
+    public void updateProgressPersistsSessionUriAndCoarseProgress() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+
+        store.updateProgress(session, SESSION_URI, 1000);
+        assertPersisted(session.key, SESSION_URI, 1000);
+
+        // Small steps are only kept in memory
+        store.updateProgress(session, SESSION_URI, 100 * 1024);
+        assertPersisted(session.key, SESSION_URI, 1000);
+
+        store.updateProgress(session, SESSION_URI, 1000 + 256 * 1024);
+        assertPersisted(session.key, SESSION_URI, 1000 + 256 * 1024);
+    }
+
+    @Test
+    public void updateProgressPersistsNewSessionUriRightAway() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+        Uri otherUri = Uri.parse("https://storage.example.com/upload?upload_id=def");
+
+        store.updateProgress(session, SESSION_URI, 1000);
+        store.updateProgress(session, otherUri, 1500);
+
+        assertPersisted(session.key, otherUri, 1500);
+    }
+
+    @Test
+    public void updateProgressWithoutSessionUriKeepsTheSavedOne() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+
+        store.updateProgress(session, SESSION_URI, 1000);
+        store.updateProgress(session, null, 1000 + 512 * 1024);
+
+        assertPersisted(session.key, SESSION_URI, 1000 + 512 * 1024);
+    }
+
+    @Test
+    public void discardSessionUriKeepsFileForFreshUpload() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+        store.updateProgress(session, SESSION_URI, 300 * 1024);
+
+        store.discardSessionUri(session);
+
+        assertPersisted(session.key, null, 0);
+        assertTrue(session.file.exists());
+    }
+
+    @Test
+    public void completeDropsSessionAndFile() throws IOException {
+        UploadSessionStore.Session session = create(new byte[]{1});
+
+        store.complete(session);
+
+        assertNull(newStore().find(session.key));
+        assertFalse(session.file.exists());
+    }
+
+    @Test
+    public void pruneExpiredDropsOldSessionsAndOrphanedFiles() throws IOException {
+        UploadSessionStore.Session old = create(new byte[]{1});
+        now[0] += TimeUnit.HOURS.toMillis(20);
+        UploadSessionStore.Session recent = create(new byte[]{2});
+        File orphan = new File(recent.file.getParentFile(), "orphan.jpg");
+        assertTrue(orphan.createNewFile());
+        now[0] += TimeUnit.HOURS.toMillis(5);
+
+        store.pruneExpired();
+
+        assertFalse(prefs().contains(old.key));
+        assertFalse(old.file.exists());
+        assertFalse(orphan.exists());
+        assertNotNull(newStore().find(recent.key));
+        assertTrue(recent.file.exists());
+    }
+
+    private UploadSessionStore newStore() {
+        return new UploadSessionStore(context, () -> now[0]);
+    }
+
+    private UploadSessionStore.Session create(byte[] data) throws IOException {
+        return store.create(UploadSessionStore.keyFor(data), PATH, data);
+    }
+
+    private void assertPersisted(String key, Uri sessionUri, long bytesUploaded) {
+        UploadSessionStore.Session found = newStore().find(key);
+        assertNotNull(found);
+        assertEquals(sessionUri, found.sessionUri);
+        assertEquals(bytesUploaded, found.bytesUploaded);
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences("image_upload_sessions", Context.MODE_PRIVATE);
+    }
+}
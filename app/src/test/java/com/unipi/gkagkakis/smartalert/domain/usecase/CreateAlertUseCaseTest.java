@@ -0,0 +1,305 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.unipi.gkagkakis.smartalert.data.service.AlertOutbox;
+import com.unipi.gkagkakis.smartalert.data.service.ManualClockOutbox;
+import com.unipi.gkagkakis.smartalert.domain.repository.SubmittedAlertRepository;
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Which alert a report without an image is filed under, and what the outbox remembers of that choice
+ * The repository is a fake answering on the calling thread; the outbox is a real one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CreateAlertUseCaseTest {
+
+    private static final String KEY = "report";
+    private static final String LOCATION = "37.98, 23.72";
+
+    private Context context;
+    private ManualClockOutbox clock;
+    private AlertOutbox outbox;
+    private FakeRepository repository;
+    private CreateAlertUseCase useCase;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        clock = new ManualClockOutbox(context, 1_700_000_000_000L);
+        outbox = clock.outbox;
+        repository = new FakeRepository();
+        useCase = new CreateAlertUseCase(repository, null, null, appContext -> outbox);
+    }
+
+    @After
+    public void tearDown() {
+        clock.close();
+    }
+
+    @Test
+    public void attachesToTheNearestCandidate() throws IOException {
+        repository.candidates = Arrays.asList(alert("nearest"), alert("farther"));
+
+        Result result = submit(pending(LOCATION));
+
+        assertEquals("nearest", result.alertId);
+        assertEquals(Arrays.asList("nearest"), repository.attachedTo);
+        assertTrue(repository.created.isEmpty());
+        assertEquals("nearest", storedParent());
+    }
+
+    @Test
+    public void looksForSameTypeInTheLastHalfHourAroundTheReport() throws IOException {
+        PendingAlert pending = pending(LOCATION);
+
+        submit(pending);
+
+        assertEquals("Fire", repository.searchedType);
+        assertEquals(37.98, repository.searchedLatitude, 1e-9);
+        assertEquals(23.72, repository.searchedLongitude, 1e-9);
+        assertEquals(1.0, repository.searchedRadiusKm, 1e-9);
+        assertEquals(pending.getCreatedAt() - TimeUnit.MINUTES.toMillis(30), repository.searchedSince.getTime());
+    }
+
+    @Test
+    public void ownAlertAmongCandidatesIsNotAttachedToAnother() throws IOException {
+        // A replay of a report that already went through as a new alert before its parent was stored
+        repository.candidates = Arrays.asList(alert("nearest"), alert(KEY));
+
+        Result result = submit(pending(LOCATION));
+
+        assertEquals(KEY, result.alertId);
+        assertTrue(repository.attachedTo.isEmpty());
+        assertEquals(Arrays.asList(KEY), repository.created);
+        assertEquals(KEY, storedParent());
+    }
+
+    @Test
+    public void noCandidatesCreatesNewAlert() throws IOException {
+        Result result = submit(pending(LOCATION));
+
+        assertEquals(KEY, result.alertId);
+        assertEquals(Arrays.asList(KEY), repository.created);
+        assertEquals(KEY, storedParent());
+    }
+
+    @Test
+    public void deletedCandidateFallsBackToNewAlert() throws IOException {
+        repository.candidates = Arrays.asList(alert("reviewed"));
+        repository.attachFailures.put("reviewed",
+                new FirebaseFirestoreException("gone", FirebaseFirestoreException.Code.NOT_FOUND));
+
+        Result result = submit(pending(LOCATION));
+
+        assertEquals(KEY, result.alertId);
+        assertEquals(Arrays.asList("reviewed"), repository.attachedTo);
+        assertEquals(Arrays.asList(KEY), repository.created);
+        // A replay must not try the deleted alert again
+        assertEquals(KEY, storedParent());
+    }
+
+    @Test
+    public void otherAttachFailureKeepsTheCandidateForTheReplay() throws IOException {
+        repository.candidates = Arrays.asList(alert("nearest"));
+        repository.attachFailures.put("nearest",
+                new FirebaseFirestoreException("offline", FirebaseFirestoreException.Code.UNAVAILABLE));
+
+        Result result = submit(pending(LOCATION));
+
+        assertNotNull(result.error);
+        assertTrue(repository.created.isEmpty());
+        assertEquals("nearest", storedParent());
+    }
+
+    @Test
+    public void failedLookupCreatesNewAlert() throws IOException {
+        repository.findFailure = new Exception("index missing");
+
+        Result result = submit(pending(LOCATION));
+
+        assertEquals(KEY, result.alertId);
+        assertEquals(Arrays.asList(KEY), repository.created);
+        assertEquals(KEY, storedParent());
+    }
+
+    @Test
+    public void locationWithoutCoordinatesCreatesNewAlertWithoutLookup() throws IOException {
+        Result result = submit(pending("Near the old harbour"));
+
+        assertEquals(KEY, result.alertId);
+        assertNull(repository.searchedType);
+        assertEquals(Arrays.asList(KEY), repository.created);
+        assertEquals(KEY, storedParent());
+    }
+
+    @Test
+    public void replayKeepsTheStoredParentWithoutLookup() throws IOException {
+        PendingAlert pending = pending(LOCATION);
+        pending.setParentAlertId("chosen");
+        repository.candidates = Arrays.asList(alert("nearest"));
+
+        Result result = submit(pending);
+
+        assertEquals("chosen", result.alertId);
+        assertNull(repository.searchedType);
+        assertEquals(Arrays.asList("chosen"), repository.attachedTo);
+    }
+
+    /**
+     * Stores the row as enqueueAndSubmit would, then submits it and waits for the outcome
+     */
+    private Result submit(PendingAlert pending) throws IOException {
+        outbox.enqueue(pending, null);
+        Result result = new Result();
+        useCase.submitPending(context, pending, null, result);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!result.done && System.nanoTime() < deadline) {
+            // The parent is stored on the outbox executor, which then continues on the main looper
+            shadowOf(Looper.getMainLooper()).idle();
+            if (!result.done) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        assertTrue("submission did not finish", result.done);
+        return result;
+    }
+
+    /**
+     * The parent as a replay would read it back from the outbox
+     */
+    private String storedParent() {
+        outbox.release(KEY);
+        return outbox.nextBatch(1).get(0).getParentAlertId();
+    }
+
+    private static PendingAlert pending(String location) {
+        return new PendingAlert(KEY, "user", "Fire", "High", location, "description", 1_700_000_000_000L);
+    }
+
+    private static SubmittedAlert alert(String id) {
+        return new SubmittedAlert(id, "Fire", "High", LOCATION, "description", null, "other", new Date(1_700_000_000_000L));
+    }
+
+    private static class Result implements CreateAlertUseCase.SubmitCallback {
+        boolean done;
+        String alertId;
+        Exception error;
+
+        @Override
+        public void onSuccess(@NonNull String alertId) {
+            done = true;
+            this.alertId = alertId;
+        }
+
+        @Override
+        public void onError(@NonNull Exception e) {
+            done = true;
+            error = e;
+        }
+
+        @Override
+        public void onProgress(int progress) {
+        }
+    }
+
+    private static class FakeRepository implements SubmittedAlertRepository {
+        List<SubmittedAlert> candidates = Collections.emptyList();
+        Exception findFailure;
+        final Map<String, Exception> attachFailures = new HashMap<>();
+
+        String searchedType;
+        double searchedLatitude;
+        double searchedLongitude;
+        double searchedRadiusKm;
+        Date searchedSince;
+        final List<String> attachedTo = new ArrayList<>();
+        final List<String> created = new ArrayList<>();
+
+        @Override
+        public void findRecentNearby(@NonNull String type, double latitude, double longitude, double radiusKm,
+                                     @NonNull Date since, @NonNull FindNearbyCallback callback) {
+            searchedType = type;
+            searchedLatitude = latitude;
+            searchedLongitude = longitude;
+            searchedRadiusKm = radiusKm;
+            searchedSince = since;
+            if (findFailure != null) {
+                callback.onError(findFailure);
+            } else {
+                callback.onSuccess(candidates);
+            }
+        }
+
+        @Override
+        public void attachReport(@NonNull String alertId, @NonNull SubmittedAlert report, @NonNull String idempotencyKey,
+                                 @NonNull CreateSubmittedAlertCallback callback) {
+            attachedTo.add(alertId);
+            Exception failure = attachFailures.get(alertId);
+            if (failure != null) {
+                callback.onError(failure);
+            } else {
+                callback.onSuccess(alertId);
+            }
+        }
+
+        @Override
+        public void createSubmittedAlert(@NonNull SubmittedAlert submittedAlert, @NonNull String idempotencyKey,
+                                         @NonNull CreateSubmittedAlertCallback callback) {
+            created.add(idempotencyKey);
+            callback.onSuccess(idempotencyKey);
+        }
+
+        @Override
+        public void createSubmittedAlert(@NonNull SubmittedAlert submittedAlert, @NonNull CreateSubmittedAlertCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getAllSubmittedAlerts(@NonNull GetAllSubmittedAlertsCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public ListenerHandle listenToSubmittedAlerts(@NonNull SubmittedAlertChangesListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteSubmittedAlert(@NonNull String alertId, @NonNull DeleteSubmittedAlertCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
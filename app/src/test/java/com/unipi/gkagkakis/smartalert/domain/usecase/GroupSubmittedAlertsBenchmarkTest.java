@@ -0,0 +1,55 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import com.unipi.gkagkakis.smartalert.Benchmarks;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grid-indexed grouping against the pairwise scan it replaced, on incident-shaped queues
+ */
+public class GroupSubmittedAlertsBenchmarkTest {
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void grouping1k() {
+        compare(1_000, 5);
+    }
+
+    @Test
+    public void grouping10k() {
+        compare(10_000, 3);
+    }
+
+    @Test
+    public void grouping100k() {
+        // The pairwise scan takes long enough at this size that one run is plenty
+        compare(100_000, 1);
+    }
+
+    private static void compare(int count, int runs) {
+        List<SubmittedAlert> alerts = PairwiseGrouping.incidentQueue(new Random(count), count);
+        GroupSubmittedAlertsUseCase useCase = new GroupSubmittedAlertsUseCase();
+
+        List<SubmittedAlertGroup> indexed = useCase.groupAlerts(alerts);
+        List<SubmittedAlertGroup> pairwise = PairwiseGrouping.groupAlerts(alerts);
+        assertEquals(PairwiseGrouping.ids(pairwise), PairwiseGrouping.ids(indexed));
+
+        double indexedMs = Benchmarks.bestMillis(3, 5, () -> Benchmarks.consume(useCase.groupAlerts(alerts)));
+        double pairwiseMs = Benchmarks.bestMillis(runs > 1 ? 1 : 0, runs,
+                () -> Benchmarks.consume(PairwiseGrouping.groupAlerts(alerts)));
+        System.out.printf("grouping %,d alerts into %,d groups: grid %.1f ms, pairwise %.1f ms (%.0fx)%n",
+                count, indexed.size(), indexedMs, pairwiseMs, pairwiseMs / indexedMs);
+    }
+}
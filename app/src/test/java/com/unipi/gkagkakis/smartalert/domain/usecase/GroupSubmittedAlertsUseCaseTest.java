@@ -0,0 +1,69 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GroupSubmittedAlertsUseCaseTest {
+
+    private final GroupSubmittedAlertsUseCase useCase = new GroupSubmittedAlertsUseCase();
+
+    @Test
+    public void matchesPairwiseGrouping() {
+        Random random = new Random(1);
+        for (int count : new int[]{1, 10, 500, 3000}) {
+            List<SubmittedAlert> alerts = PairwiseGrouping.incidentQueue(random, count);
+
+            assertEquals("queue of " + count,
+                    PairwiseGrouping.ids(PairwiseGrouping.groupAlerts(alerts)),
+                    PairwiseGrouping.ids(useCase.groupAlerts(alerts)));
+        }
+    }
+
+    @Test
+    public void groupsAroundFirstAlertNotTransitively() {
+        // b is within 5 km of both, but a and c are 8 km apart
+        SubmittedAlert a = alert("a", "0.0, 0.0", 3);
+        SubmittedAlert b = alert("b", "0.0, 0.036", 2);
+        SubmittedAlert c = alert("c", "0.0, 0.072", 1);
+
+        List<SubmittedAlertGroup> groups = useCase.groupAlerts(Arrays.asList(a, b, c));
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")), PairwiseGrouping.ids(groups));
+    }
+
+    @Test
+    public void groupLocationCountsNearbyAlerts() {
+        SubmittedAlert a = alert("a", "37.98, 23.72", 2);
+        SubmittedAlert b = alert("b", "37.981, 23.721", 1);
+        SubmittedAlert alone = alert("alone", "40.64, 22.94", 0);
+
+        List<SubmittedAlertGroup> groups = useCase.groupAlerts(Arrays.asList(a, b, alone));
+
+        assertEquals("37.98, 23.72 (2 nearby alerts)", groups.get(0).getGroupLocation());
+        assertEquals("40.64, 22.94", groups.get(1).getGroupLocation());
+    }
+
+    @Test
+    public void alertsWithoutLocationStayAlone() {
+        SubmittedAlert first = alert("first", null, 1);
+        SubmittedAlert second = alert("second", null, 0);
+
+        List<SubmittedAlertGroup> groups = useCase.groupAlerts(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(Arrays.asList("first"), Arrays.asList("second")), PairwiseGrouping.ids(groups));
+    }
+
+    private static SubmittedAlert alert(String id, String location, int minutes) {
+        return new SubmittedAlert(id, "Fire", "High", location, "description", null, "user",
+                new Date(1_700_000_000_000L + minutes * 60_000L));
+    }
+}
@@ -0,0 +1,220 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertChange;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds IncrementalAlertGroupingUseCase the same kind of change batches the Firestore listener delivers
+ */
+public class IncrementalAlertGroupingUseCaseTest {
+
+    // Degrees of longitude per kilometer at the equator
+    private static final double DEGREES_PER_KM = 1 / 111.195;
+
+    private IncrementalAlertGroupingUseCase grouping;
+    private long clock;
+
+    @Before
+    public void setUp() {
+        grouping = new IncrementalAlertGroupingUseCase();
+        clock = 1_700_000_000_000L;
+    }
+
+    @Test
+    public void initialFeedMatchesBatchGrouping() {
+        Random random = new Random(42);
+        String[] rawLocations = {"Athens", "ATHENS", "Piraeus", "piraeus", "Patras"};
+        double[][] centers = {{37.98, 23.72}, {38.02, 23.80}, {40.64, 22.94}, {0.0, 179.98}};
+
+        for (int run = 0; run < 20; run++) {
+            List<SubmittedAlert> alerts = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                String location;
+                int kind = random.nextInt(20);
+                if (kind == 0) {
+                    location = null;
+                } else if (kind < 3) {
+                    location = rawLocations[random.nextInt(rawLocations.length)];
+                } else {
+                    double[] center = centers[random.nextInt(centers.length)];
+                    double lon = center[1] + (random.nextDouble() - 0.5) * 0.2;
+                    if (lon > 180) lon -= 360;
+                    location = String.format(Locale.ROOT, "%.6f, %.6f",
+                            center[0] + (random.nextDouble() - 0.5) * 0.2, lon);
+                }
+                alerts.add(alert("a" + run + "-" + i, location));
+            }
+            // Display order is most recent first
+            Collections.reverse(alerts);
+
+            grouping.reset();
+            grouping.applyChanges(added(alerts));
+
+            List<SubmittedAlertGroup> expected = new GroupSubmittedAlertsUseCase().groupAlerts(alerts);
+            assertEquals(ids(expected), ids(grouping.snapshot()));
+        }
+    }
+
+    @Test
+    public void liveAlertJoinsExistingGroupInsteadOfSeedingLikeBatch() {
+        SubmittedAlert far = alert("far", kmEast(6));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Arrays.asList(seed, far)));
+        assertEquals(Arrays.asList(Arrays.asList("seed"), Arrays.asList("far")), ids(grouping.snapshot()));
+
+        // In range of both groups; the batch pass would let it seed a group swallowing both
+        SubmittedAlert between = alert("between", kmEast(3));
+        grouping.applyChanges(added(Collections.singletonList(between)));
+
+        assertEquals(Arrays.asList(Arrays.asList("seed", "between"), Arrays.asList("far")), ids(grouping.snapshot()));
+        List<SubmittedAlert> displayOrder = Arrays.asList(between, seed, far);
+        assertEquals(Collections.singletonList(Arrays.asList("between", "seed", "far")),
+                ids(new GroupSubmittedAlertsUseCase().groupAlerts(displayOrder)));
+
+        // A fresh feed regroups like the batch pass
+        grouping.reset();
+        grouping.applyChanges(added(displayOrder));
+        assertEquals(ids(new GroupSubmittedAlertsUseCase().groupAlerts(displayOrder)), ids(grouping.snapshot()));
+    }
+
+    @Test
+    public void removingSeedRegroupsRemainingMembers() {
+        SubmittedAlert west = alert("west", kmEast(-4));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        SubmittedAlert east = alert("east", kmEast(4));
+        grouping.applyChanges(added(Arrays.asList(seed, west, east)));
+        assertEquals(Collections.singletonList(Arrays.asList("seed", "west", "east")), ids(grouping.snapshot()));
+
+        grouping.applyChanges(Collections.singletonList(new SubmittedAlertChange(SubmittedAlertChange.Type.REMOVED, seed)));
+
+        // 8 km apart, so without the seed they no longer share a group
+        assertEquals(Arrays.asList(Arrays.asList("east"), Arrays.asList("west")), ids(grouping.snapshot()));
+    }
+
+    @Test
+    public void removingMemberKeepsGroup() {
+        SubmittedAlert member = alert("member", kmEast(2));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Arrays.asList(seed, member)));
+
+        grouping.applyChanges(Collections.singletonList(new SubmittedAlertChange(SubmittedAlertChange.Type.REMOVED, member)));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("seed")), ids(grouping.snapshot()));
+    }
+
+    @Test
+    public void modifiedLocationMovesAlert() {
+        SubmittedAlert member = alert("member", kmEast(2));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Arrays.asList(seed, member)));
+
+        SubmittedAlert moved = new SubmittedAlert("member", "Fire", "High", kmEast(50), "moved",
+                null, "user", member.getCreatedAt());
+        grouping.applyChanges(Collections.singletonList(new SubmittedAlertChange(SubmittedAlertChange.Type.MODIFIED, moved)));
+
+        assertEquals(Arrays.asList(Arrays.asList("seed"), Arrays.asList("member")), ids(grouping.snapshot()));
+    }
+
+    @Test
+    public void modifiedContentKeepsGroupAndUpdatesAlert() {
+        SubmittedAlert member = alert("member", kmEast(2));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Arrays.asList(seed, member)));
+
+        SubmittedAlert edited = new SubmittedAlert("member", "Fire", "Low", member.getLocation(), "edited",
+                null, "user", member.getCreatedAt());
+        grouping.applyChanges(Collections.singletonList(new SubmittedAlertChange(SubmittedAlertChange.Type.MODIFIED, edited)));
+
+        List<SubmittedAlertGroup> groups = grouping.snapshot();
+        assertEquals(Collections.singletonList(Arrays.asList("seed", "member")), ids(groups));
+        assertSame(edited, groups.get(0).getSubmittedAlerts().get(1));
+    }
+
+    @Test
+    public void repeatedAddIsTreatedAsModification() {
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Collections.singletonList(seed)));
+        grouping.applyChanges(added(Collections.singletonList(seed)));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("seed")), ids(grouping.snapshot()));
+    }
+
+    @Test
+    public void unchangedGroupsReuseSnapshot() {
+        SubmittedAlert far = alert("far", kmEast(20));
+        SubmittedAlert seed = alert("seed", kmEast(0));
+        grouping.applyChanges(added(Arrays.asList(seed, far)));
+        List<SubmittedAlertGroup> before = grouping.snapshot();
+
+        grouping.applyChanges(added(Collections.singletonList(alert("near", kmEast(1)))));
+        List<SubmittedAlertGroup> after = grouping.snapshot();
+
+        assertNotSame(groupOf(before, "seed"), groupOf(after, "seed"));
+        assertSame(groupOf(before, "far"), groupOf(after, "far"));
+    }
+
+    @Test
+    public void rawLocationsGroupIgnoringCase() {
+        SubmittedAlert upper = alert("upper", "ATHENS");
+        SubmittedAlert lower = alert("lower", "athens");
+        SubmittedAlert other = alert("other", "Patras");
+        grouping.applyChanges(added(Arrays.asList(other, lower, upper)));
+
+        assertEquals(Arrays.asList(Arrays.asList("other"), Arrays.asList("lower", "upper")), ids(grouping.snapshot()));
+    }
+
+    /**
+     * Each alert is created one minute after the previous one
+     */
+    private SubmittedAlert alert(String id, String location) {
+        clock += 60_000;
+        return new SubmittedAlert(id, "Fire", "High", location, "description", null, "user", new Date(clock));
+    }
+
+    private static String kmEast(double km) {
+        return String.format(Locale.ROOT, "%.6f, %.6f", 0.0, km * DEGREES_PER_KM);
+    }
+
+    private static List<SubmittedAlertChange> added(List<SubmittedAlert> alerts) {
+        List<SubmittedAlertChange> changes = new ArrayList<>();
+        for (SubmittedAlert alert : alerts) {
+            changes.add(new SubmittedAlertChange(SubmittedAlertChange.Type.ADDED, alert));
+        }
+        return changes;
+    }
+
+    private static List<List<String>> ids(List<SubmittedAlertGroup> groups) {
+        List<List<String>> result = new ArrayList<>();
+        for (SubmittedAlertGroup group : groups) {
+            List<String> members = new ArrayList<>();
+            for (SubmittedAlert alert : group.getSubmittedAlerts()) {
+                members.add(alert.getId());
+            }
+            result.add(members);
+        }
+        return result;
+    }
+
+    private static SubmittedAlertGroup groupOf(List<SubmittedAlertGroup> groups, String firstAlertId) {
+        for (SubmittedAlertGroup group : groups) {
+            if (group.getFirstAlert().getId().equals(firstAlertId)) {
+                return group;
+            }
+        }
+        throw new AssertionError("No group starting with " + firstAlertId);
+    }
+}
@@ -0,0 +1,108 @@
+package com.unipi.gkagkakis.smartalert.domain.usecase;
+
+import com.unipi.gkagkakis.smartalert.Utils.CoordinatesUtil;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlert;
+import com.unipi.gkagkakis.smartalert.model.SubmittedAlertGroup;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The quadratic pairwise grouping the admin screen used before the spatial index, as a reference
+ * It compares each remaining alert with the current one, on parsed coordinates rather than strings.
+ */
+final class PairwiseGrouping {
+
+    private PairwiseGrouping() {
+    }
+
+    static List<SubmittedAlertGroup> groupAlerts(List<SubmittedAlert> submittedAlerts) {
+        List<SubmittedAlertGroup> groups = new ArrayList<>();
+        List<SubmittedAlert> remainingAlerts = new ArrayList<>(submittedAlerts);
+
+        while (!remainingAlerts.isEmpty()) {
+            SubmittedAlert currentAlert = remainingAlerts.remove(0);
+            SubmittedAlertGroup group = new SubmittedAlertGroup();
+            group.addSubmittedAlert(currentAlert);
+
+            List<SubmittedAlert> stillRemaining = new ArrayList<>(remainingAlerts.size());
+            for (SubmittedAlert otherAlert : remainingAlerts) {
+                if (areAlertsNearby(currentAlert, otherAlert)) {
+                    group.addSubmittedAlert(otherAlert);
+                } else {
+                    stillRemaining.add(otherAlert);
+                }
+            }
+            remainingAlerts = stillRemaining;
+
+            GroupSubmittedAlertsUseCase.updateGroupLocation(group);
+            groups.add(group);
+        }
+
+        GroupSubmittedAlertsUseCase.sortByMostRecent(groups);
+        return groups;
+    }
+
+    private static boolean areAlertsNearby(SubmittedAlert alert1, SubmittedAlert alert2) {
+        String location1 = alert1.getLocation();
+        String location2 = alert2.getLocation();
+        if (location1 == null || location2 == null) {
+            return false;
+        }
+        if (!alert1.hasCoordinates() || !alert2.hasCoordinates()) {
+            return location1.equalsIgnoreCase(location2);
+        }
+        double distance = CoordinatesUtil.calculateDistance(alert1.getLatitude(), alert1.getLongitude(),
+                alert2.getLatitude(), alert2.getLongitude());
+        return distance <= GroupSubmittedAlertsUseCase.GROUPING_DISTANCE_KM;
+    }
+
+    /**
+     * A moderation queue during an incident: most reports around a few hot spots across Greece,
+     * the rest scattered, a few with place names instead of coordinates. Most recent first.
+     */
+    static List<SubmittedAlert> incidentQueue(Random random, int count) {
+        String[] placeNames = {"Athens", "athens", "Patras", "Larissa", "LARISSA"};
+        int hotSpots = Math.max(1, count / 200);
+        double[][] centers = new double[hotSpots][];
+        for (int i = 0; i < hotSpots; i++) {
+            centers[i] = new double[]{35.0 + random.nextDouble() * 6.5, 20.0 + random.nextDouble() * 8.0};
+        }
+
+        List<SubmittedAlert> alerts = new ArrayList<>(count);
+        long createdAt = 1_700_000_000_000L + count * 1000L;
+        for (int i = 0; i < count; i++) {
+            String location;
+            int kind = random.nextInt(100);
+            if (kind < 2) {
+                location = placeNames[random.nextInt(placeNames.length)];
+            } else if (kind < 72) {
+                double[] center = centers[random.nextInt(hotSpots)];
+                location = String.format(Locale.ROOT, "%.6f, %.6f",
+                        center[0] + random.nextGaussian() * 0.03, center[1] + random.nextGaussian() * 0.03);
+            } else {
+                location = String.format(Locale.ROOT, "%.6f, %.6f",
+                        35.0 + random.nextDouble() * 6.5, 20.0 + random.nextDouble() * 8.0);
+            }
+            createdAt -= 1000;
+            alerts.add(new SubmittedAlert("alert-" + i, "Fire", "High", location, "description",
+                    null, "user", new Date(createdAt)));
+        }
+        return alerts;
+    }
+
+    static List<List<String>> ids(List<SubmittedAlertGroup> groups) {
+        List<List<String>> result = new ArrayList<>(groups.size());
+        for (SubmittedAlertGroup group : groups) {
+            List<String> members = new ArrayList<>(group.getAlertCount());
+            for (SubmittedAlert alert : group.getSubmittedAlerts()) {
+                members.add(alert.getId());
+            }
+            result.add(members);
+        }
+        return result;
+    }
+}
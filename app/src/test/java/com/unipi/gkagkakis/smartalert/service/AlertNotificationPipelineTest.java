@@ -0,0 +1,167 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import com.unipi.gkagkakis.smartalert.service.AlertNotificationPipeline.Action;
+import com.unipi.gkagkakis.smartalert.service.AlertNotificationPipeline.Decision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class AlertNotificationPipelineTest {
+
+    private static final long DEDUPE_WINDOW_MS = 10 * 60 * 1000L;
+    private static final long BURST_WINDOW_MS = 60 * 1000L;
+    private static final int BURST_THRESHOLD = 3;
+    private static final long MIN_SUMMARY_INTERVAL_MS = 5 * 1000L;
+
+    private long now;
+    private AlertNotificationPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        now = 1_700_000_000_000L;
+        pipeline = new AlertNotificationPipeline(() -> now, DEDUPE_WINDOW_MS, BURST_WINDOW_MS,
+                BURST_THRESHOLD, MIN_SUMMARY_INTERVAL_MS);
+    }
+
+    @Test
+    public void alertsBelowBurstThresholdShowSingly() {
+        Decision first = pipeline.onAlert("a1", "Fire in Athens");
+        now += 1000;
+        Decision second = pipeline.onAlert("a2", "Flood in Patras");
+
+        assertEquals(Action.SHOW_SINGLE, first.getAction());
+        assertEquals("a1", first.getAlertKey());
+        assertEquals(Action.SHOW_SINGLE, second.getAction());
+    }
+
+    @Test
+    public void repeatWithinDedupeWindowIsDropped() {
+        pipeline.onAlert("a1", "Fire in Athens");
+        now += DEDUPE_WINDOW_MS - 1;
+
+        assertEquals(Action.DROP_DUPLICATE, pipeline.onAlert("a1", "Fire in Athens").getAction());
+    }
+
+    @Test
+    public void repeatAfterDedupeWindowShowsAgain() {
+        pipeline.onAlert("a1", "Fire in Athens");
+        now += DEDUPE_WINDOW_MS;
+
+        assertEquals(Action.SHOW_SINGLE, pipeline.onAlert("a1", "Fire in Athens").getAction());
+    }
+
+    @Test
+    public void burstCollapsesIntoSummary() {
+        pipeline.onAlert("a1", "line 1");
+        now += 1000;
+        pipeline.onAlert("a2", "line 2");
+        now += 1000;
+        Decision third = pipeline.onAlert("a3", "line 3");
+
+        assertEquals(Action.SHOW_SUMMARY, third.getAction());
+        assertNull(third.getAlertKey());
+        // Counts the alerts already shown in the window too
+        assertEquals(3, third.getSummaryCount());
+        assertEquals(Collections.singletonList("line 3"), third.getSummaryLines());
+    }
+
+    @Test
+    public void summaryUpdatesAreRateLimited() {
+        startBurst();
+        now += 1000;
+        Decision deferred = pipeline.onAlert("a4", "line 4");
+
+        assertEquals(Action.DEFER_SUMMARY, deferred.getAction());
+        assertEquals(MIN_SUMMARY_INTERVAL_MS - 1000, deferred.getDelayMs());
+        assertEquals(4, deferred.getSummaryCount());
+
+        now += 1000;
+        assertNull("interval has not passed", pipeline.flushSummary());
+
+        now += MIN_SUMMARY_INTERVAL_MS;
+        Decision flushed = pipeline.flushSummary();
+        assertEquals(Action.SHOW_SUMMARY, flushed.getAction());
+        assertEquals(4, flushed.getSummaryCount());
+        assertEquals(Arrays.asList("line 4", "line 3"), flushed.getSummaryLines());
+
+        now += MIN_SUMMARY_INTERVAL_MS;
+        assertNull("nothing changed since the last post", pipeline.flushSummary());
+    }
+
+    @Test
+    public void summaryKeepsNewestLines() {
+        startBurst();
+        for (int i = 4; i <= 10; i++) {
+            now += MIN_SUMMARY_INTERVAL_MS;
+            pipeline.onAlert("a" + i, "line " + i);
+        }
+        now += MIN_SUMMARY_INTERVAL_MS;
+        Decision last = pipeline.onAlert("a11", "line 11");
+
+        assertEquals(Action.SHOW_SUMMARY, last.getAction());
+        assertEquals(11, last.getSummaryCount());
+        assertEquals(Arrays.asList("line 11", "line 10", "line 9", "line 8", "line 7"), last.getSummaryLines());
+    }
+
+    @Test
+    public void quietPeriodEndsBurst() {
+        startBurst();
+        now += BURST_WINDOW_MS;
+
+        Decision next = pipeline.onAlert("a4", "line 4");
+
+        assertEquals(Action.SHOW_SINGLE, next.getAction());
+    }
+
+    @Test
+    public void pendingSummaryUpdateKeepsBurstOpen() {
+        startBurst();
+        now += 1000;
+        assertEquals(Action.DEFER_SUMMARY, pipeline.onAlert("a4", "line 4").getAction());
+
+        // Never flushed, so the next alert still joins the summary
+        now += BURST_WINDOW_MS;
+        Decision next = pipeline.onAlert("a5", "line 5");
+
+        assertEquals(Action.SHOW_SUMMARY, next.getAction());
+        assertEquals(5, next.getSummaryCount());
+    }
+
+    @Test
+    public void arrivalsOutsideBurstWindowDoNotCount() {
+        pipeline.onAlert("a1", "line 1");
+        now += BURST_WINDOW_MS / 2;
+        pipeline.onAlert("a2", "line 2");
+        now += BURST_WINDOW_MS / 2;
+
+        assertEquals(Action.SHOW_SINGLE, pipeline.onAlert("a3", "line 3").getAction());
+    }
+
+    @Test
+    public void forgetsOldestAlertsPastTrackingLimit() {
+        pipeline.onAlert("first", "line");
+        for (int i = 0; i < 256; i++) {
+            now += 10;
+            pipeline.onAlert("alert-" + i, "line " + i);
+        }
+
+        assertNotEquals(Action.DROP_DUPLICATE, pipeline.onAlert("first", "line").getAction());
+        assertEquals(Action.DROP_DUPLICATE, pipeline.onAlert("alert-255", "line 255").getAction());
+    }
+
+    /**
+     * Three alerts a second apart; the third posts the first summary
+     */
+    private void startBurst() {
+        pipeline.onAlert("a1", "line 1");
+        now += 1000;
+        pipeline.onAlert("a2", "line 2");
+        now += 1000;
+        assertEquals(Action.SHOW_SUMMARY, pipeline.onAlert("a3", "line 3").getAction());
+    }
+}
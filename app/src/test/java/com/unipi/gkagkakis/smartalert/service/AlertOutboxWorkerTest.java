@@ -0,0 +1,158 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import androidx.work.ListenableWorker.Result;
+
+import com.unipi.gkagkakis.smartalert.data.service.AlertOutbox;
+import com.unipi.gkagkakis.smartalert.data.service.ManualClockOutbox;
+import com.unipi.gkagkakis.smartalert.model.PendingAlert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drains a real outbox with a scripted submitter in place of CreateAlertUseCase
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AlertOutboxWorkerTest {
+
+    private ManualClockOutbox clock;
+    private AlertOutbox outbox;
+    private final List<String> sent = new ArrayList<>();
+    // Failures to return per key; keys not in here go through
+    private final Map<String, Exception> failures = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        clock = new ManualClockOutbox(RuntimeEnvironment.getApplication(), 1_700_000_000_000L);
+        outbox = clock.outbox;
+    }
+
+    @After
+    public void tearDown() {
+        clock.close();
+    }
+
+    @Test
+    public void sendsEveryBatchOldestFirst() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String key = String.format("alert-%02d", i);
+            keys.add(key);
+            enqueueReleased(key, 100 - i);
+        }
+
+        assertEquals(Result.success(), drain());
+
+        List<String> oldestFirst = new ArrayList<>(keys);
+        Collections.reverse(oldestFirst);
+        assertEquals(oldestFirst, sent);
+        assertEquals(0, outbox.count());
+    }
+
+    @Test
+    public void skipsRowClaimedElsewhereAndComesBackForIt() throws IOException {
+        enqueueReleased("a", 1);
+        // Still being sent by the screen that created it
+        outbox.enqueue(pending("b", 2), null);
+
+        assertEquals(Result.retry(), drain());
+
+        assertEquals(Arrays.asList("a"), sent);
+        assertEquals(1, outbox.count());
+    }
+
+    @Test
+    public void failureStopsTheDrainAndReleasesTheClaim() throws IOException {
+        enqueueReleased("a", 1);
+        enqueueReleased("b", 2);
+        failures.put("a", new Exception("offline"));
+
+        assertEquals(Result.retry(), drain());
+
+        assertEquals(Arrays.asList("a"), sent);
+        assertEquals(2, outbox.count());
+        assertTrue(outbox.claim("a"));
+    }
+
+    @Test
+    public void timeoutStopsTheDrainButKeepsTheClaim() throws IOException {
+        enqueueReleased("a", 1);
+        failures.put("a", new TimeoutException("Timed out submitting alert"));
+
+        assertEquals(Result.retry(), drain());
+
+        // The abandoned write may still land, so the next drain leaves it alone until the lease runs out
+        failures.clear();
+        assertEquals(Result.retry(), drain());
+        assertEquals(Arrays.asList("a"), sent);
+
+        clock.advance(AlertOutbox.CLAIM_LEASE_MS);
+        assertEquals(Result.success(), drain());
+        assertEquals(Arrays.asList("a", "a"), sent);
+    }
+
+    @Test
+    public void deadLetteredRowDoesNotHoldBackTheRest() throws IOException {
+        PendingAlert last = pending("a", 1);
+        last.setAttempts(AlertOutbox.MAX_ATTEMPTS - 1);
+        outbox.enqueue(last, null);
+        outbox.release("a");
+        enqueueReleased("b", 2);
+        failures.put("a", new Exception("rejected"));
+
+        assertEquals(Result.success(), drain());
+
+        assertEquals(Arrays.asList("b", "a"), sent);
+        assertEquals(0, outbox.count());
+        assertTrue(outbox.nextBatch(10).isEmpty());
+    }
+
+    @Test
+    public void stoppedWorkerRetriesWithoutSending() throws IOException {
+        enqueueReleased("a", 1);
+
+        assertEquals(Result.retry(), AlertOutboxWorker.drain(outbox, this::submit, () -> true));
+
+        assertTrue(sent.isEmpty());
+        assertTrue(outbox.claim("a"));
+    }
+
+    @Test
+    public void emptyOutboxSucceeds() {
+        assertEquals(Result.success(), drain());
+        assertTrue(sent.isEmpty());
+    }
+
+    private Result drain() {
+        return AlertOutboxWorker.drain(outbox, this::submit, () -> false);
+    }
+
+    private Exception submit(PendingAlert pending) {
+        sent.add(pending.getIdempotencyKey());
+        return failures.get(pending.getIdempotencyKey());
+    }
+
+    private void enqueueReleased(String key, long createdAt) throws IOException {
+        outbox.enqueue(pending(key, createdAt), null);
+        outbox.release(key);
+    }
+
+    private static PendingAlert pending(String key, long createdAt) {
+        return new PendingAlert(key, "user", "Fire", "High", "37.98, 23.72", "description", createdAt);
+    }
+}
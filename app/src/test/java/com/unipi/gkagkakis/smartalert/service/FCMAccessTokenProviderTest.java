@@ -0,0 +1,155 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class FCMAccessTokenProviderTest {
+
+    private static final long TOKEN_LIFETIME_MS = 60 * 60 * 1000L;
+    private static final long MINUTE_MS = 60 * 1000L;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private long now;
+    private CountingCredentials credentials;
+    private FCMAccessTokenProvider provider;
+
+    @Before
+    public void setUp() {
+        now = 1_700_000_000_000L;
+        credentials = new CountingCredentials();
+        provider = new FCMAccessTokenProvider(() -> {
+            loads.incrementAndGet();
+            return credentials;
+        }, () -> now);
+    }
+
+    @Test
+    public void reusesTokenUntilShortlyBeforeExpiry() {
+        assertEquals("token-1", provider.getAccessToken());
+
+        now += 54 * MINUTE_MS;
+        assertEquals("token-1", provider.getAccessToken());
+        assertEquals(1, credentials.refreshes.get());
+
+        // Inside the five minute margin before expiry
+        now += 2 * MINUTE_MS;
+        assertEquals("token-2", provider.getAccessToken());
+        assertEquals(2, credentials.refreshes.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void manyAlertsInARowCostOneFetch() {
+        for (int i = 0; i < 20; i++) {
+            assertEquals("token-1", provider.getAccessToken());
+            now += MINUTE_MS;
+        }
+        assertEquals(1, credentials.refreshes.get());
+    }
+
+    @Test
+    public void concurrentCallersShareOneRefresh() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        credentials.blockUntil = release;
+
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(provider::getAccessToken));
+            }
+            // Let every caller reach the refresh before the first one completes
+            assertTrue(credentials.started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("token-1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, credentials.refreshes.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void invalidateForcesRefresh() {
+        assertEquals("token-1", provider.getAccessToken());
+
+        provider.invalidate();
+
+        assertEquals("token-2", provider.getAccessToken());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void failedLoadReturnsNullAndIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        FCMAccessTokenProvider flaky = new FCMAccessTokenProvider(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("asset missing");
+            }
+            return credentials;
+        }, () -> now);
+
+        assertNull(flaky.getAccessToken());
+        assertEquals("token-1", flaky.getAccessToken());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void failedRefreshReturnsNullAndKeepsCredentials() {
+        credentials.failNext = true;
+
+        assertNull(provider.getAccessToken());
+        assertEquals("token-2", provider.getAccessToken());
+        assertEquals(1, loads.get());
+    }
+
+    /**
+     * Hands out numbered tokens valid for an hour from the fake clock
+     */
+    private class CountingCredentials extends GoogleCredentials {
+        final AtomicInteger refreshes = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch blockUntil;
+        volatile boolean failNext;
+
+        @Override
+        public AccessToken refreshAccessToken() throws IOException {
+            int count = refreshes.incrementAndGet();
+            started.countDown();
+            CountDownLatch latch = blockUntil;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failNext) {
+                failNext = false;
+                throw new IOException("token endpoint unavailable");
+            }
+            return new AccessToken("token-" + count, new Date(now + TOKEN_LIFETIME_MS));
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.unipi.gkagkakis.smartalert.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the engine against MockWebServer standing in for the FCM v1 send endpoint
+ * Responses are picked by the registration token in each request body.
+ */
+public class FCMDeliveryEngineTest {
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final String UNREGISTERED_BODY = "{\"error\":{\"code\":404,\"message\":\"Requested entity was not found.\","
+            + "\"status\":\"NOT_FOUND\",\"details\":[{\"@type\":\"type.googleapis.com/google.firebase.fcm.v1.FcmError\","
+            + "\"errorCode\":\"UNREGISTERED\"}]}}";
+    private static final String BAD_PAYLOAD_BODY = "{\"error\":{\"code\":400,\"message\":\"Invalid JSON payload received.\","
+            + "\"status\":\"INVALID_ARGUMENT\"}}";
+
+    private MockWebServer server;
+    private ScheduledExecutorService retryScheduler;
+    private FakeTokenSource tokenSource;
+
+    // Per-token responses served in order; the last one repeats
+    private final Map<String, List<MockResponse>> scripts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxObservedInFlight = new AtomicInteger();
+    private volatile long responseDelayMs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                maxObservedInFlight.accumulateAndGet(current, Math::max);
+                try {
+                    if (responseDelayMs > 0) {
+                        Thread.sleep(responseDelayMs);
+                    }
+                    Matcher matcher = TOKEN.matcher(request.getBody().readUtf8());
+                    String token = matcher.find() ? matcher.group(1) : "";
+                    int attempt = attempts.computeIfAbsent(token, t -> new AtomicInteger()).getAndIncrement();
+                    List<MockResponse> script = scripts.get(token);
+                    if (script == null) {
+                        return new MockResponse().setBody("{\"name\":\"projects/p/messages/1\"}");
+                    }
+                    return script.get(Math.min(attempt, script.size() - 1));
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        tokenSource = new FakeTokenSource();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        retryScheduler.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    public void sendsEveryMessageWithinInFlightLimit() throws Exception {
+        responseDelayMs = 20;
+        FCMDeliveryEngine engine = engine(newClient(), 4, 3);
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine, messages("user", 40));
+
+        assertEquals(40, report.getTotal());
+        assertEquals(40, report.getSent());
+        assertEquals(0, report.getFailed());
+        assertEquals(40, server.getRequestCount());
+        assertTrue("max in flight " + maxObservedInFlight.get(), maxObservedInFlight.get() <= 4);
+        assertTrue("requests ran in parallel", maxObservedInFlight.get() > 1);
+    }
+
+    @Test
+    public void multiplexesOverOneHttp2Connection() throws Exception {
+        server.shutdown();
+        server = restartWith(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        responseDelayMs = 20;
+        OkHttpClient client = newClient().newBuilder()
+                .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                .build();
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(client, 8, 3), messages("user", 30));
+
+        assertEquals(30, report.getSent());
+        assertTrue("requests ran in parallel", maxObservedInFlight.get() > 1);
+        assertEquals(1, client.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void retriesServerErrorsUntilSent() throws Exception {
+        scripts.put("flaky", List.of(new MockResponse().setResponseCode(503), new MockResponse().setResponseCode(500),
+                new MockResponse().setBody("{}")));
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 4), messages("flaky", 1));
+
+        assertEquals(1, report.getSent());
+        assertEquals(2, report.getRetries());
+        assertEquals(3, attempts.get("flaky").get());
+    }
+
+    @Test
+    public void retriesRateLimitAfterRequestedDelay() throws Exception {
+        scripts.put("limited", List.of(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"),
+                new MockResponse().setBody("{}")));
+
+        long start = System.nanoTime();
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 4), messages("limited", 1));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, report.getSent());
+        assertEquals(1, report.getRetries());
+        assertTrue("waited " + elapsedMs + " ms", elapsedMs >= 1000);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        scripts.put("down", List.of(new MockResponse().setResponseCode(500)));
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 3), messages("down", 2));
+
+        assertEquals(0, report.getSent());
+        assertEquals(2, report.getFailed());
+        assertEquals(4, report.getRetries());
+        assertEquals(6, attempts.get("down").get());
+    }
+
+    @Test
+    public void reportsInvalidTokensSeparatelyFromFailures() throws Exception {
+        scripts.put("gone", List.of(new MockResponse().setResponseCode(404).setBody(UNREGISTERED_BODY)));
+        scripts.put("bad", List.of(new MockResponse().setResponseCode(400).setBody(BAD_PAYLOAD_BODY)));
+        List<FCMDeliveryEngine.OutgoingMessage> messages = new ArrayList<>();
+        messages.add(message("gone"));
+        messages.add(message("bad"));
+        messages.add(message("fine"));
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 3), messages);
+
+        assertEquals(1, report.getSent());
+        assertEquals(1, report.getFailed());
+        assertEquals(1, report.getInvalidTokens());
+        assertEquals(Collections.singletonList("gone"), report.getInvalidTokenValues());
+        // Neither is worth retrying
+        assertEquals(0, report.getRetries());
+    }
+
+    @Test
+    public void refreshesAccessTokenAfterUnauthorized() throws Exception {
+        scripts.put("user", List.of(new MockResponse().setResponseCode(401), new MockResponse().setBody("{}")));
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 3), messages("user", 1));
+
+        assertEquals(1, report.getSent());
+        assertEquals(1, tokenSource.invalidations.get());
+        assertEquals("Bearer access-1", server.takeRequest().getHeader("Authorization"));
+        assertEquals("Bearer access-2", server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void failsWholeBatchWithoutAccessToken() throws Exception {
+        tokenSource.available = false;
+
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 3), messages("user", 5));
+
+        assertEquals(5, report.getFailed());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void emptyBatchCompletesRightAway() throws Exception {
+        FCMDeliveryEngine.DeliveryReport report = deliver(engine(newClient(), 4, 3), Collections.emptyList());
+
+        assertEquals(0, report.getTotal());
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void recognizesInvalidTokenResponses() {
+        assertTrue(FCMDeliveryEngine.isInvalidTokenResponse(UNREGISTERED_BODY));
+        assertTrue(FCMDeliveryEngine.isInvalidTokenResponse("{\"error\":{\"code\":400,"
+                + "\"message\":\"The registration token is not a valid FCM registration token\",\"status\":\"INVALID_ARGUMENT\"}}"));
+        assertFalse(FCMDeliveryEngine.isInvalidTokenResponse(BAD_PAYLOAD_BODY));
+        assertFalse(FCMDeliveryEngine.isInvalidTokenResponse("not json"));
+    }
+
+    private MockWebServer restartWith(List<Protocol> protocols) throws Exception {
+        MockWebServer restarted = new MockWebServer();
+        restarted.setDispatcher(server.getDispatcher());
+        restarted.setProtocols(protocols);
+        restarted.start();
+        return restarted;
+    }
+
+    private FCMDeliveryEngine engine(OkHttpClient client, int maxInFlight, int maxAttempts) {
+        return new FCMDeliveryEngine(client, server.url("/v1/projects/test/messages:send").toString(),
+                tokenSource, retryScheduler, maxInFlight, maxAttempts, 10);
+    }
+
+    private static OkHttpClient newClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(64);
+        return new OkHttpClient.Builder().dispatcher(dispatcher).build();
+    }
+
+    private static FCMDeliveryEngine.DeliveryReport deliver(FCMDeliveryEngine engine,
+                                                            List<FCMDeliveryEngine.OutgoingMessage> messages) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<FCMDeliveryEngine.DeliveryReport> result = new AtomicReference<>();
+        engine.deliver(messages, report -> {
+            result.set(report);
+            done.countDown();
+        });
+        assertTrue("delivery did not complete", done.await(10, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    private static List<FCMDeliveryEngine.OutgoingMessage> messages(String token, int count) {
+        List<FCMDeliveryEngine.OutgoingMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(token));
+        }
+        return messages;
+    }
+
+    private static FCMDeliveryEngine.OutgoingMessage message(String token) {
+        return new FCMDeliveryEngine.OutgoingMessage(token,
+                "{\"message\":{\"token\":\"" + token + "\",\"data\":{\"alertId\":\"a1\"}}}");
+    }
+
+    private static class FakeTokenSource implements FCMDeliveryEngine.AccessTokenSource {
+        final AtomicInteger invalidations = new AtomicInteger();
+        volatile boolean available = true;
+        private int generation = 1;
+
+        @Override
+        public synchronized String getAccessToken() {
+            return available ? "access-" + generation : null;
+        }
+
+        @Override
+        public synchronized void invalidate() {
+            invalidations.incrementAndGet();
+            generation++;
+        }
+    }
+}